@@ -0,0 +1,126 @@
+package cake.jsrpc.websocket.benchmark;
+
+import cake.jsrpc.websocket.model.RpcRequest;
+import cake.jsrpc.websocket.transfer.Gzip;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 应用层gzip的CPU开销与压缩率：按不同大小和内容的请求消息测量压缩、解压耗时，
+ * 每组参数的压缩后大小在 Setup 时打印，用于选择 rpc.compression.threshold-bytes 和 level
+ * 内容：json（对象数组，重复的字段名）、base64（随机字节，相当于密文）、hex（随机字节的十六进制）
+ *
+ * 示例：java -jar benchmarks/target/benchmarks.jar Compression -p kind=json -p level=1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g"})
+public class CompressionBenchmark {
+
+    @Param({"1024", "16384", "65536", "262144", "1048576", "8388608"})
+    public int payloadSize;
+
+    @Param({"json", "base64", "hex"})
+    public String kind;
+
+    @Param({"1", "6"})
+    public int level;
+
+    private byte[] message;
+    private byte[] compressed;
+    private final byte[] drain = new byte[64 * 1024];
+    private ByteArrayOutputStream buffer;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        RpcRequest request = new RpcRequest();
+        request.setId("0123456789");
+        request.setAction("echo");
+        request.setParams(Collections.singletonList(payload(kind, payloadSize)));
+        message = new ObjectMapper().writeValueAsBytes(request);
+        buffer = new ByteArrayOutputStream(message.length);
+        compressed = compress();
+        System.out.printf("%n[压缩率] kind=%s level=%d 原始 %d 字节 -> %d 字节 (%.1f%%)%n",
+                kind, level, message.length, compressed.length, 100.0 * compressed.length / message.length);
+    }
+
+    /**
+     * 服务端发送大请求：编码后的消息压缩到内存缓冲区
+     */
+    @Benchmark
+    public int compressRequest() throws IOException {
+        return compress().length;
+    }
+
+    /**
+     * 服务端接收大响应：边解压边读出
+     */
+    @Benchmark
+    public long decompressResponse() throws IOException {
+        try (InputStream in = Gzip.decompress(new ByteArrayInputStream(compressed), Long.MAX_VALUE)) {
+            long total = 0;
+            int n;
+            while ((n = in.read(drain)) > 0) {
+                total += n;
+            }
+            return total;
+        }
+    }
+
+    private byte[] compress() throws IOException {
+        buffer.reset();
+        try (Gzip.CompressingOutputStream out = Gzip.compress(buffer, level)) {
+            out.write(message);
+        }
+        return buffer.toByteArray();
+    }
+
+    private static Object payload(String kind, int size) {
+        Random random = new Random(42);
+        switch (kind) {
+            case "base64": {
+                byte[] bytes = new byte[size * 3 / 4];
+                random.nextBytes(bytes);
+                return Base64.getEncoder().encodeToString(bytes);
+            }
+            case "hex": {
+                byte[] bytes = new byte[size / 2];
+                random.nextBytes(bytes);
+                StringBuilder hex = new StringBuilder(size);
+                for (byte b : bytes) {
+                    hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+                }
+                return hex.toString();
+            }
+            default: {
+                // 每条记录约60字节
+                List<Map<String, Object>> rows = new ArrayList<>();
+                for (int i = 0; i < Math.max(1, size / 60); i++) {
+                    Map<String, Object> row = new LinkedHashMap<>();
+                    row.put("id", i);
+                    row.put("name", "user" + random.nextInt(10000));
+                    row.put("score", random.nextInt(1000) / 10.0);
+                    row.put("active", random.nextBoolean());
+                    rows.add(row);
+                }
+                return rows;
+            }
+        }
+    }
+}
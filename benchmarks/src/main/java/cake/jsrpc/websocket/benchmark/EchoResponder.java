@@ -0,0 +1,87 @@
+package cake.jsrpc.websocket.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 模拟 rpc.js 的回显客户端：把请求的第一个参数原样作为结果返回
+ * 与 rpc.js 一致，单个请求返回单个响应，批量数组返回响应数组，文本帧按JSON、二进制帧按CBOR
+ */
+public class EchoResponder {
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+    private static final ObjectMapper CBOR = new ObjectMapper(new CBORFactory());
+
+    /**
+     * rpc.js 连接建立后上报的注册消息
+     */
+    public static WebSocketMessage<?> registerMessage(boolean binary) throws IOException {
+        ObjectNode register = JSON.createObjectNode();
+        register.put("type", "register");
+        register.putArray("methods").add("echo");
+        // 与 rpc.js 一样声明能处理合并的数组帧
+        register.putArray("features").add("batch");
+        return encode(register, binary);
+    }
+
+    /**
+     * 处理服务端发来的请求帧，返回响应帧
+     */
+    public static WebSocketMessage<?> respond(WebSocketMessage<?> message) throws IOException {
+        boolean binary = message instanceof BinaryMessage;
+        JsonNode request;
+        if (binary) {
+            ByteBuffer payload = ((BinaryMessage) message).getPayload();
+            byte[] bytes = new byte[payload.remaining()];
+            payload.duplicate().get(bytes);
+            request = CBOR.readTree(bytes);
+        } else {
+            request = JSON.readTree(((TextMessage) message).getPayload());
+        }
+
+        JsonNode response;
+        if (request.isArray()) {
+            ArrayNode responses = JSON.createArrayNode();
+            for (JsonNode item : request) {
+                responses.add(respondOne(item));
+            }
+            response = responses;
+        } else {
+            response = respondOne(request);
+        }
+        return encode(response, binary);
+    }
+
+    private static ObjectNode respondOne(JsonNode request) {
+        ObjectNode response = JSON.createObjectNode();
+        response.set("callbackId", request.get("id"));
+        response.put("status", 200);
+        JsonNode params = request.get("params");
+        response.set("result", params != null && params.size() > 0 ? params.get(0) : null);
+        return response;
+    }
+
+    private static WebSocketMessage<?> encode(JsonNode node, boolean binary) throws IOException {
+        return binary ? new BinaryMessage(CBOR.writeValueAsBytes(node)) : new TextMessage(JSON.writeValueAsString(node));
+    }
+
+    /**
+     * 指定长度的ASCII字符串参数
+     */
+    public static String payload(int size) {
+        char[] chars = new char[size];
+        for (int i = 0; i < size; i++) {
+            chars[i] = (char) ('a' + i % 26);
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,141 @@
+package cake.jsrpc.websocket.benchmark;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.socket.*;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.security.Principal;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 进程内的假 WebSocketSession：服务端发送的请求直接交给 {@link EchoResponder}，
+ * 响应在发送线程中同步回送给handler，不经过网络，只测量handler本身（序列化、路由、等待表、解析）的开销
+ */
+public class EchoWebSocketSession implements WebSocketSession {
+
+    private final String id = UUID.randomUUID().toString();
+    private final URI uri;
+    private final WebSocketHandler handler;
+    private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+    private volatile boolean open = true;
+
+    /**
+     * @param codec 连接参数中的编码（json / cbor）
+     */
+    public EchoWebSocketSession(WebSocketHandler handler, String codec) {
+        this.handler = handler;
+        this.uri = URI.create("ws://localhost/ws?codec=" + codec);
+    }
+
+    /**
+     * 模拟浏览器连接并上报方法
+     */
+    public void connect() throws Exception {
+        handler.afterConnectionEstablished(this);
+        handler.handleMessage(this, EchoResponder.registerMessage(uri.getQuery().endsWith("cbor")));
+    }
+
+    @Override
+    public void sendMessage(WebSocketMessage<?> message) throws IOException {
+        WebSocketMessage<?> response = EchoResponder.respond(message);
+        try {
+            handler.handleMessage(this, response);
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public URI getUri() {
+        return uri;
+    }
+
+    @Override
+    public HttpHeaders getHandshakeHeaders() {
+        return new HttpHeaders();
+    }
+
+    @Override
+    public Map<String, Object> getAttributes() {
+        return attributes;
+    }
+
+    @Override
+    public Principal getPrincipal() {
+        return null;
+    }
+
+    @Override
+    public InetSocketAddress getLocalAddress() {
+        return null;
+    }
+
+    @Override
+    public InetSocketAddress getRemoteAddress() {
+        return null;
+    }
+
+    @Override
+    public String getAcceptedProtocol() {
+        return null;
+    }
+
+    @Override
+    public void setTextMessageSizeLimit(int messageSizeLimit) {
+    }
+
+    @Override
+    public int getTextMessageSizeLimit() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public void setBinaryMessageSizeLimit(int messageSizeLimit) {
+    }
+
+    @Override
+    public int getBinaryMessageSizeLimit() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public List<WebSocketExtension> getExtensions() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() throws IOException {
+        close(CloseStatus.NORMAL);
+    }
+
+    @Override
+    public void close(CloseStatus status) throws IOException {
+        if (!open) {
+            return;
+        }
+        open = false;
+        try {
+            handler.afterConnectionClosed(this, status);
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package cake.jsrpc.websocket.benchmark;
+
+import cake.jsrpc.websocket.config.RpcProperties;
+import cake.jsrpc.websocket.handler.RpcWebSocketHandler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 进程内往返：handler -> 假会话 -> 回显 -> handler，不经过网络
+ * 衡量序列化、路由、等待表、流式解析等服务端开销随消息大小、编码、客户端数和并发数的变化
+ *
+ * 示例：java -jar benchmarks/target/benchmarks.jar HandlerRoundTrip -p payloadSize=100,10000
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class HandlerRoundTripBenchmark {
+
+    // 参数字符串长度（单帧上限10MB，最大档留出JSON包装的余量）
+    @Param({"100", "10000", "1000000", "9000000"})
+    public int payloadSize;
+
+    @Param({"json", "cbor"})
+    public String codec;
+
+    // 已连接的客户端数
+    @Param({"1", "4"})
+    public int clients;
+
+    // 每次操作同时发出的调用数
+    @Param({"1", "16"})
+    public int concurrency;
+
+    private RpcWebSocketHandler handler;
+    private EchoWebSocketSession[] sessions;
+    private String payload;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        handler = new RpcWebSocketHandler(new RpcProperties(), new SimpleMeterRegistry());
+        sessions = new EchoWebSocketSession[clients];
+        for (int i = 0; i < clients; i++) {
+            sessions[i] = new EchoWebSocketSession(handler, codec);
+            sessions[i].connect();
+        }
+        payload = EchoResponder.payload(payloadSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        for (EchoWebSocketSession session : sessions) {
+            session.close();
+        }
+        handler.destroy();
+    }
+
+    /**
+     * 按负载均衡策略选择客户端调用（invokeRemoteMethodAsync）
+     */
+    @Benchmark
+    public Object invokeRemoteMethod() {
+        if (concurrency == 1) {
+            return handler.invokeRemoteMethodAsync("echo", payload).join();
+        }
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[concurrency];
+        for (int i = 0; i < concurrency; i++) {
+            futures[i] = handler.invokeRemoteMethodAsync("echo", payload);
+        }
+        return CompletableFuture.allOf(futures).join();
+    }
+
+    /**
+     * 指定会话直接调用（callBrowserMethodAsync），不经过路由
+     */
+    @Benchmark
+    public Object callBrowserMethod() {
+        if (concurrency == 1) {
+            return handler.callBrowserMethodAsync(sessions[0], "echo", payload).join();
+        }
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[concurrency];
+        for (int i = 0; i < concurrency; i++) {
+            futures[i] = handler.callBrowserMethodAsync(sessions[i % sessions.length], "echo", payload);
+        }
+        return CompletableFuture.allOf(futures).join();
+    }
+}
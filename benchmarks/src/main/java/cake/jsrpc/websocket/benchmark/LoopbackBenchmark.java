@@ -0,0 +1,88 @@
+package cake.jsrpc.websocket.benchmark;
+
+import cake.jsrpc.websocket.WebSocketRpcApplication;
+import cake.jsrpc.websocket.handler.RpcWebSocketHandler;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 端到端往返：启动完整的Spring Boot服务（随机端口），由若干 {@link RpcJsClient} 通过本机回环连接，
+ * 测量包含Tomcat WebSocket收发在内的吞吐量和延迟分位数
+ *
+ * 示例：java -jar benchmarks/target/benchmarks.jar Loopback -p payloadSize=100 -p concurrency=1,16
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class LoopbackBenchmark {
+
+    @Param({"100", "10000", "1000000", "9000000"})
+    public int payloadSize;
+
+    @Param({"json", "cbor"})
+    public String codec;
+
+    @Param({"1", "4"})
+    public int clients;
+
+    @Param({"1", "16"})
+    public int concurrency;
+
+    private ConfigurableApplicationContext context;
+    private RpcWebSocketHandler handler;
+    private RpcJsClient[] rpcClients;
+    private String payload;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        context = new SpringApplicationBuilder(WebSocketRpcApplication.class).run(
+                "--server.port=0",
+                "--logging.level.root=WARN",
+                "--logging.level.cake.jsrpc.websocket=WARN");
+        int port = ((ServletWebServerApplicationContext) context).getWebServer().getPort();
+        handler = context.getBean(RpcWebSocketHandler.class);
+
+        rpcClients = new RpcJsClient[clients];
+        for (int i = 0; i < clients; i++) {
+            rpcClients[i] = new RpcJsClient(codec);
+            rpcClients[i].connect(port);
+        }
+        // 等待全部客户端连接并上报方法
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (handler.getConnectedClientCount() < clients || !handler.getRegisteredMethods().contains("echo")) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("客户端未能在10秒内连接并注册");
+            }
+            Thread.sleep(10);
+        }
+        payload = EchoResponder.payload(payloadSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        for (RpcJsClient client : rpcClients) {
+            client.close();
+        }
+        context.close();
+    }
+
+    @Benchmark
+    public Object roundTrip() {
+        if (concurrency == 1) {
+            return handler.invokeRemoteMethodAsync("echo", payload).join();
+        }
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[concurrency];
+        for (int i = 0; i < concurrency; i++) {
+            futures[i] = handler.invokeRemoteMethodAsync("echo", payload);
+        }
+        return CompletableFuture.allOf(futures).join();
+    }
+}
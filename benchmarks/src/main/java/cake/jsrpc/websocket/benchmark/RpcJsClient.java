@@ -0,0 +1,98 @@
+package cake.jsrpc.websocket.benchmark;
+
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 通过真实 WebSocket 连接模拟 rpc.js 的Java客户端：连接后上报方法，收到请求后在消息线程中回显
+ * （与浏览器一样单线程处理，响应按收到的顺序发送）
+ * 使用 JDK 的 WebSocket 客户端：它开启了 TCP_NODELAY，与浏览器一致；
+ * Tomcat 的客户端没有开启，连续发送多个小响应时会被 Nagle 算法和延迟确认拖慢几十毫秒
+ */
+public class RpcJsClient implements WebSocket.Listener {
+
+    private final boolean binary;
+    private WebSocket webSocket;
+    // 分片消息的累积缓冲（只在消息线程中访问）
+    private final StringBuilder text = new StringBuilder();
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+    public RpcJsClient(String codec) {
+        this.binary = "cbor".equalsIgnoreCase(codec);
+    }
+
+    public void connect(int port) throws Exception {
+        URI uri = URI.create("ws://127.0.0.1:" + port + "/ws" + (binary ? "?codec=cbor" : ""));
+        webSocket = HttpClient.newHttpClient().newWebSocketBuilder()
+                .buildAsync(uri, this)
+                .get(10, TimeUnit.SECONDS);
+    }
+
+    public void close() throws Exception {
+        if (webSocket != null) {
+            webSocket.sendClose(WebSocket.NORMAL_CLOSURE, "").get(10, TimeUnit.SECONDS);
+        }
+    }
+
+    @Override
+    public void onOpen(WebSocket webSocket) {
+        try {
+            send(webSocket, EchoResponder.registerMessage(binary));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+        webSocket.request(1);
+    }
+
+    @Override
+    public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+        text.append(data);
+        if (last) {
+            reply(webSocket, new TextMessage(text.toString()));
+            text.setLength(0);
+        }
+        webSocket.request(1);
+        return null;
+    }
+
+    @Override
+    public CompletionStage<?> onBinary(WebSocket webSocket, ByteBuffer data, boolean last) {
+        byte[] chunk = new byte[data.remaining()];
+        data.get(chunk);
+        bytes.write(chunk, 0, chunk.length);
+        if (last) {
+            reply(webSocket, new BinaryMessage(bytes.toByteArray()));
+            bytes.reset();
+        }
+        webSocket.request(1);
+        return null;
+    }
+
+    private void reply(WebSocket webSocket, WebSocketMessage<?> message) {
+        try {
+            send(webSocket, EchoResponder.respond(message));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 同步发送，保证同一时刻只有一个未完成的发送
+     */
+    private static void send(WebSocket webSocket, WebSocketMessage<?> message) {
+        if (message instanceof BinaryMessage) {
+            webSocket.sendBinary(((BinaryMessage) message).getPayload(), true).join();
+        } else {
+            webSocket.sendText(((TextMessage) message).getPayload(), true).join();
+        }
+    }
+}
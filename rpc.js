@@ -1,36 +1,513 @@
+/**
+ * 最小CBOR编解码（RFC 8949），用于 ?codec=cbor 的二进制帧
+ * Uint8Array/ArrayBuffer 以字节串传输，服务端对应 byte[]，不需要base64
+ */
+const RpcCbor = {
+	encode(value) {
+		const w = { buf: new Uint8Array(256), view: null, pos: 0 };
+		w.view = new DataView(w.buf.buffer);
+		this._write(w, value);
+		return w.buf.subarray(0, w.pos);
+	},
+
+	_ensure(w, n) {
+		if (w.pos + n <= w.buf.length) {
+			return;
+		}
+		let size = w.buf.length * 2;
+		while (size < w.pos + n) {
+			size *= 2;
+		}
+		const next = new Uint8Array(size);
+		next.set(w.buf.subarray(0, w.pos));
+		w.buf = next;
+		w.view = new DataView(next.buffer);
+	},
+
+	_head(w, major, len) {
+		this._ensure(w, 9);
+		const m = major << 5;
+		if (len < 24) {
+			w.buf[w.pos++] = m | len;
+		} else if (len < 0x100) {
+			w.buf[w.pos++] = m | 24;
+			w.buf[w.pos++] = len;
+		} else if (len < 0x10000) {
+			w.buf[w.pos++] = m | 25;
+			w.view.setUint16(w.pos, len);
+			w.pos += 2;
+		} else if (len < 0x100000000) {
+			w.buf[w.pos++] = m | 26;
+			w.view.setUint32(w.pos, len);
+			w.pos += 4;
+		} else {
+			w.buf[w.pos++] = m | 27;
+			w.view.setUint32(w.pos, Math.floor(len / 0x100000000));
+			w.view.setUint32(w.pos + 4, len >>> 0);
+			w.pos += 8;
+		}
+	},
+
+	_bytes(w, major, bytes) {
+		this._head(w, major, bytes.length);
+		this._ensure(w, bytes.length);
+		w.buf.set(bytes, w.pos);
+		w.pos += bytes.length;
+	},
+
+	_write(w, value) {
+		if (value === null || value === undefined) {
+			this._ensure(w, 1);
+			w.buf[w.pos++] = 0xf6;
+		} else if (value === false || value === true) {
+			this._ensure(w, 1);
+			w.buf[w.pos++] = value ? 0xf5 : 0xf4;
+		} else if (typeof value === 'number') {
+			if (Number.isSafeInteger(value)) {
+				this._head(w, value < 0 ? 1 : 0, value < 0 ? -1 - value : value);
+			} else {
+				this._ensure(w, 9);
+				w.buf[w.pos++] = 0xfb;
+				w.view.setFloat64(w.pos, value);
+				w.pos += 8;
+			}
+		} else if (typeof value === 'string') {
+			this._bytes(w, 3, new TextEncoder().encode(value));
+		} else if (value instanceof Uint8Array) {
+			this._bytes(w, 2, value);
+		} else if (value instanceof ArrayBuffer) {
+			this._bytes(w, 2, new Uint8Array(value));
+		} else if (Array.isArray(value)) {
+			this._head(w, 4, value.length);
+			value.forEach(item => this._write(w, item));
+		} else if (typeof value.toJSON === 'function') {
+			this._write(w, value.toJSON());
+		} else {
+			// 与JSON.stringify一致，忽略undefined和函数
+			const keys = Object.keys(value)
+				.filter(k => value[k] !== undefined && typeof value[k] !== 'function');
+			this._head(w, 5, keys.length);
+			keys.forEach(k => {
+				this._write(w, k);
+				this._write(w, value[k]);
+			});
+		}
+	},
+
+	decode(data) {
+		const bytes = data instanceof Uint8Array ? data : new Uint8Array(data);
+		const r = { bytes, view: new DataView(bytes.buffer, bytes.byteOffset, bytes.byteLength), pos: 0 };
+		return this._read(r);
+	},
+
+	_length(r, info) {
+		if (info < 24) {
+			return info;
+		}
+		let len;
+		switch (info) {
+			case 24: len = r.view.getUint8(r.pos); r.pos += 1; break;
+			case 25: len = r.view.getUint16(r.pos); r.pos += 2; break;
+			case 26: len = r.view.getUint32(r.pos); r.pos += 4; break;
+			case 27: len = r.view.getUint32(r.pos) * 0x100000000 + r.view.getUint32(r.pos + 4); r.pos += 8; break;
+			case 31: return -1; // 不定长
+			default: throw new Error("非法的CBOR长度: " + info);
+		}
+		return len;
+	},
+
+	_read(r) {
+		const initial = r.view.getUint8(r.pos++);
+		const major = initial >> 5;
+		const info = initial & 0x1f;
+		if (major === 7) {
+			switch (info) {
+				case 20: return false;
+				case 21: return true;
+				case 22: return null;
+				case 23: return undefined;
+				case 25: { const v = this._half(r.view.getUint16(r.pos)); r.pos += 2; return v; }
+				case 26: { const v = r.view.getFloat32(r.pos); r.pos += 4; return v; }
+				case 27: { const v = r.view.getFloat64(r.pos); r.pos += 8; return v; }
+				case 31: return RpcCbor._BREAK;
+				default: return info < 24 ? info : r.view.getUint8(r.pos++); // 其它简单值
+			}
+		}
+		const len = this._length(r, info);
+		switch (major) {
+			case 0: return len;
+			case 1: return -1 - len;
+			case 2:
+			case 3: {
+				let chunk;
+				if (len < 0) {
+					// 不定长：拼接各个分段
+					const parts = [];
+					let item;
+					while ((item = this._read(r)) !== RpcCbor._BREAK) {
+						parts.push(major === 3 ? new TextEncoder().encode(item) : item);
+					}
+					const total = parts.reduce((n, p) => n + p.length, 0);
+					chunk = new Uint8Array(total);
+					let offset = 0;
+					parts.forEach(p => { chunk.set(p, offset); offset += p.length; });
+				} else {
+					chunk = r.bytes.subarray(r.pos, r.pos + len);
+					r.pos += len;
+				}
+				return major === 3 ? new TextDecoder().decode(chunk) : chunk.slice();
+			}
+			case 4: {
+				const arr = [];
+				if (len < 0) {
+					let item;
+					while ((item = this._read(r)) !== RpcCbor._BREAK) {
+						arr.push(item);
+					}
+				} else {
+					for (let i = 0; i < len; i++) {
+						arr.push(this._read(r));
+					}
+				}
+				return arr;
+			}
+			case 5: {
+				const obj = {};
+				if (len < 0) {
+					let key;
+					while ((key = this._read(r)) !== RpcCbor._BREAK) {
+						obj[key] = this._read(r);
+					}
+				} else {
+					for (let i = 0; i < len; i++) {
+						const key = this._read(r);
+						obj[key] = this._read(r);
+					}
+				}
+				return obj;
+			}
+			default: // 6: 标签，直接返回被标记的值
+				return this._read(r);
+		}
+	},
+
+	_half(h) {
+		const exp = (h >> 10) & 0x1f;
+		const mant = h & 0x3ff;
+		const sign = h & 0x8000 ? -1 : 1;
+		if (exp === 0) {
+			return sign * Math.pow(2, -14) * (mant / 1024);
+		}
+		if (exp === 31) {
+			return mant ? NaN : sign * Infinity;
+		}
+		return sign * Math.pow(2, exp - 15) * (1 + mant / 1024);
+	},
+
+	_BREAK: { break: true }
+};
+
+/**
+ * 分片帧（二进制帧，JSON和CBOR会话通用），用于传输超过单帧上限的大消息：
+ * 'R' 'C' | 标志(bit0=最后一片) | 传输ID长度 | 传输ID | 序号(uint32大端) | 数据
+ * 数据是完整消息按会话编码（JSON为UTF-8文本，CBOR为字节）序列化后的一段，接收方按序拼接后再解析
+ */
+const RpcChunks = {
+	encode(idBytes, seq, last, data) {
+		const frame = new Uint8Array(8 + idBytes.length + data.length);
+		frame[0] = 0x52;
+		frame[1] = 0x43;
+		frame[2] = last ? 1 : 0;
+		frame[3] = idBytes.length;
+		frame.set(idBytes, 4);
+		new DataView(frame.buffer).setUint32(4 + idBytes.length, seq);
+		frame.set(data, 8 + idBytes.length);
+		return frame;
+	},
+
+	/**
+	 * 解析分片帧，不是分片帧时返回null
+	 */
+	decode(data) {
+		const bytes = new Uint8Array(data);
+		if (bytes.length < 9 || bytes[0] !== 0x52 || bytes[1] !== 0x43) {
+			return null;
+		}
+		const idLength = bytes[3];
+		return {
+			id: new TextDecoder().decode(bytes.subarray(4, 4 + idLength)),
+			seq: new DataView(bytes.buffer, bytes.byteOffset).getUint32(4 + idLength),
+			last: (bytes[2] & 1) === 1,
+			data: bytes.subarray(8 + idLength)
+		};
+	}
+};
+
+/**
+ * 应用层gzip（浏览器内置的 CompressionStream / DecompressionStream），JSON和CBOR会话通用：
+ * 超过阈值的消息整体压缩后以二进制帧（或分片帧）发送，接收方按开头的 1f 8b 识别并解压后再解析
+ * 不支持的浏览器不在 register 消息中声明 gzip，服务端不会向其发送压缩帧
+ */
+const RpcGzip = {
+	supported: typeof CompressionStream === 'function' && typeof DecompressionStream === 'function',
+
+	isGzip(data) {
+		const bytes = data instanceof Uint8Array ? data : new Uint8Array(data);
+		return bytes.length >= 18 && bytes[0] === 0x1f && bytes[1] === 0x8b;
+	},
+
+	/**
+	 * @param {string|Uint8Array} data - 字符串按UTF-8压缩
+	 * @returns {Promise<Uint8Array>}
+	 */
+	compress(data) {
+		return RpcGzip._pipe(data, new CompressionStream('gzip'));
+	},
+
+	decompress(data) {
+		return RpcGzip._pipe(data, new DecompressionStream('gzip'));
+	},
+
+	async _pipe(data, transform) {
+		const stream = new Blob([data]).stream().pipeThrough(transform);
+		return new Uint8Array(await new Response(stream).arrayBuffer());
+	}
+};
+
+/**
+ * 客户端日志级别，低于当前级别的日志不输出
+ */
+const RpcLogLevels = { debug: 10, info: 20, warn: 30, error: 40, off: 100 };
+
+/**
+ * Web Worker 池：注册时声明 { worker: true } 的方法按轮询分发到各个Worker执行，不占用页面主线程，
+ * 多个调用可以同时使用多个CPU核心
+ * 方法的源码（func.toString()）被复制到每个Worker中执行，只能使用参数和 importScripts 引入的脚本，
+ * 不能引用页面中的变量、DOM 或 window；参数和结果按结构化克隆传递
+ */
+class RpcWorkerPool {
+	/**
+	 * @param {number} size - Worker数量
+	 * @param {string[]} scripts - 每个Worker启动时 importScripts 的脚本地址（如加密库）
+	 * @param {Function} log - 日志函数 (level, ...args)
+	 */
+	constructor(size, scripts, log) {
+		this.log = log;
+		this.sources = {}; // 方法名 -> 源码，Worker重建时重新定义
+		this.calls = new Map(); // 执行中的调用（序号 -> { resolve, worker }）
+		this.seq = 0; // 调用序号
+		this.next = 0; // 下一个分发的Worker
+		const body = (scripts.length ? `importScripts(...${JSON.stringify(scripts)});\n` : '') + RpcWorkerPool.SOURCE;
+		const url = URL.createObjectURL(new Blob([body], { type: 'text/javascript' }));
+		this.workers = [];
+		try {
+			for (let i = 0; i < size; i++) {
+				this.workers.push(this.spawn(url));
+			}
+		} catch (error) {
+			this.terminate(); // 已创建的Worker
+			throw error;
+		} finally {
+			URL.revokeObjectURL(url); // Worker创建时已读取脚本
+		}
+	}
+
+	static supported() {
+		return typeof Worker === 'function' && typeof Blob === 'function'
+			&& typeof URL !== 'undefined' && typeof URL.createObjectURL === 'function';
+	}
+
+	spawn(url) {
+		const worker = new Worker(url);
+		worker.onmessage = (event) => {
+			const reply = event.data;
+			const call = this.calls.get(reply.seq);
+			if (call) {
+				this.calls.delete(reply.seq);
+				call.resolve(reply);
+			}
+		};
+		worker.onerror = (event) => {
+			// 脚本加载失败或方法中异步抛出的异常，对应的调用由服务端超时结束
+			this.log('error', "Worker执行出错:", event.message);
+		};
+		Object.keys(this.sources).forEach(name => worker.postMessage({ type: 'define', name, source: this.sources[name] }));
+		return worker;
+	}
+
+	/**
+	 * 在全部Worker中定义（或替换）方法
+	 */
+	define(name, func) {
+		const source = func.toString();
+		this.sources[name] = source;
+		this.workers.forEach(worker => worker.postMessage({ type: 'define', name, source }));
+	}
+
+	/**
+	 * 轮询选择一个Worker执行方法
+	 * @param {AbortSignal} [signal] - 服务端取消调用时通知Worker
+	 * @returns {Promise<{status: number, result: any, elapsed: number}>}
+	 */
+	run(action, params, signal) {
+		const worker = this.workers[this.next];
+		this.next = (this.next + 1) % this.workers.length;
+		const seq = ++this.seq;
+		return new Promise(resolve => {
+			this.calls.set(seq, { resolve, worker });
+			if (signal) {
+				signal.addEventListener('abort', () => {
+					this.calls.delete(seq);
+					worker.postMessage({ type: 'cancel', seq });
+				});
+			}
+			try {
+				worker.postMessage({ type: 'call', seq, action, params });
+			} catch (error) {
+				// 参数无法结构化克隆
+				this.calls.delete(seq);
+				resolve({ status: 500, result: `执行错误: ${error.message}`, elapsed: 0 });
+			}
+		});
+	}
+
+	terminate() {
+		this.workers.forEach(worker => worker.terminate());
+		this.workers = [];
+		this.calls.clear();
+	}
+}
+
+// Worker端：按主线程发来的源码定义方法，执行后回传状态、结果和执行时间
+RpcWorkerPool.SOURCE = `
+const methods = {};
+const active = new Map();
+self.onmessage = (event) => {
+	const message = event.data;
+	if (message.type === 'define') {
+		try {
+			methods[message.name] = (0, eval)('(' + message.source + ')');
+		} catch (error) {
+			// 源码不是函数表达式（如对象方法简写）或页面的CSP禁止eval
+			const reason = '方法无法在Worker中定义: ' + error.message;
+			methods[message.name] = () => { throw new Error(reason); };
+		}
+		return;
+	}
+	if (message.type === 'cancel') {
+		const controller = active.get(message.seq);
+		if (controller) {
+			active.delete(message.seq);
+			controller.abort();
+		}
+		return;
+	}
+	const { seq, action, params } = message;
+	const controller = new AbortController();
+	active.set(seq, controller);
+	const start = performance.now();
+	const reply = (status, result) => {
+		if (active.get(seq) !== controller) {
+			return;
+		}
+		active.delete(seq);
+		const elapsed = performance.now() - start;
+		try {
+			self.postMessage({ seq, status, result, elapsed });
+		} catch (error) {
+			self.postMessage({ seq, status: 500, result: '执行错误: 结果无法传回主线程: ' + error.message, elapsed });
+		}
+	};
+	if (!methods[action]) {
+		reply(404, '方法 ' + action + ' 未注册');
+		return;
+	}
+	const resolve = (result) => reply(200, result);
+	resolve.signal = controller.signal;
+	try {
+		methods[action](resolve, ...params);
+	} catch (error) {
+		reply(500, '执行错误: ' + error.message);
+	}
+};
+`;
+
 class WebSocketRpcClient {
 	/**
 	 * 初始化WebSocket RPC客户端
 	 * @param {string} wsUrl - WebSocket服务器地址（如ws://localhost:10087/ws?group=test）
+	 *                        带 codec=cbor 参数时使用CBOR二进制帧
+	 * @param {Object} [options] - 可选项
+	 * @param {string} [options.logLevel] - 日志级别 debug / info（默认）/ warn / error / off，debug 输出每个请求和响应的摘要
+	 * @param {number} [options.workers] - Worker池大小，默认为CPU核数-1（至少1个），只在注册了 { worker: true } 的方法时创建
+	 * @param {string[]} [options.workerScripts] - 每个Worker启动时 importScripts 的脚本地址
 	 */
-	constructor(wsUrl) {
+	constructor(wsUrl, options = {}) {
 		this.wsUrl = wsUrl;
+		this.setLogLevel(options.logLevel || 'info');
+		this.workerCount = options.workers
+			|| Math.max(1, ((typeof navigator !== 'undefined' && navigator.hardwareConcurrency) || 2) - 1);
+		this.workerScripts = options.workerScripts || [];
+		this.pool = null; // Worker池，第一次注册 worker 方法时创建，不支持时为false（在主线程执行）
+		this.workerMethods = new Set(); // 在Worker中执行的方法
+		this.binary = /[?&]codec=cbor(&|$)/i.test(wsUrl); // 是否使用CBOR编码
 		this.socket = null;
 		this.methods = {}; // 存储注册的方法
+		this.cacheable = new Set(); // 结果可被服务端缓存的方法（纯函数）
 		this.reconnectAttempts = 0; // 重连尝试次数
 		this.maxReconnectAttempts = 10; // 最大重连尝试次数
 		this.reconnectInterval = 3000; // 重连间隔时间（毫秒）
 		this.heartbeatInterval = 25000; // 心跳间隔时间（毫秒）
 		this.heartbeatTimer = null; // 心跳定时器
+		this.outbox = []; // 批量请求的待发送响应
+		this.outboxScheduled = false; // 是否已安排发送待发送响应
+		this.active = new Map(); // 执行中的调用（请求ID -> AbortController），被服务端取消后结果不再回传
+		this.chunkSize = 512 * 1024; // 超过该字节数的响应拆成分片帧发送（服务端单帧上限默认10MB）
+		this.transferSeq = 0; // 发送分片时的传输ID序号
+		this.assemblies = new Map(); // 接收中的分片请求（传输ID -> 已收到的分片）
+		this.compressThreshold = 64 * 1024; // 超过该长度的响应gzip后发送（浏览器不支持时不压缩）
 		this.connect();
 	}
 
+	/**
+	 * 设置日志级别
+	 * @param {string} level - debug / info / warn / error / off
+	 */
+	setLogLevel(level) {
+		if (!(level in RpcLogLevels)) {
+			throw new Error(`未知的日志级别: ${level}`);
+		}
+		this.logLevel = level;
+		this.logThreshold = RpcLogLevels[level];
+	}
+
+	/**
+	 * 按级别输出日志，低于当前级别时不输出（调用方不要在参数中做昂贵的计算）
+	 */
+	log(level, ...args) {
+		if (RpcLogLevels[level] >= this.logThreshold) {
+			(level === 'error' ? console.error : level === 'warn' ? console.warn : console.log)(...args);
+		}
+	}
+
 	/**
 	 * 建立WebSocket连接
 	 */
 	connect() {
 		// 检查是否超过最大重连尝试次数
 		if (this.reconnectAttempts >= this.maxReconnectAttempts) {
-			console.error("超过最大重连尝试次数，停止重连");
+			this.log('error', "超过最大重连尝试次数，停止重连");
 			return;
 		}
 
 		this.socket = new WebSocket(this.wsUrl);
+		this.socket.binaryType = 'arraybuffer';
 
 		// 连接成功
 		this.socket.onopen = (event) => {
-			console.log("WebSocket连接已建立");
+			this.log('info', "WebSocket连接已建立");
 			this.reconnectAttempts = 0; // 重置重连尝试次数
+			this.sendRegisteredMethods(); // 上报已注册的方法，服务端据此路由
 		};
 
 		// 接收服务器消息（处理RPC调用）
@@ -38,25 +515,42 @@ class WebSocketRpcClient {
 			// 重置重连尝试次数
 			this.reconnectAttempts = 0;
 			
-			// 添加调试信息
-			console.log("[调试] 接收到的原始数据:", event.data);
-			console.log("[调试] 接收到的数据长度:", event.data.length);
+			if (this.logThreshold <= RpcLogLevels.debug) {
+				this.log('debug', "[调试] 接收到的数据长度:", event.data.length || event.data.byteLength);
+			}
 			try {
-				const request = JSON.parse(event.data);
-				this.handleRequest(request);
+				let data = event.data;
+				const chunk = typeof data === 'string' ? null : RpcChunks.decode(data);
+				if (chunk) {
+					data = this.assemble(chunk);
+					if (!data) {
+						return; // 等待后续分片
+					}
+				}
+				if (typeof data !== 'string' && RpcGzip.isGzip(data)) {
+					// 压缩消息异步解压，期间到达的其他消息照常处理
+					RpcGzip.decompress(data)
+						.then(message => this.receive(this.decodeBytes(message)))
+						.catch(error => this.log('error', "解压消息失败:", error));
+					return;
+				}
+				this.receive(chunk ? this.decodeBytes(data) : this.decode(data));
 			} catch (error) {
-				console.error("解析消息失败:", error);
+				this.log('error', "解析消息失败:", error);
 			}
 		};
 
 		// 连接关闭时自动重连
 		this.socket.onclose = (event) => {
-			console.log("连接已关闭，尝试重连... 尝试次数:", this.reconnectAttempts + 1);
+			// 服务端已不再等待执行中的调用
+			this.active.forEach((controller, id) => this.cancel(id));
+			this.assemblies.clear();
+			this.log('info', "连接已关闭，尝试重连... 尝试次数:", this.reconnectAttempts + 1);
 			this.reconnectAttempts++;
 			
 			// 检查关闭原因
 			if (event.code === 1006) {
-				console.warn("连接异常关闭，可能是网络问题或服务器问题");
+				this.log('warn', "连接异常关闭，可能是网络问题或服务器问题");
 			}
 			
 			// 延迟重连，避免过于频繁
@@ -65,48 +559,312 @@ class WebSocketRpcClient {
 		
 		// 错误处理
 		this.socket.onerror = (error) => {
-			console.error("WebSocket错误:", error);
+			this.log('error', "WebSocket错误:", error);
 		};
 	}
 
+	/**
+	 * 按协商的编码序列化消息（JSON字符串或CBOR字节）
+	 */
+	encode(message) {
+		return this.binary ? RpcCbor.encode(message) : JSON.stringify(message);
+	}
+
+	/**
+	 * 解析收到的消息，文本帧按JSON、二进制帧按CBOR
+	 */
+	decode(data) {
+		return typeof data === 'string' ? JSON.parse(data) : RpcCbor.decode(data);
+	}
+
+	/**
+	 * 按会话编码解析完整的消息字节（分片拼接或解压的结果）
+	 */
+	decodeBytes(bytes) {
+		return this.binary ? RpcCbor.decode(bytes) : JSON.parse(new TextDecoder().decode(bytes));
+	}
+
+	/**
+	 * 处理解析后的服务器消息
+	 */
+	receive(request) {
+		if (Array.isArray(request)) {
+			// 批量请求: [{id, action, params}, ...]
+			request.forEach(item => this.dispatch(item, true));
+		} else {
+			this.dispatch(request);
+		}
+	}
+
+	/**
+	 * 追加一个分片，收到最后一片时返回拼接后的完整消息字节
+	 * 分片请求的传输ID就是请求ID，请求被取消时丢弃已收到的分片
+	 */
+	assemble(chunk) {
+		let assembly = this.assemblies.get(chunk.id);
+		if (!assembly) {
+			if (chunk.seq !== 0) {
+				return null; // 开头的分片已被丢弃（调用已取消）
+			}
+			assembly = { parts: [], size: 0 };
+			this.assemblies.set(chunk.id, assembly);
+		}
+		if (chunk.seq !== assembly.parts.length) {
+			this.log('error', "分片乱序，丢弃请求:", chunk.id);
+			this.assemblies.delete(chunk.id);
+			return null;
+		}
+		assembly.parts.push(chunk.data);
+		assembly.size += chunk.data.length;
+		if (!chunk.last) {
+			return null;
+		}
+		this.assemblies.delete(chunk.id);
+		const message = new Uint8Array(assembly.size);
+		let offset = 0;
+		assembly.parts.forEach(part => {
+			message.set(part, offset);
+			offset += part.length;
+		});
+		return message;
+	}
+
+	/**
+	 * 发送已编码的消息，超过 compressThreshold 时先gzip（压缩效果不明显时仍发送原始数据）
+	 * @param {string|Uint8Array} data - JSON字符串或CBOR字节
+	 */
+	sendFrame(data) {
+		if (!RpcGzip.supported || data.length <= this.compressThreshold) {
+			this.sendRaw(data);
+			return;
+		}
+		// 字符串按字符数比较，压缩后的字节数小于字符数的90%时才值得发送压缩帧
+		RpcGzip.compress(data)
+			.then(compressed => this.sendRaw(compressed.length < data.length * 0.9 ? compressed : data),
+				error => {
+					this.log('error', "压缩消息失败，按原样发送:", error);
+					this.sendRaw(data);
+				})
+			.catch(error => this.log('error', "发送消息失败:", error));
+	}
+
+	/**
+	 * 发送消息，超过 chunkSize 字节时拆成分片帧发送
+	 * @param {string|Uint8Array} data - JSON字符串、CBOR字节或gzip字节
+	 */
+	sendRaw(data) {
+		// UTF-8最多3字节一个字符（代理对4字节对应2个字符），短字符串不需要编码就能确定大小
+		if (typeof data === 'string') {
+			if (data.length * 3 <= this.chunkSize) {
+				this.socket.send(data);
+				return;
+			}
+			const bytes = new TextEncoder().encode(data);
+			if (bytes.length <= this.chunkSize) {
+				this.socket.send(data);
+				return;
+			}
+			data = bytes;
+		} else if (data.length <= this.chunkSize) {
+			this.socket.send(data);
+			return;
+		}
+		const idBytes = new TextEncoder().encode('t' + (++this.transferSeq));
+		for (let offset = 0, seq = 0; offset < data.length; offset += this.chunkSize, seq++) {
+			const end = Math.min(offset + this.chunkSize, data.length);
+			this.socket.send(RpcChunks.encode(idBytes, seq, end === data.length, data.subarray(offset, end)));
+		}
+	}
+
 	/**
 	 * 注册供服务器调用的本地方法
 	 * @param {string} name - 方法名
 	 * @param {Function} func - 方法实现，第一个参数为返回结果的回调
+	 * @param {Object} [options] - 可选项
+	 * @param {boolean} [options.cacheable] - 相同参数总是返回相同结果，服务端可缓存
+	 * @param {boolean} [options.worker] - 方法是自包含的（只使用参数和 workerScripts 引入的脚本），在Worker池中执行；
+	 *                                     浏览器不支持或页面禁止创建Worker时仍在主线程执行
 	 */
-	register(name, func) {
+	register(name, func, options = {}) {
 		this.methods[name] = func;
-		console.log(`已注册方法: ${name}`);
+		if (options.cacheable) {
+			this.cacheable.add(name);
+		} else {
+			this.cacheable.delete(name);
+		}
+		if (options.worker && this.ensurePool()) {
+			this.pool.define(name, func);
+			this.workerMethods.add(name);
+		} else {
+			this.workerMethods.delete(name);
+		}
+		this.log('info', `已注册方法: ${name}${this.workerMethods.has(name) ? '（Worker）' : ''}`);
+		this.sendRegisteredMethods();
+	}
+
+	/**
+	 * 创建Worker池，不支持时返回false
+	 */
+	ensurePool() {
+		if (this.pool === null) {
+			try {
+				if (!RpcWorkerPool.supported()) {
+					throw new Error("当前环境不支持Web Worker");
+				}
+				this.pool = new RpcWorkerPool(this.workerCount, this.workerScripts, (level, ...args) => this.log(level, ...args));
+				this.log('info', `已创建Worker池，大小: ${this.workerCount}`);
+			} catch (error) {
+				// 例如页面的CSP禁止 blob: 脚本
+				this.log('warn', "创建Worker池失败，方法在主线程执行:", error.message);
+				this.pool = false;
+			}
+		}
+		return this.pool !== false;
+	}
+
+	/**
+	 * 向服务器上报当前注册的全部方法名
+	 * 格式: { type: "register", methods: ["base64", "enc"], cacheable: ["base64"], features: ["chunked", "gzip", "batch"] }
+	 * features 声明客户端支持的协议特性，chunked 表示能接收分片帧（服务端据此把大请求拆成分片发送），
+	 * gzip 表示能解压gzip帧（服务端据此压缩超过阈值的请求），batch 表示能处理多个请求合并成的数组帧（服务端据此合并排队的请求）
+	 */
+	sendRegisteredMethods() {
+		if (!this.socket || this.socket.readyState !== WebSocket.OPEN) {
+			return; // 连接建立后会在onopen中上报
+		}
+		const methods = Object.keys(this.methods)
+			.filter(name => name !== 'getRegisteredMethods');
+		try {
+			this.socket.send(this.encode({
+				type: "register",
+				methods: methods,
+				cacheable: methods.filter(name => this.cacheable.has(name)),
+				features: RpcGzip.supported ? ['chunked', 'gzip', 'batch'] : ['chunked', 'batch']
+			}));
+		} catch (error) {
+			this.log('error', "上报注册方法失败:", error);
+		}
+	}
+
+	/**
+	 * 分发服务器消息：取消通知或RPC请求
+	 * @param {Object} message - 服务器发送的消息
+	 * @param {boolean} batched - 是否来自批量请求
+	 */
+	dispatch(message, batched = false) {
+		if (message && message.type === 'cancel') {
+			// 取消通知: { type: "cancel", id: "请求ID" }
+			this.cancel(message.id);
+			return;
+		}
+		this.handleRequest(message, batched);
+	}
+
+	/**
+	 * 服务端已放弃该调用（超时或调用方取消）：中止执行，之后的 resolve 被忽略
+	 * 注册的方法可以通过 resolve.signal（AbortSignal）感知取消，跳过尚未开始的工作
+	 * @param {string} id - 请求ID
+	 */
+	cancel(id) {
+		this.assemblies.delete(id); // 仍在接收分片的请求
+		const controller = this.active.get(id);
+		if (!controller) {
+			return; // 已经响应过
+		}
+		this.active.delete(id);
+		if (controller.abort) {
+			controller.abort();
+		}
+		this.log('debug', "[调试] 调用已取消:", id);
 	}
 
 	/**
 	 * 处理服务器的RPC请求
+	 * 响应中的 elapsed 为方法从开始执行到 resolve 的毫秒数，服务端用于统计和路由
 	 * @param {Object} request - 服务器发送的请求对象
+	 * @param {boolean} batched - 是否来自批量请求（响应合并后批量发送）
 	 */
-	handleRequest(request) {
+	handleRequest(request, batched = false) {
 		// 请求格式: { id: "请求ID", action: "方法名", params: [参数1, 参数2] }
 		const {
 			id,
 			action,
 			params = []
 		} = request;
-		console.log("[调试] 接收到的请求:", request);
-		console.log("[调试] 请求参数:", params);
+		this.log('debug', "[调试] 接收到的请求:", id, action);
+
+		const controller = typeof AbortController !== 'undefined' ? new AbortController() : {};
+		this.active.set(id, controller);
+		const start = performance.now();
+		const respond = (status, data, elapsed = performance.now() - start) => {
+			// 已被取消或已经响应过的调用不再回传
+			if (this.active.get(id) !== controller) {
+				return;
+			}
+			this.active.delete(id);
+			if (batched) {
+				this.queueResponse(id, status, data, elapsed);
+			} else {
+				this.sendResponse(id, status, data, elapsed);
+			}
+		};
 
 		// 检查方法是否存在
 		if (!this.methods[action]) {
-			this.sendResponse(id, 404, `方法 ${action} 未注册`);
+			respond(404, `方法 ${action} 未注册`);
+			return;
+		}
+
+		if (this.workerMethods.has(action)) {
+			this.pool.run(action, params, controller.signal)
+				.then(reply => respond(reply.status, reply.result, reply.elapsed));
 			return;
 		}
 
 		// 执行方法并返回结果
 		try {
-			const resolve = (result) => this.sendResponse(id, 200, result);
-			console.log(resolve);
-			//console.log(...params);
+			const resolve = (result) => respond(200, result);
+			resolve.signal = controller.signal; // 服务端取消调用时触发 abort 事件
 			this.methods[action](resolve, ...params);
 		} catch (error) {
-			this.sendResponse(id, 500, `执行错误: ${error.message}`);
+			respond(500, `执行错误: ${error.message}`);
+		}
+	}
+
+	/**
+	 * 缓存批量请求的响应，在当前事件循环结束后合并成一个数组发送
+	 */
+	queueResponse(id, status, data, elapsed) {
+		this.outbox.push({
+			callbackId: id,
+			status: status,
+			result: data,
+			elapsed: Math.round(elapsed * 1000) / 1000
+		});
+		if (!this.outboxScheduled) {
+			this.outboxScheduled = true;
+			setTimeout(() => this.flushResponses(), 0);
+		}
+	}
+
+	/**
+	 * 发送缓存的响应，多个响应合并为一个数组
+	 */
+	flushResponses() {
+		this.outboxScheduled = false;
+		const responses = this.outbox;
+		this.outbox = [];
+		if (responses.length === 0) {
+			return;
+		}
+		if (this.socket.readyState !== WebSocket.OPEN) {
+			this.log('warn', "WebSocket连接未打开，无法发送响应");
+			return;
+		}
+		try {
+			this.sendFrame(this.encode(responses.length === 1 ? responses[0] : responses));
+		} catch (error) {
+			this.log('error', "发送响应失败:", error);
 		}
 	}
 
@@ -115,29 +873,29 @@ class WebSocketRpcClient {
 	 * @param {string} id - 对应请求的ID
 	 * @param {number} status - 状态码(200成功, 404未找到, 500错误)
 	 * @param {any} data - 响应数据
+	 * @param {number} elapsed - 方法执行时间（毫秒）
 	 */
-	sendResponse(id, status, data) {
+	sendResponse(id, status, data, elapsed) {
 		if (this.socket.readyState !== WebSocket.OPEN) {
-			console.warn("WebSocket连接未打开，无法发送响应");
+			this.log('warn', "WebSocket连接未打开，无法发送响应");
 			return;
 		}
 
 		const response = {
 			callbackId: id,
 			status: status,
-			result: data
+			result: data,
+			elapsed: Math.round(elapsed * 1000) / 1000
 		};
 		
-		// 添加调试信息
-		console.log("[调试] 发送的响应:", response);
-		const responseJson = JSON.stringify(response);
-		console.log("[调试] 发送的JSON响应:", responseJson);
+		const responseJson = this.encode(response);
+		this.log('debug', "[调试] 发送的响应:", id, status, `${response.elapsed}ms`);
 		
 		// 发送响应
 		try {
-			this.socket.send(responseJson);
+			this.sendFrame(responseJson);
 		} catch (error) {
-			console.error("发送响应失败:", error);
+			this.log('error', "发送响应失败:", error);
 		}
 	}
 }
@@ -158,8 +916,14 @@ client.register('getRegisteredMethods', (resolve) => {
 client.register('base64', (resolve,a) => {
   var res = btoa(a)
   resolve(res); // 返回页面标题给服务器
-});
+}, { cacheable: true }); // 纯函数，服务端可缓存结果
 
+// 计算密集、只依赖参数的方法可以放到Worker池中执行，多个调用同时使用多个CPU核心，页面不会卡顿
+// client.register('sum', (resolve, n) => {
+// 	let total = 0;
+// 	for (let i = 0; i < n; i++) total += i;
+// 	resolve(total);
+// }, { worker: true });
 
 console.log(`client.register('enc', (resolve, a) => {
 	var aa = JSON.parse(a)
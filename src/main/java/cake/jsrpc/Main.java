@@ -3,6 +3,7 @@ package cake.jsrpc;
 import org.springframework.boot.SpringApplication;
 import org.springframework.context.ConfigurableApplicationContext;
 import cake.jsrpc.websocket.WebSocketRpcApplication;
+import cake.jsrpc.websocket.lite.LiteServer;
 //public class Main {
 //    public static void main(String[] args) {
 //        System.out.println("Main!!!");
@@ -10,9 +11,20 @@ import cake.jsrpc.websocket.WebSocketRpcApplication;
 //}
 
 public class Main {
+    private static final String LITE_MODE = "--mode=lite";
+
     private static ConfigurableApplicationContext context;
+    private static LiteServer liteServer;
+
+    public static void main(String[] args) throws Exception {
+        // 轻量模式：不创建Spring容器，启动更快、占用内存更少（没有 /actuator）
+        if (java.util.Arrays.asList(args).contains(LITE_MODE)) {
+            liteServer = new LiteServer(args).start();
+            System.out.println("WebSocket RPC 服务已启动（轻量模式），地址: ws://0.0.0.0:" + liteServer.getPort() + "/ws");
+            System.out.println("等待浏览器客户端连接...");
+            return;
+        }
 
-    public static void main(String[] args) {
         // 确保正确启动 WebSocketRpcApplication
         context = SpringApplication.run(WebSocketRpcApplication.class, args);
         
@@ -35,6 +47,9 @@ public class Main {
         }
     }
     private static void  registerShutdownHandler() {
+        if (liteServer != null) {
+            liteServer.stop();
+        }
         if (context != null && context.isRunning()) {
             SpringApplication.exit(context);
             //api.logging().logToOutput("RPC服务器已停止");
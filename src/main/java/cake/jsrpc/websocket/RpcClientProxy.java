@@ -1,26 +1,84 @@
 package cake.jsrpc.websocket;
 
+import cake.jsrpc.websocket.client.JsRpcClient;
+import cake.jsrpc.websocket.handler.RpcPriority;
 import cake.jsrpc.websocket.handler.RpcWebSocketHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.context.ApplicationContext;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
 /**
  * RPC客户端代理类，供外部（如Burp插件）调用
- * 通过Spring上下文获取Handler并调用其方法
+ * 启动时从Spring上下文取得Handler并缓存，调用时不再查找容器
+ * 需要类型转换或接口绑定时使用 {@link #client()}
  */
 public class RpcClientProxy {
+
+    private static final Logger log = LoggerFactory.getLogger(RpcClientProxy.class);
+    private static final String NOT_INITIALIZED = "RPC服务器未初始化，请先启动WebSocket RPC Application";
     
-    private static ApplicationContext applicationContext;
+    private static volatile RpcWebSocketHandler handler;
+    private static volatile JsRpcClient client;
     
     /**
      * 设置Spring应用上下文（在应用启动时调用）
      */
     public static void setApplicationContext(ApplicationContext context) {
-        applicationContext = context;
-        System.out.println("[DEBUG] RpcClientProxy.setApplicationContext() 被调用");
-        System.out.println("[DEBUG] ApplicationContext: " + (context != null ? context.getClass().getSimpleName() : "null"));
+        setHandler(context != null ? context.getBean(RpcWebSocketHandler.class) : null);
+        log.debug("设置ApplicationContext: {}", context != null ? context.getClass().getSimpleName() : null);
+    }
+
+    /**
+     * 直接设置Handler（不使用Spring容器启动时调用）
+     */
+    public static void setHandler(RpcWebSocketHandler rpcHandler) {
+        client = rpcHandler != null ? JsRpcClient.builder().handler(rpcHandler).build() : null;
+        handler = rpcHandler;
+    }
+
+    /**
+     * 获取共享的 {@link JsRpcClient}：按类型返回结果、错误以 RpcException 抛出、支持接口绑定
+     * @throws IllegalStateException RPC服务器未初始化
+     */
+    public static JsRpcClient client() {
+        JsRpcClient current = client;
+        if (current == null) {
+            throw new IllegalStateException(NOT_INITIALIZED);
+        }
+        return current;
+    }
+
+    /**
+     * 取得Handler，未初始化时抛出异常（同步调用使用）
+     */
+    private static RpcWebSocketHandler handlerOrFail() {
+        RpcWebSocketHandler current = handler;
+        if (current == null) {
+            throw new RuntimeException(NOT_INITIALIZED);
+        }
+        return current;
+    }
+
+    /**
+     * 用Handler发起异步调用，未初始化时返回以异常结束的Future（异步调用不抛出）
+     */
+    private static CompletableFuture<Object> withHandler(Function<RpcWebSocketHandler, CompletableFuture<Object>> call) {
+        RpcWebSocketHandler current = handler;
+        return current != null ? call.apply(current) : notInitialized();
+    }
+
+    private static CompletableFuture<Object> notInitialized() {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        future.completeExceptionally(new RuntimeException(NOT_INITIALIZED));
+        return future;
     }
     
     /**
@@ -28,38 +86,250 @@ public class RpcClientProxy {
      * @param action 方法名
      * @param params 参数列表
      * @return 执行结果
+     * @throws cake.jsrpc.websocket.handler.RpcException 状态码429：浏览器客户端繁忙（在途请求和等待队列已满），可稍后重试
      * @throws Exception 调用异常
      */
     public static Object call(String action, Object... params) throws Exception {
-        if (applicationContext == null) {
-            throw new RuntimeException("RPC服务器未初始化，请先启动WebSocket RPC Application");
-        }
-        
-        RpcWebSocketHandler handler = applicationContext.getBean(RpcWebSocketHandler.class);
-        return handler.invokeRemoteMethod(action, params);
+        return handlerOrFail().invokeRemoteMethod(action, params);
+    }
+
+    /**
+     * 指定超时调用浏览器端的RPC方法，超时后浏览器端会收到取消通知
+     * 不与 {@link #call} 重载：可变参数的调用 call("enc", 5000L, "x") 会有歧义
+     * @param action 方法名
+     * @param timeoutMs 超时（毫秒），小于等于0时使用默认超时
+     * @param params 参数列表
+     * @return 执行结果，超时返回 "超时: 未收到响应"
+     * @throws Exception 调用异常
+     */
+    public static Object callWithTimeout(String action, long timeoutMs, Object... params) throws Exception {
+        return handlerOrFail().invokeWithTimeout(action, timeoutMs, params);
+    }
+
+    /**
+     * 调用浏览器端的RPC方法，大结果不解析成字符串：
+     * 浏览器分片回传的结果以 {@link cake.jsrpc.websocket.transfer.RawResult} 返回，
+     * 调用方必须调用其 writeTo（流式写出）或 release（丢弃）归还缓冲区；未分片的小结果照常返回
+     * @param action 方法名
+     * @param timeoutMs 超时（毫秒），小于等于0时使用默认超时
+     * @param params 参数列表
+     * @return RawResult 或普通结果
+     * @throws cake.jsrpc.websocket.handler.RpcException 超时、方法未注册、浏览器执行错误等一律抛出，不转换成字符串结果
+     */
+    public static Object callStream(String action, long timeoutMs, Object... params) throws Exception {
+        return handlerOrFail().invokeStreaming(action, timeoutMs, params);
+    }
+
+    /**
+     * 异步版本的 {@link #callStream}
+     * @return RawResult 或普通结果的Future，超时、方法未注册、浏览器执行错误等以 RpcException 异常结束
+     */
+    public static CompletableFuture<Object> callStreamAsync(String action, long timeoutMs, Object... params) {
+        return withHandler(h -> h.invokeStreamingAsync(action, timeoutMs, params));
+    }
+
+    /**
+     * 异步调用浏览器端的RPC方法，不阻塞调用线程
+     * @param action 方法名
+     * @param params 参数列表
+     * @return 执行结果的Future，超时、客户端繁忙（429）或无可用客户端时以 RpcException 异常结束
+     */
+    public static CompletableFuture<Object> callAsync(String action, Object... params) {
+        return withHandler(h -> h.invokeRemoteMethodAsync(action, params));
+    }
+    
+    /**
+     * 指定超时异步调用浏览器端的RPC方法
+     * 超时或对返回的Future调用 cancel 后，浏览器端会收到取消通知并丢弃迟到的结果
+     * @param action 方法名
+     * @param timeoutMs 超时（毫秒），小于等于0时使用默认超时
+     * @param params 参数列表
+     * @return 执行结果的Future
+     */
+    public static CompletableFuture<Object> callAsyncWithTimeout(String action, long timeoutMs, Object... params) {
+        return withHandler(h -> h.invokeWithTimeoutAsync(action, timeoutMs, params));
     }
     
+    /**
+     * 批量调用浏览器端的同一个RPC方法，多个调用合并在一个WebSocket帧中发送
+     * @param action 方法名
+     * @param params 每次调用的参数列表
+     * @return 与 params 一一对应的执行结果
+     * @throws Exception 调用异常
+     */
+    public static List<Object> callBatch(String action, List<Object[]> params) throws Exception {
+        return handlerOrFail().invokeRemoteBatch(action, params);
+    }
+
+    /**
+     * 异步批量调用浏览器端的同一个RPC方法
+     * @return 与 params 一一对应的执行结果Future
+     */
+    public static List<CompletableFuture<Object>> callBatchAsync(String action, List<Object[]> params) {
+        RpcWebSocketHandler current = handler;
+        if (current == null) {
+            return new ArrayList<>(Collections.nCopies(params.size(), notInitialized()));
+        }
+        return current.invokeRemoteBatchAsync(action, params);
+    }
+
+    /**
+     * 调用指定分组的浏览器端RPC方法：只路由到以 ?group= 连接到该分组的客户端
+     * 不与 {@link #call} 重载：call("enc", "x") 无法区分分组名和参数
+     * @param group 分组名（rpc.js 连接地址上的 group 参数，未指定时为 default）
+     * @param action 方法名
+     * @param params 参数列表
+     * @return 执行结果，返回值约定同 {@link #call}
+     * @throws cake.jsrpc.websocket.handler.RpcException 状态码503：该分组没有客户端连接
+     */
+    public static Object callGroup(String group, String action, Object... params) throws Exception {
+        return handlerOrFail().invokeGroup(group, action, 0, params);
+    }
+
+    /**
+     * 指定超时调用指定分组的浏览器端RPC方法
+     * @param timeoutMs 超时（毫秒），小于等于0时使用默认超时
+     */
+    public static Object callGroupWithTimeout(String group, String action, long timeoutMs, Object... params) throws Exception {
+        return handlerOrFail().invokeGroup(group, action, timeoutMs, params);
+    }
+
+    /**
+     * 异步调用指定分组的浏览器端RPC方法
+     * @param group 分组名，为null时不限分组
+     * @param timeoutMs 超时（毫秒），小于等于0时使用默认超时
+     */
+    public static CompletableFuture<Object> callGroupAsync(String group, String action, long timeoutMs, Object... params) {
+        return withHandler(h -> h.invokeGroupAsync(group, action, timeoutMs, params));
+    }
+
+    /**
+     * 以指定优先级调用浏览器端的RPC方法，例如手工测试用 {@link RpcPriority#INTERACTIVE}，
+     * 扫描器用 {@link RpcPriority#BULK}：浏览器繁忙时交互调用不必排在大量扫描调用之后
+     * @param priority 优先级通道
+     * @param action 方法名
+     * @param params 参数列表
+     * @return 执行结果，返回值约定同 {@link #call}
+     */
+    public static Object callWithPriority(RpcPriority priority, String action, Object... params) throws Exception {
+        return handlerOrFail().invokeGroup(null, priority, action, 0, params);
+    }
+
+    /**
+     * 以指定优先级异步调用指定分组的浏览器端RPC方法
+     * @param group 分组名，为null时不限分组
+     * @param priority 优先级通道
+     * @param timeoutMs 超时（毫秒），小于等于0时使用默认超时
+     */
+    public static CompletableFuture<Object> callGroupAsync(String group, RpcPriority priority, String action, long timeoutMs,
+                                                           Object... params) {
+        return withHandler(h -> h.invokeGroupAsync(group, priority, action, timeoutMs, params));
+    }
+
+    /**
+     * 指定分组的 {@link #callStreamAsync}
+     * @param group 分组名，为null时不限分组
+     */
+    public static CompletableFuture<Object> callGroupStreamAsync(String group, String action, long timeoutMs, Object... params) {
+        return withHandler(h -> h.invokeGroupStreamingAsync(group, action, timeoutMs, params));
+    }
+
+    /**
+     * 指定分组和优先级的 {@link #callStreamAsync}
+     * @param group 分组名，为null时不限分组
+     * @param priority 优先级通道
+     */
+    public static CompletableFuture<Object> callGroupStreamAsync(String group, RpcPriority priority, String action,
+                                                                 long timeoutMs, Object... params) {
+        return withHandler(h -> h.invokeGroupStreamingAsync(group, priority, action, timeoutMs, params));
+    }
+
+    /**
+     * 指定分组的 {@link #callBatchAsync}
+     * @param group 分组名，为null时不限分组
+     */
+    public static List<CompletableFuture<Object>> callGroupBatchAsync(String group, String action, List<Object[]> params) {
+        RpcWebSocketHandler current = handler;
+        if (current == null) {
+            return new ArrayList<>(Collections.nCopies(params.size(), notInitialized()));
+        }
+        return current.invokeGroupBatchAsync(group, action, params);
+    }
+
+    /**
+     * 获取调用指标汇总
+     */
+    public static Map<String, Object> getStats() {
+        if (handler == null) {
+            return new HashMap<>();
+        }
+        return handler.getStats();
+    }
+
+    /**
+     * 获取指定分组的调用指标
+     * @param group 分组名，为null时返回全局汇总
+     */
+    public static Map<String, Object> getStats(String group) {
+        if (handler == null) {
+            return new HashMap<>();
+        }
+        return handler.getStats(group);
+    }
+
+    /**
+     * 获取各分组的客户端数量
+     */
+    public static Map<String, Integer> getGroups() {
+        if (handler == null) {
+            return new HashMap<>();
+        }
+        return handler.getGroups();
+    }
+
+    /**
+     * 获取结果缓存统计
+     */
+    public static Map<String, Object> getCacheStats() {
+        if (handler == null) {
+            return new HashMap<>();
+        }
+        return handler.getCacheStats();
+    }
+
+    /**
+     * 清除结果缓存
+     * @param action 方法名，为null时清除全部
+     * @return 清除的条目数
+     */
+    public static int invalidateCache(String action) {
+        if (handler == null) {
+            return 0;
+        }
+        return handler.invalidateCache(action);
+    }
+
     /**
      * 获取当前连接的客户端数量
      */
     public static int getClientCount() {
-        System.out.println("[DEBUG] RpcClientProxy.getClientCount() 被调用");
-        System.out.println("[DEBUG] applicationContext 是否为null: " + (applicationContext == null));
-        
-        if (applicationContext == null) {
-            System.out.println("[DEBUG] applicationContext为null，返回0");
+        return getClientCount(null);
+    }
+
+    /**
+     * 获取指定分组的客户端数量
+     * @param group 分组名，为null时返回全部客户端数量
+     */
+    public static int getClientCount(String group) {
+        if (handler == null) {
+            log.debug("handler为null，返回0");
             return 0;
         }
         
         try {
-            RpcWebSocketHandler handler = applicationContext.getBean(RpcWebSocketHandler.class);
-            System.out.println("[DEBUG] 获取到RpcWebSocketHandler: " + handler);
-            int count = handler.getConnectedClientCount();
-            System.out.println("[DEBUG] 返回客户端数量: " + count);
-            return count;
+            return handler.getConnectedClientCount(group);
         } catch (Exception e) {
-            System.err.println("[ERROR] 获取Handler失败: " + e.getMessage());
-            e.printStackTrace();
+            log.error("获取Handler失败", e);
             return 0;
         }
     }
@@ -70,21 +340,25 @@ public class RpcClientProxy {
      * @return 方法名列表
      */
     public static List<String> getRegisteredMethods() {
-        System.out.println("[DEBUG] RpcClientProxy.getRegisteredMethods() 被调用");
-            
-        if (applicationContext == null) {
-            System.out.println("[DEBUG] applicationContext为null，返回空列表");
+        return getRegisteredMethods(null);
+    }
+
+    /**
+     * 获取指定分组的客户端注册的方法列表
+     * @param group 分组名，为null时不限分组
+     */
+    public static List<String> getRegisteredMethods(String group) {
+        if (handler == null) {
+            log.debug("handler为null，返回空列表");
             return new ArrayList<>();
         }
             
         try {
-            RpcWebSocketHandler handler = applicationContext.getBean(RpcWebSocketHandler.class);
-            List<String> methods = handler.getRegisteredMethods();
-            System.out.println("[DEBUG] 获取到注册方法: " + methods);
+            List<String> methods = handler.getRegisteredMethods(group);
+            log.debug("获取到注册方法: {}", methods);
             return methods;
         } catch (Exception e) {
-            System.err.println("[ERROR] 获取注册方法失败: " + e.getMessage());
-            e.printStackTrace();
+            log.error("获取注册方法失败", e);
             return new ArrayList<>();
         }
     }
@@ -0,0 +1,41 @@
+package cake.jsrpc.websocket.cache;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+/**
+ * 调用键：方法名 + 分组 + 规范化后的参数JSON
+ * 结果缓存（{@link RpcResultCache}）和调用记录回放（{@link cake.jsrpc.websocket.replay.ReplayStore}）共用，
+ * 同一个调用在两处总是对应同一个键
+ */
+public class CallKeys {
+
+    // 参数规范化用的ObjectMapper（Map键、对象属性按字母排序）
+    private final ObjectMapper keyMapper;
+
+    public CallKeys(ObjectMapper objectMapper) {
+        this.keyMapper = objectMapper.copy()
+                .configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true)
+                .configure(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY, true);
+    }
+
+    /**
+     * @param group 分组名，为null时不区分分组
+     * @throws JsonProcessingException 参数无法规范化
+     */
+    public String key(String action, String group, Object[] params) throws JsonProcessingException {
+        // 分组放在方法名之后，按方法前缀匹配时包含各分组的键
+        return group == null
+                ? prefix(action) + keyMapper.writeValueAsString(params)
+                : prefix(action) + '@' + group + '\n' + keyMapper.writeValueAsString(params);
+    }
+
+    /**
+     * 该方法全部键（包括各分组）的共同前缀
+     */
+    public static String prefix(String action) {
+        return action + '\n';
+    }
+}
@@ -0,0 +1,152 @@
+package cake.jsrpc.websocket.cache;
+
+import cake.jsrpc.websocket.config.RpcProperties;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Policy;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 纯函数调用结果缓存（base64、固定密钥的enc、哈希/签名等）
+ * 键为 方法名 + 规范化后的参数JSON（见 {@link CallKeys}），按权重（估算字节数）或条目数淘汰（W-TinyLFU），写入后TTL过期。
+ * 同一个键的并发调用共享同一次浏览器往返；失败的调用不会被缓存。
+ */
+public class RpcResultCache {
+
+    private final boolean enabled;
+    // 服务端配置的可缓存方法
+    private final Set<String> configuredActions;
+    private final CallKeys callKeys;
+    private final AsyncCache<String, Object> cache;
+
+    public RpcResultCache(RpcProperties.Cache config, ObjectMapper objectMapper) {
+        this.enabled = config.isEnabled();
+        this.configuredActions = Collections.unmodifiableSet(new HashSet<>(config.getActions()));
+        this.callKeys = new CallKeys(objectMapper);
+
+        Caffeine<Object, Object> builder = Caffeine.newBuilder().recordStats();
+        if (config.getMaxWeightBytes() > 0) {
+            builder.maximumWeight(config.getMaxWeightBytes())
+                    .weigher((String key, Object value) -> key.length() * 2 + estimateWeight(value));
+        } else {
+            builder.maximumSize(config.getMaxEntries());
+        }
+        if (config.getTtlSeconds() > 0) {
+            builder.expireAfterWrite(config.getTtlSeconds(), TimeUnit.SECONDS);
+        }
+        this.cache = builder.buildAsync();
+    }
+
+    /**
+     * 服务端配置中是否声明了该方法可缓存
+     */
+    public boolean isConfigured(String action) {
+        return configuredActions.contains(action);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 查询缓存，未命中时调用loader发起浏览器调用，同一个键的并发调用只发起一次
+     * @param loader 发起实际调用，返回的Future异常结束时结果不会被缓存
+     */
+    public CompletableFuture<Object> get(String action, Object[] params, Supplier<CompletableFuture<Object>> loader) {
+        return get(action, null, params, loader);
+    }
+
+    /**
+     * 按分组隔离的 {@link #get}：不同分组连接的是不同的目标站点，同名方法的结果互不共用
+     * @param group 分组名，为null时与不指定分组的调用共用缓存
+     */
+    public CompletableFuture<Object> get(String action, String group, Object[] params, Supplier<CompletableFuture<Object>> loader) {
+        String key;
+        try {
+            key = callKeys.key(action, group, params);
+        } catch (JsonProcessingException e) {
+            // 参数无法规范化，不走缓存
+            return loader.get();
+        }
+        // 返回副本，避免调用方完成或取消共享的Future而污染缓存
+        return cache.get(key, (k, executor) -> loader.get()).thenApply(Function.identity());
+    }
+
+    /**
+     * 清除指定方法的缓存，action为null时清除全部
+     * @return 清除的条目数
+     */
+    public int invalidate(String action) {
+        Map<String, CompletableFuture<Object>> entries = cache.asMap();
+        if (action == null) {
+            int size = entries.size();
+            entries.clear();
+            return size;
+        }
+        // 各分组的结果一并清除
+        String prefix = CallKeys.prefix(action);
+        int removed = 0;
+        for (Iterator<String> it = entries.keySet().iterator(); it.hasNext(); ) {
+            if (it.next().startsWith(prefix)) {
+                it.remove();
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * 缓存统计（命中、未命中、加载、淘汰、当前大小）
+     */
+    public Map<String, Object> stats() {
+        CacheStats stats = cache.synchronous().stats();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("enabled", enabled);
+        result.put("configuredActions", configuredActions);
+        result.put("hitCount", stats.hitCount());
+        result.put("missCount", stats.missCount());
+        result.put("hitRate", stats.hitRate());
+        result.put("loadSuccessCount", stats.loadSuccessCount());
+        result.put("loadFailureCount", stats.loadFailureCount());
+        result.put("evictionCount", stats.evictionCount());
+        result.put("size", cache.synchronous().estimatedSize());
+        Optional<Policy.Eviction<String, Object>> eviction = cache.synchronous().policy().eviction();
+        eviction.ifPresent(e -> e.weightedSize().ifPresent(w -> result.put("weightBytes", w)));
+        return result;
+    }
+
+    /**
+     * 粗略估算结果占用的字节数，只用于淘汰权重
+     */
+    private static int estimateWeight(Object value) {
+        if (value instanceof CharSequence) {
+            return 40 + ((CharSequence) value).length() * 2;
+        }
+        if (value instanceof byte[]) {
+            return 16 + ((byte[]) value).length;
+        }
+        if (value instanceof Collection) {
+            int weight = 16;
+            for (Object item : (Collection<?>) value) {
+                weight += estimateWeight(item);
+            }
+            return weight;
+        }
+        if (value instanceof Map) {
+            int weight = 48;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                weight += 32 + estimateWeight(entry.getKey()) + estimateWeight(entry.getValue());
+            }
+            return weight;
+        }
+        return 16;
+    }
+}
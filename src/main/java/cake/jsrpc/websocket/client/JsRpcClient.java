@@ -0,0 +1,436 @@
+package cake.jsrpc.websocket.client;
+
+import cake.jsrpc.websocket.handler.RpcException;
+import cake.jsrpc.websocket.handler.RpcPriority;
+import cake.jsrpc.websocket.handler.RpcWebSocketHandler;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.context.ApplicationContext;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * 进程内调用浏览器方法的客户端（例如Burp插件），线程安全，应创建一次后复用
+ * 构建时取得并缓存 {@link RpcWebSocketHandler}，每次调用不再查找Spring容器；结果按指定类型转换
+ * 与 {@link cake.jsrpc.websocket.RpcClientProxy} 不同，超时、方法未注册、浏览器执行错误等一律以 {@link RpcException} 抛出，
+ * 不会作为字符串结果返回
+ * <pre>
+ * JsRpcClient client = JsRpcClient.builder().applicationContext(context).timeoutMs(5000).build();
+ * String cipher = client.call("enc", String.class, "data");
+ * EncApi api = client.bind(EncApi.class);
+ * // 只调用以 ws://.../ws?group=shop 连接的客户端
+ * JsRpcClient shop = JsRpcClient.builder().applicationContext(context).group("shop").build();
+ * // 扫描器使用批量通道，不挤占手工测试的调用
+ * JsRpcClient scanner = JsRpcClient.builder().applicationContext(context).priority(RpcPriority.BULK).build();
+ * </pre>
+ */
+public class JsRpcClient {
+
+    private static final Object[] NO_PARAMS = new Object[0];
+
+    private final RpcWebSocketHandler handler;
+    private final ObjectMapper objectMapper;
+    private final long timeoutMs;
+    // 调用的分组，null表示不限分组
+    private final String group;
+    // 调用的优先级通道
+    private final RpcPriority priority;
+    // 结果类型 -> 转换器（类型数量有限，缓存后调用时不再构造JavaType）
+    private final Map<Class<?>, ResultConverter> converters = new ConcurrentHashMap<>();
+
+    private JsRpcClient(Builder builder) {
+        this.handler = builder.handler;
+        this.objectMapper = builder.objectMapper != null ? builder.objectMapper : new ObjectMapper();
+        this.timeoutMs = builder.timeoutMs;
+        this.group = builder.group;
+        this.priority = builder.priority;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 调用浏览器方法并等待结果
+     * @param type 结果类型，浏览器返回的值不是该类型时按JSON规则转换（例如对象转成Java Bean）
+     * @throws RpcException 超时、方法未注册、浏览器执行错误、客户端繁忙（429）或无可用客户端
+     */
+    public <T> T call(String action, Class<T> type, Object... params) {
+        return await(callAsync(action, type, params));
+    }
+
+    /**
+     * 指定超时调用浏览器方法并等待结果
+     * @param timeoutMs 超时（毫秒），小于等于0时使用默认超时
+     */
+    public <T> T callWithTimeout(String action, long timeoutMs, Class<T> type, Object... params) {
+        return await(callAsyncWithTimeout(action, timeoutMs, type, params));
+    }
+
+    /**
+     * 异步调用浏览器方法，不阻塞调用线程；取消返回的Future会通知浏览器放弃执行
+     */
+    public <T> CompletableFuture<T> callAsync(String action, Class<T> type, Object... params) {
+        return callAsyncWithTimeout(action, timeoutMs, type, params);
+    }
+
+    /**
+     * 指定超时异步调用浏览器方法
+     * @param timeoutMs 超时（毫秒），小于等于0时使用默认超时
+     */
+    public <T> CompletableFuture<T> callAsyncWithTimeout(String action, long timeoutMs, Class<T> type, Object... params) {
+        return invoke(action, timeoutMs, converter(type), params);
+    }
+
+    /**
+     * 批量调用同一个浏览器方法，多个调用合并在一个WebSocket帧中发送
+     * @param params 每次调用的参数列表
+     * @return 与 params 一一对应的结果，任一调用失败时抛出该调用的 {@link RpcException}
+     */
+    public <T> List<T> callBatch(String action, Class<T> type, List<Object[]> params) {
+        List<CompletableFuture<T>> futures = callBatchAsync(action, type, params);
+        List<T> results = new ArrayList<>(futures.size());
+        for (CompletableFuture<T> future : futures) {
+            results.add(await(future));
+        }
+        return results;
+    }
+
+    /**
+     * 异步批量调用同一个浏览器方法
+     * @return 与 params 一一对应的结果Future
+     */
+    public <T> List<CompletableFuture<T>> callBatchAsync(String action, Class<T> type, List<Object[]> params) {
+        ResultConverter converter = converter(type);
+        List<CompletableFuture<Object>> futures = handler.invokeGroupBatchAsync(group, action, params);
+        List<CompletableFuture<T>> results = new ArrayList<>(futures.size());
+        for (CompletableFuture<Object> future : futures) {
+            results.add(converter.apply(future));
+        }
+        return results;
+    }
+
+    /**
+     * 生成接口的代理：每个接口方法对应一个浏览器方法（方法名或 {@link RpcMethod} 指定的名称），参数按顺序传递
+     * 返回类型为 {@link CompletableFuture} 时异步调用，void 时等待调用结束，其他类型等待结果并转换
+     * 接口的默认方法不调用浏览器，按接口中的实现执行（可以在其中组合调用其他浏览器方法）
+     * 方法名、超时和结果转换在绑定时确定，调用时只查一次表
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T bind(Class<T> api) {
+        if (!api.isInterface()) {
+            throw new IllegalArgumentException(api.getName() + " 不是接口");
+        }
+        Map<Method, BoundMethod> methods = new HashMap<>();
+        Map<Method, MethodHandle> defaults = new HashMap<>();
+        for (Method method : api.getMethods()) {
+            if (Modifier.isStatic(method.getModifiers())) {
+                continue;
+            }
+            if (method.isDefault()) {
+                defaults.put(method, defaultMethodHandle(method));
+            } else {
+                methods.put(method, new BoundMethod(method));
+            }
+        }
+        return (T) Proxy.newProxyInstance(api.getClassLoader(), new Class<?>[]{api},
+                new BindingHandler(api, methods, defaults));
+    }
+
+    /**
+     * 当前连接的浏览器客户端数（指定了分组时为该分组的客户端数）
+     */
+    public int getClientCount() {
+        return handler.getConnectedClientCount(group);
+    }
+
+    public RpcWebSocketHandler getHandler() {
+        return handler;
+    }
+
+    private <T> CompletableFuture<T> invoke(String action, long timeoutMs, ResultConverter converter, Object[] params) {
+        return converter.apply(handler.invokeGroupAsync(group, priority, action, timeoutMs,
+                params != null ? params : NO_PARAMS));
+    }
+
+    private ResultConverter converter(Class<?> type) {
+        return converters.computeIfAbsent(type, t -> new ResultConverter(objectMapper, objectMapper.constructType(t)));
+    }
+
+    /**
+     * 接口默认方法的实现（以 invokespecial 方式调用，不会再次进入代理）
+     * Java 9+ 使用 MethodHandles.privateLookupIn，Java 8 使用 Lookup 的私有构造方法取得对接口的私有访问权限
+     */
+    private static MethodHandle defaultMethodHandle(Method method) {
+        Class<?> declaring = method.getDeclaringClass();
+        try {
+            MethodHandles.Lookup lookup;
+            try {
+                Method privateLookupIn = MethodHandles.class.getMethod("privateLookupIn", Class.class, MethodHandles.Lookup.class);
+                lookup = (MethodHandles.Lookup) privateLookupIn.invoke(null, declaring, MethodHandles.lookup());
+            } catch (NoSuchMethodException e) {
+                Constructor<MethodHandles.Lookup> constructor =
+                        MethodHandles.Lookup.class.getDeclaredConstructor(Class.class, int.class);
+                constructor.setAccessible(true);
+                lookup = constructor.newInstance(declaring, MethodHandles.Lookup.PRIVATE);
+            }
+            return lookup.unreflectSpecial(method, declaring);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            throw new IllegalArgumentException("无法调用接口默认方法: " + method, e);
+        }
+    }
+
+    /**
+     * 等待结果，失败时抛出原始的 {@link RpcException}
+     */
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(false);
+            throw new CancellationException("调用线程被中断");
+        } catch (ExecutionException e) {
+            throw propagate(e.getCause());
+        }
+    }
+
+    private static RuntimeException propagate(Throwable cause) {
+        if (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        return new RpcException(RpcException.REMOTE_ERROR, String.valueOf(cause.getMessage()), cause);
+    }
+
+    /**
+     * 把浏览器返回的值（字符串、数字、Map、List、字节数组等）转换成目标类型
+     */
+    private static final class ResultConverter {
+        final ObjectMapper mapper;
+        final JavaType type;
+        // 非泛型的引用类型可以先判断实例，类型匹配时（最常见的字符串结果）不经过Jackson
+        final Class<?> direct;
+
+        ResultConverter(ObjectMapper mapper, JavaType type) {
+            this.mapper = mapper;
+            this.type = type;
+            this.direct = type.isPrimitive() || type.hasGenericTypes() ? null : type.getRawClass();
+        }
+
+        @SuppressWarnings("unchecked")
+        <T> CompletableFuture<T> apply(CompletableFuture<Object> future) {
+            if (direct == Object.class) {
+                return (CompletableFuture<T>) future;
+            }
+            CompletableFuture<T> converted = future.thenApply(value -> (T) convert(value));
+            // 取消转换后的Future时同时取消调用，浏览器端收到取消通知
+            converted.whenComplete((value, error) -> {
+                if (error instanceof CancellationException) {
+                    future.cancel(false);
+                }
+            });
+            return converted;
+        }
+
+        Object convert(Object value) {
+            if (value == null) {
+                // 基本类型无法表示null，拆箱时会抛出NullPointerException
+                if (type.isPrimitive()) {
+                    throw new RpcException(RpcException.REMOTE_ERROR, "结果为null，无法转换为 " + type.toCanonical());
+                }
+                return null;
+            }
+            if (direct != null && direct.isInstance(value)) {
+                return value;
+            }
+            try {
+                return mapper.convertValue(value, type);
+            } catch (IllegalArgumentException e) {
+                throw new RpcException(RpcException.REMOTE_ERROR,
+                        "结果无法转换为 " + type.toCanonical() + ": " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * 绑定时确定的接口方法元数据
+     */
+    private final class BoundMethod {
+        final String action;
+        final long timeoutMs;
+        // 返回 CompletableFuture 时异步调用，void 时丢弃结果
+        final boolean async;
+        final boolean returnsVoid;
+        // 可变参数方法的最后一个参数展开后传递
+        final boolean varArgs;
+        final ResultConverter converter;
+
+        BoundMethod(Method method) {
+            RpcMethod annotation = method.getAnnotation(RpcMethod.class);
+            this.action = annotation != null && !annotation.value().isEmpty() ? annotation.value() : method.getName();
+            this.timeoutMs = annotation != null && annotation.timeoutMs() > 0 ? annotation.timeoutMs() : JsRpcClient.this.timeoutMs;
+            this.async = CompletableFuture.class.isAssignableFrom(method.getReturnType());
+            this.returnsVoid = method.getReturnType() == void.class;
+            this.varArgs = method.isVarArgs();
+            Type resultType = method.getGenericReturnType();
+            if (async) {
+                resultType = resultType instanceof ParameterizedType
+                        ? ((ParameterizedType) resultType).getActualTypeArguments()[0]
+                        : Object.class;
+            }
+            this.converter = returnsVoid
+                    ? new ResultConverter(objectMapper, objectMapper.constructType(Object.class))
+                    : new ResultConverter(objectMapper, objectMapper.constructType(resultType));
+        }
+
+        Object invoke(Object[] args) {
+            Object[] params = args != null ? args : NO_PARAMS;
+            if (varArgs) {
+                params = expandVarArgs(params);
+            }
+            CompletableFuture<Object> future = JsRpcClient.this.invoke(action, timeoutMs, converter, params);
+            if (async) {
+                return future;
+            }
+            Object result = await(future);
+            return returnsVoid ? null : result;
+        }
+
+        private Object[] expandVarArgs(Object[] args) {
+            Object last = args[args.length - 1];
+            if (!(last instanceof Object[])) {
+                return args;
+            }
+            Object[] rest = (Object[]) last;
+            Object[] params = Arrays.copyOf(args, args.length - 1 + rest.length);
+            System.arraycopy(rest, 0, params, args.length - 1, rest.length);
+            return params;
+        }
+    }
+
+    private static final class BindingHandler implements InvocationHandler {
+        private final Class<?> api;
+        private final Map<Method, BoundMethod> methods;
+        // 接口默认方法 -> 其实现
+        private final Map<Method, MethodHandle> defaults;
+
+        BindingHandler(Class<?> api, Map<Method, BoundMethod> methods, Map<Method, MethodHandle> defaults) {
+            this.api = api;
+            this.methods = methods;
+            this.defaults = defaults;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            BoundMethod bound = methods.get(method);
+            if (bound != null) {
+                return bound.invoke(args);
+            }
+            MethodHandle defaultMethod = defaults.get(method);
+            if (defaultMethod != null) {
+                return defaultMethod.bindTo(proxy).invokeWithArguments(args != null ? args : NO_PARAMS);
+            }
+            // Object 的方法
+            switch (method.getName()) {
+                case "equals":
+                    return args != null && args.length == 1 && proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "JsRpcClient.bind(" + api.getName() + ")";
+                default:
+                    throw new UnsupportedOperationException("不支持的方法: " + method);
+            }
+        }
+    }
+
+    /**
+     * 客户端配置
+     */
+    public static final class Builder {
+        private RpcWebSocketHandler handler;
+        private ObjectMapper objectMapper;
+        private long timeoutMs;
+        private String group;
+        private RpcPriority priority = RpcPriority.NORMAL;
+
+        private Builder() {
+        }
+
+        /**
+         * 使用的处理器（与 {@link #applicationContext} 二选一）
+         */
+        public Builder handler(RpcWebSocketHandler handler) {
+            this.handler = handler;
+            return this;
+        }
+
+        /**
+         * 从Spring容器取得处理器（只在构建时查找一次）
+         */
+        public Builder applicationContext(ApplicationContext context) {
+            this.handler = context.getBean(RpcWebSocketHandler.class);
+            return this;
+        }
+
+        /**
+         * 结果转换使用的ObjectMapper，默认为新建的ObjectMapper
+         */
+        public Builder objectMapper(ObjectMapper objectMapper) {
+            this.objectMapper = objectMapper;
+            return this;
+        }
+
+        /**
+         * 默认超时（毫秒），小于等于0（默认）时按服务端配置的超时（rpc.timeout.*，开启 adaptive 时按该方法的历史耗时自适应）
+         */
+        public Builder timeoutMs(long timeoutMs) {
+            this.timeoutMs = timeoutMs;
+            return this;
+        }
+
+        /**
+         * 只调用该分组（rpc.js 连接地址上的 ?group= 参数）的客户端，默认不限分组
+         */
+        public Builder group(String group) {
+            this.group = group;
+            return this;
+        }
+
+        /**
+         * 调用的优先级通道，默认 {@link RpcPriority#NORMAL}（批量调用不经过等待队列，不受影响）
+         */
+        public Builder priority(RpcPriority priority) {
+            this.priority = priority != null ? priority : RpcPriority.NORMAL;
+            return this;
+        }
+
+        public JsRpcClient build() {
+            if (handler == null) {
+                throw new IllegalStateException("未指定 handler 或 applicationContext");
+            }
+            return new JsRpcClient(this);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package cake.jsrpc.websocket.client;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 接口方法对应的浏览器方法（{@link JsRpcClient#bind} 生成的代理使用）
+ * 不加注解时浏览器方法名即Java方法名，超时为客户端的默认超时
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface RpcMethod {
+
+    /**
+     * 浏览器方法名，为空时使用Java方法名
+     */
+    String value() default "";
+
+    /**
+     * 超时（毫秒），小于等于0时使用客户端的默认超时
+     */
+    long timeoutMs() default 0;
+}
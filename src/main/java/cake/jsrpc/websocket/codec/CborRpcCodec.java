@@ -0,0 +1,98 @@
+package cake.jsrpc.websocket.codec;
+
+import cake.jsrpc.websocket.model.RpcRequest;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * CBOR二进制帧编码
+ * 字符串直接以UTF-8存放，byte[] 参数和结果以CBOR字节串原样传输，不做base64膨胀
+ */
+public class CborRpcCodec implements RpcCodec {
+
+    public static final String NAME = "cbor";
+
+    private final ObjectMapper objectMapper = new ObjectMapper(new CBORFactory());
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public ObjectMapper getObjectMapper() {
+        return objectMapper;
+    }
+
+    @Override
+    public EncodedRequest encode(RpcRequest request) throws IOException {
+        return EncodedRequest.ofBytes(objectMapper.writeValueAsBytes(request));
+    }
+
+    @Override
+    public WebSocketMessage<?> toFrame(List<EncodedRequest> requests, boolean asArray) {
+        if (!asArray) {
+            return new BinaryMessage(requests.get(0).getBytes());
+        }
+        int size = frameOverhead(requests.size());
+        for (EncodedRequest request : requests) {
+            size += request.size();
+        }
+        // 定长数组头 + 直接拼接各个已编码的请求
+        ByteBuffer frame = ByteBuffer.allocate(size);
+        writeArrayHeader(frame, requests.size());
+        for (EncodedRequest request : requests) {
+            frame.put(request.getBytes());
+        }
+        frame.flip();
+        return new BinaryMessage(frame);
+    }
+
+    @Override
+    public int frameOverhead(int count) {
+        if (count < 24) {
+            return 1;
+        }
+        if (count < 0x100) {
+            return 2;
+        }
+        if (count < 0x10000) {
+            return 3;
+        }
+        return 5;
+    }
+
+    @Override
+    public JsonParser createParser(WebSocketMessage<?> message) throws IOException {
+        ByteBuffer payload = ((BinaryMessage) message).getPayload();
+        if (payload.hasArray()) {
+            return objectMapper.getFactory().createParser(payload.array(),
+                    payload.arrayOffset() + payload.position(), payload.remaining());
+        }
+        byte[] bytes = new byte[payload.remaining()];
+        payload.duplicate().get(bytes);
+        return objectMapper.getFactory().createParser(bytes);
+    }
+
+    /**
+     * CBOR主类型4（数组）的定长头
+     */
+    private static void writeArrayHeader(ByteBuffer buffer, int count) {
+        if (count < 24) {
+            buffer.put((byte) (0x80 | count));
+        } else if (count < 0x100) {
+            buffer.put((byte) 0x98).put((byte) count);
+        } else if (count < 0x10000) {
+            buffer.put((byte) 0x99).putShort((short) count);
+        } else {
+            buffer.put((byte) 0x9a).putInt(count);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package cake.jsrpc.websocket.codec;
+
+/**
+ * 已编码的单个请求：文本编码保存为字符串，二进制编码保存为字节数组
+ * 批量帧由多个已编码请求直接拼接，不需要重新序列化
+ */
+public final class EncodedRequest {
+
+    private final String text;
+    private final byte[] bytes;
+
+    private EncodedRequest(String text, byte[] bytes) {
+        this.text = text;
+        this.bytes = bytes;
+    }
+
+    public static EncodedRequest ofText(String text) {
+        return new EncodedRequest(text, null);
+    }
+
+    public static EncodedRequest ofBytes(byte[] bytes) {
+        return new EncodedRequest(null, bytes);
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    /**
+     * 编码后的大小（文本为字符数，二进制为字节数）
+     */
+    public int size() {
+        return text != null ? text.length() : bytes.length;
+    }
+}
@@ -0,0 +1,68 @@
+package cake.jsrpc.websocket.codec;
+
+import cake.jsrpc.websocket.model.RpcRequest;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * JSON文本帧编码（默认，兼容旧版rpc.js）
+ */
+public class JsonRpcCodec implements RpcCodec {
+
+    public static final String NAME = "json";
+
+    private final ObjectMapper objectMapper;
+
+    public JsonRpcCodec(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public ObjectMapper getObjectMapper() {
+        return objectMapper;
+    }
+
+    @Override
+    public EncodedRequest encode(RpcRequest request) throws IOException {
+        return EncodedRequest.ofText(objectMapper.writeValueAsString(request));
+    }
+
+    @Override
+    public WebSocketMessage<?> toFrame(List<EncodedRequest> requests, boolean asArray) {
+        if (!asArray) {
+            return new TextMessage(requests.get(0).getText());
+        }
+        int size = frameOverhead(requests.size());
+        for (EncodedRequest request : requests) {
+            size += request.size();
+        }
+        StringBuilder frame = new StringBuilder(size).append('[');
+        for (int i = 0; i < requests.size(); i++) {
+            if (i > 0) {
+                frame.append(',');
+            }
+            frame.append(requests.get(i).getText());
+        }
+        return new TextMessage(frame.append(']'));
+    }
+
+    @Override
+    public int frameOverhead(int count) {
+        return count + 1; // 方括号及逗号
+    }
+
+    @Override
+    public JsonParser createParser(WebSocketMessage<?> message) throws IOException {
+        return objectMapper.getFactory().createParser(((TextMessage) message).getPayload());
+    }
+}
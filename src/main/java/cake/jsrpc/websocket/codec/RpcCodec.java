@@ -0,0 +1,48 @@
+package cake.jsrpc.websocket.codec;
+
+import cake.jsrpc.websocket.model.RpcRequest;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * 与浏览器之间的消息编码（JSON文本帧或CBOR二进制帧）
+ * 由客户端连接时的 ?codec= 参数协商，默认JSON
+ */
+public interface RpcCodec {
+
+    /**
+     * 编码名称（json / cbor）
+     */
+    String getName();
+
+    /**
+     * 该编码对应的ObjectMapper，用于绑定收到的结果
+     */
+    ObjectMapper getObjectMapper();
+
+    /**
+     * 编码单个请求
+     */
+    EncodedRequest encode(RpcRequest request) throws IOException;
+
+    /**
+     * 把已编码的请求组装成一个帧
+     * @param requests 已编码的请求
+     * @param asArray 是否以数组（批量）格式发送；为false时requests只能有一个元素
+     */
+    WebSocketMessage<?> toFrame(List<EncodedRequest> requests, boolean asArray);
+
+    /**
+     * 数组帧除请求本身外的额外开销（用于估算帧大小）
+     */
+    int frameOverhead(int count);
+
+    /**
+     * 为收到的消息创建流式解析器
+     */
+    JsonParser createParser(WebSocketMessage<?> message) throws IOException;
+}
@@ -0,0 +1,34 @@
+package cake.jsrpc.websocket.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * 已支持的编码，按名称查找
+ */
+public class RpcCodecs {
+
+    private final JsonRpcCodec json;
+    private final CborRpcCodec cbor = new CborRpcCodec();
+
+    public RpcCodecs(ObjectMapper jsonMapper) {
+        this.json = new JsonRpcCodec(jsonMapper);
+    }
+
+    public RpcCodec getJson() {
+        return json;
+    }
+
+    public RpcCodec getCbor() {
+        return cbor;
+    }
+
+    /**
+     * @param name 编码名称，为空或未知时返回JSON编码
+     */
+    public RpcCodec forName(String name) {
+        if (CborRpcCodec.NAME.equalsIgnoreCase(name)) {
+            return cbor;
+        }
+        return json;
+    }
+}
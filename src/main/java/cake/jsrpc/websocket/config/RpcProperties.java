@@ -0,0 +1,233 @@
+package cake.jsrpc.websocket.config;
+
+import cake.jsrpc.websocket.limit.ConcurrencyLimits;
+import cake.jsrpc.websocket.replay.ReplayStore;
+import cake.jsrpc.websocket.routing.SessionSelectors;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * RPC服务配置（application.properties 中 rpc.* 前缀）
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "rpc")
+public class RpcProperties {
+
+    private Routing routing = new Routing();
+    private Batch batch = new Batch();
+    private Cache cache = new Cache();
+    private Trace trace = new Trace();
+    private Limit limit = new Limit();
+    private Priority priority = new Priority();
+    private Send send = new Send();
+    private Timeout timeout = new Timeout();
+    private Transfer transfer = new Transfer();
+    private Compression compression = new Compression();
+    private Http http = new Http();
+    private Heartbeat heartbeat = new Heartbeat();
+    private Retry retry = new Retry();
+    private Replay replay = new Replay();
+
+    /**
+     * 多客户端负载均衡配置
+     */
+    @Data
+    public static class Routing {
+        // 会话选择策略：round-robin / least-outstanding / latency-weighted
+        private String strategy = SessionSelectors.LEAST_OUTSTANDING;
+    }
+
+    /**
+     * 批量调用配置
+     */
+    @Data
+    public static class Batch {
+        // 单个批量帧最多包含的调用数
+        private int maxSize = 500;
+        // 并发单个调用的合并等待窗口（毫秒），0表示不合并，每个调用单独发送
+        private long lingerMs = 0;
+    }
+
+    /**
+     * 单次调用跟踪日志配置（logging.level.cake.jsrpc.websocket.trace=DEBUG 时生效）
+     */
+    @Data
+    public static class Trace {
+        // 输出跟踪日志的调用比例（0~1），高并发下只记录少量调用，避免日志拖慢吞吐
+        private double sampleRate = 0.01;
+    }
+
+    /**
+     * 调用结果缓存配置（只缓存声明为可缓存的方法）
+     */
+    @Data
+    public static class Cache {
+        // 是否启用结果缓存
+        private boolean enabled = true;
+        // 服务端声明的可缓存方法（客户端也可在 register 消息的 cacheable 字段中声明）
+        private List<String> actions = new ArrayList<>();
+        // 缓存总权重上限（估算字节数），小于等于0时改为按条目数限制
+        private long maxWeightBytes = 64L * 1024 * 1024;
+        // 缓存条目数上限（maxWeightBytes小于等于0时生效）
+        private long maxEntries = 10000;
+        // 写入后过期时间（秒），0表示不过期
+        private long ttlSeconds = 300;
+    }
+
+    /**
+     * 单个浏览器会话的准入控制：在途请求达到上限后进入有界等待队列，队列满时直接拒绝（429）
+     */
+    @Data
+    public static class Limit {
+        // 每个会话最大在途请求数（自适应算法的上限），小于等于0表示不限流（默认，调用直接发送、只受超时约束）
+        private int maxInFlight = 0;
+        // 每个优先级通道的等待队列长度，0表示达到上限后立即拒绝
+        private int queueSize = 256;
+        // 上限算法：fixed（固定为max-in-flight）/ aimd（加性增乘性减）/ vegas（按往返延迟估算排队）
+        private String algorithm = ConcurrencyLimits.AIMD;
+        // 自适应算法的初始上限和下限
+        private int initialLimit = 16;
+        private int minLimit = 1;
+        // aimd：过载时上限缩小的比例
+        private double backoffRatio = 0.9;
+        // aimd：往返时间超过该值（毫秒）视为过载，0表示只看超时
+        private long slowRttMs = 5000;
+    }
+
+    /**
+     * 优先级通道配置：达到并发上限后，interactive / normal / bulk 三个通道的调用分开排队，名额空出时按权重轮流放行
+     * 权重至少为1，每个有排队的通道在一轮（权重之和次放行）内至少放行一次，低优先级通道不会饿死
+     */
+    @Data
+    public static class Priority {
+        // 手工测试等交互调用
+        private int interactiveWeight = 8;
+        // 未指定优先级的调用
+        private int normalWeight = 4;
+        // 扫描、爆破等大批量调用
+        private int bulkWeight = 1;
+    }
+
+    /**
+     * 单个会话的发送队列配置（多个线程并发调用时由一个线程串行写socket）
+     */
+    @Data
+    public static class Send {
+        // 队列中尚未写出的字节数上限，超过时新的请求直接以429失败
+        private long bufferSizeLimit = 32L * 1024 * 1024;
+        // 单帧写入时间上限（毫秒），超过时认为客户端已不可用并关闭连接，0表示不限制
+        private long timeLimitMs = 10000;
+        // 是否把队列中排队的请求合并成一个数组帧发送，只对在 register 消息中声明 batch 特性的客户端生效
+        private boolean coalesce = true;
+    }
+
+    /**
+     * 调用超时配置（调用方未指定超时时使用）
+     */
+    @Data
+    public static class Timeout {
+        // 默认超时（毫秒），也是自适应超时的上限
+        private long defaultMs = 30000;
+        // 参数中包含超过10KB的字符串时的超时（毫秒），批量调用同样使用固定超时
+        private long largeParamMs = 60000;
+        // 是否按每个方法观察到的延迟分位数计算超时：分位数 × multiplier，限制在 [minMs, defaultMs]
+        // 默认关闭，未指定超时的调用一律等待 defaultMs（大参数为 largeParamMs）
+        private boolean adaptive = false;
+        private double percentile = 0.99;
+        private double multiplier = 4;
+        private long minMs = 2000;
+        // 成功样本数达到该值后才启用自适应超时
+        private long minSamples = 50;
+    }
+
+    /**
+     * 消息大小与分片传输配置
+     * 不分片的消息受单帧上限限制；超过分片大小的请求参数和响应结果拆成分片帧传输，只受单条消息上限限制
+     */
+    @Data
+    public static class Transfer {
+        // 单帧最大字节数（同时是WebSocket容器的收消息缓冲区大小），不分片的消息超过该值时以413失败
+        private int maxFrameBytes = 10 * 1024 * 1024;
+        // 分片传输时单条消息的最大字节数
+        private long maxMessageBytes = 256L * 1024 * 1024;
+        // 分片大小（字节）：参数估算超过该值的请求拆成分片发送（浏览器需在 register 消息中声明支持分片）
+        private int chunkBytes = 512 * 1024;
+        // 每个会话同时进行中的分片传输数上限
+        private int maxTransfers = 16;
+        // 缓冲池中保留的空闲缓冲区总字节数上限
+        private long poolBytes = 64L * 1024 * 1024;
+    }
+
+    /**
+     * 压缩配置
+     * permessage-deflate 由WebSocket扩展协商，对每一帧生效；应用层gzip只压缩超过阈值的消息，
+     * 小消息不压缩，避免为几百字节的调用付出压缩的CPU开销
+     */
+    @Data
+    public static class Compression {
+        // 是否在握手时接受浏览器提出的 permessage-deflate 扩展
+        private boolean permessageDeflate = true;
+        // 是否启用应用层gzip（浏览器需在 register 消息中声明 gzip 特性）
+        private boolean enabled = true;
+        // 编码后超过该字节数的请求才压缩
+        private int thresholdBytes = 64 * 1024;
+        // gzip压缩级别：1最快 ~ 9最小
+        private int level = 1;
+    }
+
+    /**
+     * HTTP接口配置（/api/rpc/* 为异步处理，等待浏览器响应期间不占用工作线程）
+     */
+    @Data
+    public static class Http {
+        // HTTP/2 单个连接上的最大并发流数（即同时进行中的请求数）
+        private int maxConcurrentStreams = 1000;
+        // HTTP/2 单个连接上同时占用工作线程处理的流数，超出的流排队等待线程
+        private int maxConcurrentStreamExecution = 200;
+    }
+
+    /**
+     * 心跳配置：服务端向一段时间没有消息的会话发送WebSocket ping，浏览器自动回复pong（不经过页面脚本）
+     * 半开连接（标签页挂起、电脑休眠、网络中断）收不到pong，超时后断开并立即结束其上的调用
+     */
+    @Data
+    public static class Heartbeat {
+        // 会话持续多久没有任何消息时发送ping（毫秒），小于等于0表示不发送ping，只检查连接是否已关闭
+        private long intervalMs = 5000;
+        // 会话持续多久没有任何消息（包括pong）时视为已断开（毫秒），小于等于0表示不断开
+        private long timeoutMs = 15000;
+    }
+
+    /**
+     * 幂等调用的重试配置：会话断开时，其上未完成的幂等调用改发给其他会话
+     * 幂等方法包括声明为可缓存的方法（纯函数）和 actions 中列出的方法；其他方法的调用以连接断开失败，由调用方决定是否重试
+     */
+    @Data
+    public static class Retry {
+        // 单个调用最多重试的次数，0表示不重试
+        private int maxRetries = 1;
+        // 额外声明为幂等、可以重试的方法
+        private List<String> actions = new ArrayList<>();
+    }
+
+    /**
+     * 调用记录与回放：把 (方法, 参数) -> 结果 追加写入内存映射的记录文件，重启后仍然保留
+     * record 调用浏览器并记录成功的结果；replay 先按记录应答（不需要浏览器），没有记录的调用照常发给浏览器并补记
+     */
+    @Data
+    public static class Replay {
+        // off / record / replay
+        private String mode = ReplayStore.OFF;
+        // 记录文件路径（不含扩展名），生成 .log 记录文件和 .idx 索引文件
+        private String path = "data/rpc-replay";
+        // 记录文件大小上限（最大2GB），写满时压缩，仍放不下时丢弃最早的记录
+        private long maxBytes = 256L * 1024 * 1024;
+        // 只记录和回放这些方法，为空时不限
+        private List<String> actions = new ArrayList<>();
+    }
+}
@@ -0,0 +1,50 @@
+package cake.jsrpc.websocket.config;
+
+import cake.jsrpc.websocket.transfer.RawResultHttpMessageConverter;
+import org.apache.coyote.UpgradeProtocol;
+import org.apache.coyote.http2.Http2Protocol;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+@Configuration
+public class WebMvcConfig implements WebMvcConfigurer {
+
+    private final RpcProperties rpcProperties;
+
+    public WebMvcConfig(RpcProperties rpcProperties) {
+        this.rpcProperties = rpcProperties;
+    }
+
+    // 流式写出分片传输的大结果（/api/rpc/call 的 stream 模式）
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        converters.add(0, new RawResultHttpMessageConverter());
+    }
+
+    // 异步接口不设容器超时（Tomcat默认30秒）：每个调用都有自己的超时，到期时以超时结果结束
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setDefaultTimeout(-1);
+    }
+
+    // HTTP/2（server.http2.enabled=true 时为h2c）单个连接上允许的并发流数，Tomcat默认为100
+    @Bean
+    public WebServerFactoryCustomizer<TomcatServletWebServerFactory> http2StreamsCustomizer() {
+        RpcProperties.Http http = rpcProperties.getHttp();
+        return factory -> factory.addConnectorCustomizers(connector -> {
+            for (UpgradeProtocol protocol : connector.findUpgradeProtocols()) {
+                if (protocol instanceof Http2Protocol) {
+                    ((Http2Protocol) protocol).setMaxConcurrentStreams(http.getMaxConcurrentStreams());
+                    ((Http2Protocol) protocol).setMaxConcurrentStreamExecution(http.getMaxConcurrentStreamExecution());
+                }
+            }
+        });
+    }
+}
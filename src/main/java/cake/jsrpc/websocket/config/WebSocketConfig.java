@@ -3,41 +3,94 @@ package cake.jsrpc.websocket.config;
 import cake.jsrpc.websocket.handler.RpcWebSocketHandler;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
 import org.springframework.web.socket.config.annotation.EnableWebSocket;
 import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistration;
 import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+import org.springframework.web.socket.server.HandshakeFailureException;
+import org.springframework.web.socket.server.support.DefaultHandshakeHandler;
 import org.springframework.web.socket.server.standard.ServletServerContainerFactoryBean;
+import org.springframework.web.socket.server.standard.TomcatRequestUpgradeStrategy;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.websocket.Endpoint;
+import javax.websocket.Extension;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
 
 @Configuration
 @EnableWebSocket
 public class WebSocketConfig implements WebSocketConfigurer {
 
+    private static final String EXTENSIONS_HEADER = "Sec-WebSocket-Extensions";
+
     private final RpcWebSocketHandler rpcWebSocketHandler;
+    private final RpcProperties rpcProperties;
 
     // 注入自定义处理器
-    public WebSocketConfig(RpcWebSocketHandler rpcWebSocketHandler) {
+    public WebSocketConfig(RpcWebSocketHandler rpcWebSocketHandler, RpcProperties rpcProperties) {
         this.rpcWebSocketHandler = rpcWebSocketHandler;
+        this.rpcProperties = rpcProperties;
     }
 
     @Override
     public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
         // 注册处理器，映射路径为 "/ws"，允许跨域
-        registry.addHandler(rpcWebSocketHandler, "/ws")
+        WebSocketHandlerRegistration registration = registry.addHandler(rpcWebSocketHandler, "/ws")
                 .setAllowedOrigins("*");
+        // Tomcat默认接受浏览器提出的 permessage-deflate（每帧压缩），关闭时握手不协商任何扩展
+        if (!rpcProperties.getCompression().isPermessageDeflate()) {
+            registration.setHandshakeHandler(new DefaultHandshakeHandler(new NoExtensionUpgradeStrategy()));
+        }
     }
     
     // 配置WebSocket容器属性，增加消息缓冲区大小
     @Bean
     public ServletServerContainerFactoryBean createWebSocketContainer() {
         ServletServerContainerFactoryBean container = new ServletServerContainerFactoryBean();
-        // 设置文本消息缓冲区大小为10MB（默认通常为8KB）
-        container.setMaxTextMessageBufferSize(10 * 1024 * 1024);
-        // 设置二进制消息缓冲区大小为10MB
-        container.setMaxBinaryMessageBufferSize(10 * 1024 * 1024);
+        // 消息缓冲区大小即单帧上限（rpc.transfer.max-frame-bytes，默认10MB，容器默认通常为8KB），
+        // 更大的消息由分片帧传输，不需要更大的缓冲区
+        int maxFrameBytes = rpcProperties.getTransfer().getMaxFrameBytes();
+        container.setMaxTextMessageBufferSize(maxFrameBytes);
+        container.setMaxBinaryMessageBufferSize(maxFrameBytes);
         // 设置连接空闲超时时间为5分钟
         container.setMaxSessionIdleTimeout(5 * 60 * 1000L);
         // 设置消息部分发送超时时间
         container.setAsyncSendTimeout(30000L);
         return container;
     }
-}
\ No newline at end of file
+
+    /**
+     * 不协商扩展的升级策略
+     * Tomcat按原始请求头与已安装的扩展协商，Spring传入的扩展列表不起作用，
+     * 因此升级时对Tomcat隐藏 Sec-WebSocket-Extensions 请求头
+     */
+    private static class NoExtensionUpgradeStrategy extends TomcatRequestUpgradeStrategy {
+
+        @Override
+        public void upgradeInternal(ServerHttpRequest request, ServerHttpResponse response,
+                                    String selectedProtocol, List<Extension> selectedExtensions,
+                                    Endpoint endpoint) throws HandshakeFailureException {
+            HttpServletRequest servletRequest = ((ServletServerHttpRequest) request).getServletRequest();
+            HttpServletRequest withoutExtensions = new HttpServletRequestWrapper(servletRequest) {
+                @Override
+                public String getHeader(String name) {
+                    return EXTENSIONS_HEADER.equalsIgnoreCase(name) ? null : super.getHeader(name);
+                }
+
+                @Override
+                public Enumeration<String> getHeaders(String name) {
+                    return EXTENSIONS_HEADER.equalsIgnoreCase(name)
+                            ? Collections.emptyEnumeration() : super.getHeaders(name);
+                }
+            };
+            super.upgradeInternal(new ServletServerHttpRequest(withoutExtensions), response,
+                    selectedProtocol, Collections.emptyList(), endpoint);
+        }
+    }
+}
@@ -1,10 +1,29 @@
 package cake.jsrpc.websocket.controller;
 
 import cake.jsrpc.websocket.RpcClientProxy;
+import cake.jsrpc.websocket.handler.RpcException;
+import cake.jsrpc.websocket.handler.RpcPriority;
+import cake.jsrpc.websocket.model.RpcBatchRequest;
+import cake.jsrpc.websocket.model.RpcBatchResult;
+import cake.jsrpc.websocket.model.RpcCallRequest;
+import cake.jsrpc.websocket.model.RpcCallResult;
+import cake.jsrpc.websocket.transfer.RawResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * RPC测试控制器，提供HTTP接口供Burp插件调用
@@ -13,6 +32,11 @@ import java.util.Map;
 @RequestMapping("/api/rpc")
 public class RpcTestController {
 
+    private static final Logger log = LoggerFactory.getLogger(RpcTestController.class);
+
+    // 指定调用优先级通道的请求头（请求体中的 priority 字段优先）
+    public static final String PRIORITY_HEADER = "X-Rpc-Priority";
+
     /**
      * 测试调用浏览器方法
      * GET /api/rpc/test
@@ -58,30 +82,216 @@ public class RpcTestController {
     /**
      * 调用指定的浏览器方法
      * POST /api/rpc/call
-     * Body: {"action": "base64", "params": ["test"]}
+     * Body: {"action": "base64", "params": ["test"], "timeout": 5000, "stream": false, "priority": "interactive"}
+     * timeout 为超时毫秒数，可选，不指定时使用服务端的默认超时（rpc.timeout.*）
+     * priority 为优先级通道（interactive / normal / bulk），可选，也可以用 X-Rpc-Priority 请求头指定（字段优先），默认 normal；
+     * 浏览器繁忙时 interactive 的调用按更高的权重放行，不排在 bulk 的大量调用之后
+     * stream 为 true 时响应体直接是结果本身（字符串为 text/plain，字节为 application/octet-stream，其他为JSON），
+     * 浏览器分片回传的大结果从重组缓冲区流式写出，不在内存中拼成完整的字符串；错误以对应的HTTP状态码返回
+     * 浏览器客户端繁忙（在途请求和等待队列已满）时返回 HTTP 429 和 Retry-After 头
+     * 异步处理：等待浏览器响应期间不占用Tomcat工作线程，同一连接（keep-alive 或 HTTP/2 多路复用）上的大量并发调用不会耗尽线程池
      */
     @PostMapping("/call")
-    public Map<String, Object> callBrowserMethod(@RequestBody Map<String, Object> request) {
-        System.out.println("[调试] 接收到的请求: " + request);
-        Map<String, Object> result = new HashMap<>();
-        
+    public CompletableFuture<ResponseEntity<?>> callBrowserMethod(@RequestBody RpcCallRequest request,
+                                                                 @RequestHeader(value = PRIORITY_HEADER, required = false) String priority) {
+        return callGroupMethod(null, request, priority);
+    }
+
+    /**
+     * 调用指定分组的浏览器方法，只路由到以 ws://.../ws?group={group} 连接的客户端
+     * POST /api/rpc/{group}/call
+     * Body、请求头和响应与 /api/rpc/call 相同
+     */
+    @PostMapping("/{group}/call")
+    public CompletableFuture<ResponseEntity<?>> callGroupMethod(@PathVariable("group") String group,
+                                                               @RequestBody RpcCallRequest request,
+                                                               @RequestHeader(value = PRIORITY_HEADER, required = false) String priorityHeader) {
+        log.debug("接收到的请求: {}, 分组: {}", request, group);
+        String action = request.getAction();
+        Object[] params = request.paramsArray();
+        long timeoutMs = request.getTimeout() != null ? request.getTimeout() : 0;
+        RpcPriority priority;
         try {
-            String action = (String) request.get("action");
-            Object[] params = request.containsKey("params") 
-                ? ((java.util.List<?>) request.get("params")).toArray() 
-                : new Object[0];
-            
-            Object callResult = RpcClientProxy.call(action, params);
-            
-            result.put("success", true);
-            result.put("action", action);
-            result.put("result", callResult);
-            
-        } catch (Exception e) {
-            result.put("success", false);
-            result.put("message", "调用失败: " + e.getMessage());
+            priority = RpcPriority.parse(request.getPriority() != null ? request.getPriority() : priorityHeader);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest()
+                    .body(RpcCallResult.failed(e.getMessage(), HttpStatus.BAD_REQUEST.value())));
         }
-        
+        if (request.isStream()) {
+            return RpcClientProxy.callGroupStreamAsync(group, priority, action, timeoutMs, params)
+                    .handle((value, error) -> error == null ? streamResult(value) : streamError(unwrap(error)));
+        }
+        CompletableFuture<Object> future = RpcClientProxy.callGroupAsync(group, priority, action, timeoutMs, params);
+        return future.handle((value, error) -> {
+            if (error == null) {
+                return ResponseEntity.ok(RpcCallResult.ok(action, value));
+            }
+            Throwable cause = unwrap(error);
+            if (cause instanceof RpcException) {
+                RpcException e = (RpcException) cause;
+                // 超时、方法未注册等错误信息按同步接口的约定作为结果返回
+                if (e.toResultMessage() != null) {
+                    return ResponseEntity.ok(RpcCallResult.ok(action, e.toResultMessage()));
+                }
+                if (e.getStatus() == RpcException.TOO_MANY_REQUESTS) {
+                    return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                            .header(HttpHeaders.RETRY_AFTER, "1")
+                            .body(RpcCallResult.failed("调用失败: " + e.getMessage(), e.getStatus()));
+                }
+            }
+            return ResponseEntity.ok(RpcCallResult.failed("调用失败: " + cause.getMessage(), null));
+        });
+    }
+
+    /**
+     * stream 模式：响应体直接是结果
+     */
+    private static ResponseEntity<?> streamResult(Object value) {
+        if (value instanceof RawResult) {
+            // 由 RawResultHttpMessageConverter 从重组缓冲区直接写入响应
+            RawResult raw = (RawResult) value;
+            return ResponseEntity.ok().contentType(streamContentType(raw.getKind())).body(raw);
+        }
+        if (value instanceof String) {
+            return ResponseEntity.ok().contentType(streamContentType(RawResult.Kind.TEXT)).body(value);
+        }
+        if (value instanceof byte[]) {
+            return ResponseEntity.ok().contentType(streamContentType(RawResult.Kind.BINARY)).body(value);
+        }
+        return ResponseEntity.ok().contentType(streamContentType(RawResult.Kind.JSON)).body(value);
+    }
+
+    /**
+     * stream 模式的错误以对应的HTTP状态码返回
+     */
+    private static ResponseEntity<?> streamError(Throwable error) {
+        int status = error instanceof RpcException ? ((RpcException) error).getStatus() : RpcException.REMOTE_ERROR;
+        ResponseEntity.BodyBuilder builder = ResponseEntity.status(streamErrorStatus(status));
+        if (status == RpcException.TOO_MANY_REQUESTS) {
+            builder.header(HttpHeaders.RETRY_AFTER, "1");
+        }
+        return builder.contentType(MediaType.APPLICATION_JSON)
+                .body(RpcCallResult.failed("调用失败: " + error.getMessage(), status));
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    private static MediaType streamContentType(RawResult.Kind kind) {
+        switch (kind) {
+            case TEXT:
+                return new MediaType(MediaType.TEXT_PLAIN, StandardCharsets.UTF_8);
+            case BINARY:
+                return MediaType.APPLICATION_OCTET_STREAM;
+            default:
+                return MediaType.APPLICATION_JSON;
+        }
+    }
+
+    private static HttpStatus streamErrorStatus(int status) {
+        switch (status) {
+            case RpcException.NOT_FOUND:
+                return HttpStatus.NOT_FOUND;
+            case RpcException.TIMEOUT:
+                return HttpStatus.GATEWAY_TIMEOUT;
+            case RpcException.PAYLOAD_TOO_LARGE:
+                return HttpStatus.PAYLOAD_TOO_LARGE;
+            case RpcException.TOO_MANY_REQUESTS:
+                return HttpStatus.TOO_MANY_REQUESTS;
+            case RpcException.NO_CLIENT:
+                return HttpStatus.SERVICE_UNAVAILABLE;
+            default:
+                return HttpStatus.BAD_GATEWAY;
+        }
+    }
+    
+    /**
+     * 批量调用同一个浏览器方法
+     * POST /api/rpc/batch
+     * Body: {"action": "enc", "params": [["a"], ["b"], "c"]}
+     * params 中每个元素是一次调用的参数列表，非数组元素视为单个参数
+     */
+    @PostMapping("/batch")
+    public CompletableFuture<RpcBatchResult> callBrowserBatch(@RequestBody RpcBatchRequest request) {
+        return callGroupBatch(null, request);
+    }
+
+    /**
+     * 批量调用指定分组的浏览器方法
+     * POST /api/rpc/{group}/batch
+     */
+    @PostMapping("/{group}/batch")
+    public CompletableFuture<RpcBatchResult> callGroupBatch(@PathVariable("group") String group,
+                                                            @RequestBody RpcBatchRequest request) {
+        String action = request.getAction();
+        List<CompletableFuture<Object>> futures = RpcClientProxy.callGroupBatchAsync(group, action, request.paramsList());
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+                .handle((ignored, allError) -> {
+                    List<Object> results = new ArrayList<>(futures.size());
+                    for (CompletableFuture<Object> future : futures) {
+                        try {
+                            results.add(future.join());
+                        } catch (CompletionException | CancellationException e) {
+                            Throwable cause = unwrap(e);
+                            String message = cause instanceof RpcException ? ((RpcException) cause).toResultMessage() : null;
+                            if (message == null) {
+                                // 与同步批量调用一致，其他错误使整批失败
+                                return RpcBatchResult.failed("调用失败: " + cause.getMessage());
+                            }
+                            results.add(message);
+                        }
+                    }
+                    return RpcBatchResult.ok(action, results);
+                });
+    }
+    
+    /**
+     * 获取调用指标：按方法的调用次数/结果/延迟分位数、各阶段耗时、消息大小分布、每个客户端的统计
+     * GET /api/rpc/stats
+     */
+    @GetMapping("/stats")
+    public Map<String, Object> getStats() {
+        return RpcClientProxy.getStats();
+    }
+
+    /**
+     * 获取指定分组的调用指标（按方法的调用统计和客户端统计只包含该分组）
+     * GET /api/rpc/{group}/stats
+     */
+    @GetMapping("/{group}/stats")
+    public Map<String, Object> getGroupStats(@PathVariable("group") String group) {
+        return RpcClientProxy.getStats(group);
+    }
+
+    /**
+     * 获取各分组的客户端数量
+     * GET /api/rpc/groups
+     */
+    @GetMapping("/groups")
+    public Map<String, Integer> getGroups() {
+        return RpcClientProxy.getGroups();
+    }
+    
+    /**
+     * 获取结果缓存统计
+     * GET /api/rpc/cache
+     */
+    @GetMapping("/cache")
+    public Map<String, Object> getCacheStats() {
+        return RpcClientProxy.getCacheStats();
+    }
+    
+    /**
+     * 清除结果缓存（不指定action时清除全部）
+     * DELETE /api/rpc/cache?action=enc
+     */
+    @DeleteMapping("/cache")
+    public Map<String, Object> invalidateCache(@RequestParam(value = "action", required = false) String action) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.put("action", action);
+        result.put("removed", RpcClientProxy.invalidateCache(action));
         return result;
     }
     
@@ -91,8 +301,17 @@ public class RpcTestController {
      */
     @GetMapping("/clients")
     public Map<String, Object> getClientCount() {
+        return getGroupClientCount(null);
+    }
+
+    /**
+     * 获取指定分组的客户端连接数
+     * GET /api/rpc/{group}/clients
+     */
+    @GetMapping("/{group}/clients")
+    public Map<String, Object> getGroupClientCount(@PathVariable("group") String group) {
         Map<String, Object> result = new HashMap<>();
-        int count = RpcClientProxy.getClientCount();
+        int count = RpcClientProxy.getClientCount(group);
         result.put("clientCount", count);
         result.put("connected", count > 0);
         return result;
@@ -104,11 +323,20 @@ public class RpcTestController {
      */
     @GetMapping("/methods")
     public Map<String, Object> getRegisteredMethods() {
+        return getGroupMethods(null);
+    }
+
+    /**
+     * 获取指定分组的客户端注册的方法列表
+     * GET /api/rpc/{group}/methods
+     */
+    @GetMapping("/{group}/methods")
+    public Map<String, Object> getGroupMethods(@PathVariable("group") String group) {
         Map<String, Object> result = new HashMap<>();
         
         try {
             // 检查是否有客户端连接
-            int clientCount = RpcClientProxy.getClientCount();
+            int clientCount = RpcClientProxy.getClientCount(group);
             result.put("clientCount", clientCount);
             
             if (clientCount == 0) {
@@ -119,7 +347,7 @@ public class RpcTestController {
             }
             
             // 获取注册的方法列表
-            java.util.List<String> methods = RpcClientProxy.getRegisteredMethods();
+            java.util.List<String> methods = RpcClientProxy.getRegisteredMethods(group);
             
             result.put("success", true);
             result.put("methods", methods);
@@ -0,0 +1,103 @@
+package cake.jsrpc.websocket.handler;
+
+import cake.jsrpc.websocket.config.RpcProperties;
+import cake.jsrpc.websocket.metrics.RpcMetrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 调用方未指定超时时的默认超时
+ * 样本足够的方法按最近的耗时分位数 × 倍数计算（限制在 [minMs, defaultMs]），
+ * 快的方法卡住时尽早放弃，把浏览器的处理能力留给还有人等待的调用；
+ * 样本不足、参数很大或批量调用时沿用固定超时
+ */
+class AdaptiveTimeout {
+
+    // 每个方法的超时最多每秒重新计算一次（读取分位数需要合并直方图快照）
+    private static final long REFRESH_NANOS = TimeUnit.SECONDS.toNanos(1);
+    // 超过该长度的字符串参数视为大参数
+    private static final int LARGE_PARAM_LENGTH = 10000;
+
+    private final RpcProperties.Timeout properties;
+    private final RpcMetrics metrics;
+    private final ConcurrentMap<String, Estimate> estimates = new ConcurrentHashMap<>();
+
+    AdaptiveTimeout(RpcProperties.Timeout properties, RpcMetrics metrics) {
+        this.properties = properties;
+        this.metrics = metrics;
+    }
+
+    /**
+     * 单个调用的超时（毫秒）
+     */
+    long timeoutMs(String action, Object[] params) {
+        if (hasLargeParam(params)) {
+            return properties.getLargeParamMs();
+        }
+        if (!properties.isAdaptive() || action == null) {
+            return properties.getDefaultMs();
+        }
+        long now = System.nanoTime();
+        Estimate estimate = estimates.get(action);
+        if (estimate == null || now - estimate.computedNanos > REFRESH_NANOS) {
+            if (metrics.actionRttCount(action) < properties.getMinSamples()) {
+                // 只有成功过足够多次的方法才登记，任意方法名不会撑大缓存
+                return properties.getDefaultMs();
+            }
+            estimate = new Estimate(compute(action), now);
+            estimates.put(action, estimate);
+        }
+        return estimate.timeoutMs;
+    }
+
+    /**
+     * 固定超时（批量调用使用：批量中每个调用的耗时包含排在它前面的调用，与单个调用的分位数不可比）
+     */
+    long fixedTimeoutMs(Object[] params) {
+        return hasLargeParam(params) ? properties.getLargeParamMs() : properties.getDefaultMs();
+    }
+
+    /**
+     * 当前各方法的自适应超时（毫秒）
+     */
+    Map<String, Long> snapshot() {
+        Map<String, Long> snapshot = new TreeMap<>();
+        for (Map.Entry<String, Estimate> entry : estimates.entrySet()) {
+            snapshot.put(entry.getKey(), entry.getValue().timeoutMs);
+        }
+        return snapshot;
+    }
+
+    private long compute(String action) {
+        double percentileMs = metrics.actionRttPercentileMs(action);
+        if (percentileMs <= 0) {
+            // 最近一段时间没有样本
+            return properties.getDefaultMs();
+        }
+        long timeout = (long) Math.ceil(percentileMs * properties.getMultiplier());
+        return Math.min(properties.getDefaultMs(), Math.max(properties.getMinMs(), timeout));
+    }
+
+    private static boolean hasLargeParam(Object[] params) {
+        for (Object param : params) {
+            if (param instanceof String && ((String) param).length() > LARGE_PARAM_LENGTH) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class Estimate {
+        final long timeoutMs;
+        final long computedNanos;
+
+        Estimate(long timeoutMs, long computedNanos) {
+            this.timeoutMs = timeoutMs;
+            this.computedNanos = computedNanos;
+        }
+    }
+}
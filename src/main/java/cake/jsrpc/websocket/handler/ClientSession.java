@@ -0,0 +1,264 @@
+package cake.jsrpc.websocket.handler;
+
+import cake.jsrpc.websocket.codec.RpcCodec;
+import cake.jsrpc.websocket.transfer.ChunkAssembler;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 一个浏览器客户端连接及其运行状态（在途请求数、往返延迟、并发上限、最后活跃时间、注册的方法）
+ * 保存在 WebSocketSession 的属性中，供 {@link cake.jsrpc.websocket.routing.SessionSelector} 做负载均衡
+ */
+public class ClientSession {
+
+    // WebSocketSession 属性名
+    public static final String ATTRIBUTE = ClientSession.class.getName();
+    // 协议特性：能接收和发送分片帧
+    public static final String FEATURE_CHUNKED = "chunked";
+    // 浏览器能解压应用层gzip帧
+    public static final String FEATURE_GZIP = "gzip";
+    // 能处理服务器合并发送的数组帧（多个单独调用的请求放在一个帧中）
+    public static final String FEATURE_BATCH = "batch";
+
+    // 延迟EWMA的平滑系数，越大越偏向最近的样本
+    private static final double EWMA_ALPHA = 0.2;
+    // 等待响应表的环形槽位数，在途调用数不超过它时不会用到溢出表
+    private static final int PENDING_SLOTS = 1024;
+
+    private final String clientId;
+    // 连接时 ?group= 参数指定的分组
+    private final String group;
+    private final WebSocketSession session;
+    // 连接时协商的消息编码
+    private final RpcCodec codec;
+    // 等待该客户端响应的调用
+    private final PendingTable pending = new PendingTable(PENDING_SLOTS);
+    // 当前在途（已发送、未响应）的请求数
+    private final AtomicInteger inFlight = new AtomicInteger();
+    // 往返延迟的指数加权移动平均（纳秒），0表示还没有样本
+    private volatile double ewmaRttNanos;
+    // 浏览器上报的方法执行时间的指数加权移动平均（纳秒），0表示客户端未上报（旧版rpc.js）
+    private volatile double ewmaExecNanos;
+    // 客户端上报的方法列表，null表示客户端未上报（旧版rpc.js）
+    private volatile Set<String> methods;
+    // 客户端声明的结果可缓存方法
+    private volatile Set<String> cacheable = Collections.emptySet();
+    // 最后一次收到该客户端消息的时间（毫秒）
+    private volatile long lastSeen = System.currentTimeMillis();
+    // 最近一次心跳（ping/pong）的往返延迟（纳秒），0表示还没有收到pong
+    private volatile long pingRttNanos;
+    // 单个调用的合并缓冲区
+    private final LingerBuffer lingerBuffer = new LingerBuffer();
+    // 准入控制，null表示不限流
+    private final SessionLimiter limiter;
+    // 发送队列，所有发往该客户端的帧都经过它串行写出
+    private OutboundQueue outbound;
+    // 分片消息重组，未登记的会话为null
+    private ChunkAssembler chunkAssembler;
+    // 客户端在 register 消息中声明支持的协议特性
+    private volatile Set<String> features = Collections.emptySet();
+
+    public ClientSession(String clientId, WebSocketSession session, RpcCodec codec) {
+        this(clientId, SessionGroups.DEFAULT_GROUP, session, codec, null);
+    }
+
+    /**
+     * @param group 所在分组
+     * @param limiter 准入控制，null表示不限流
+     */
+    ClientSession(String clientId, String group, WebSocketSession session, RpcCodec codec, SessionLimiter limiter) {
+        this.clientId = clientId;
+        this.group = group;
+        this.session = session;
+        this.codec = codec;
+        this.limiter = limiter;
+    }
+
+    public String getClientId() {
+        return clientId;
+    }
+
+    public String getGroup() {
+        return group;
+    }
+
+    public WebSocketSession getSession() {
+        return session;
+    }
+
+    public RpcCodec getCodec() {
+        return codec;
+    }
+
+    public boolean isOpen() {
+        return session.isOpen();
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public double getEwmaRttNanos() {
+        return ewmaRttNanos;
+    }
+
+    public double getEwmaExecNanos() {
+        return ewmaExecNanos;
+    }
+
+    public long getLastSeen() {
+        return lastSeen;
+    }
+
+    void markSeen() {
+        lastSeen = System.currentTimeMillis();
+    }
+
+    public long getPingRttNanos() {
+        return pingRttNanos;
+    }
+
+    void recordPong(long rttNanos) {
+        pingRttNanos = rttNanos;
+        markSeen();
+    }
+
+    PendingTable getPending() {
+        return pending;
+    }
+
+    LingerBuffer getLingerBuffer() {
+        return lingerBuffer;
+    }
+
+    SessionLimiter getLimiter() {
+        return limiter;
+    }
+
+    OutboundQueue getOutbound() {
+        return outbound;
+    }
+
+    /**
+     * 在会话对其他线程可见之前设置
+     */
+    void setOutbound(OutboundQueue outbound) {
+        this.outbound = outbound;
+    }
+
+    ChunkAssembler getChunkAssembler() {
+        return chunkAssembler;
+    }
+
+    /**
+     * 在会话对其他线程可见之前设置
+     */
+    void setChunkAssembler(ChunkAssembler chunkAssembler) {
+        this.chunkAssembler = chunkAssembler;
+    }
+
+    public Set<String> getFeatures() {
+        return features;
+    }
+
+    void setFeatures(Set<String> features) {
+        this.features = features;
+    }
+
+    /**
+     * 客户端是否能接收分片帧（rpc.js 在 register 消息中声明 chunked）
+     */
+    public boolean supportsChunked() {
+        return features.contains(FEATURE_CHUNKED);
+    }
+
+    /**
+     * 客户端是否能解压应用层gzip帧（rpc.js 在浏览器支持 DecompressionStream 时声明 gzip）
+     */
+    public boolean supportsGzip() {
+        return features.contains(FEATURE_GZIP);
+    }
+
+    /**
+     * 客户端是否能处理合并的数组帧（rpc.js 在 register 消息中声明 batch），未声明的旧版客户端只收单个请求的帧
+     */
+    public boolean supportsBatch() {
+        return features.contains(FEATURE_BATCH);
+    }
+
+    /**
+     * 发送队列中尚未写出的字节数
+     */
+    public long getOutboundBytes() {
+        OutboundQueue current = outbound;
+        return current != null ? current.getBufferedBytes() : 0;
+    }
+
+    /**
+     * 当前并发上限，-1表示不限流
+     */
+    public int getConcurrencyLimit() {
+        return limiter != null ? limiter.getLimit() : -1;
+    }
+
+    /**
+     * 等待发送的请求数
+     */
+    public int getQueued() {
+        return limiter != null ? limiter.getQueued() : 0;
+    }
+
+    /**
+     * 指定优先级通道中等待发送的请求数
+     */
+    public int getQueued(RpcPriority priority) {
+        return limiter != null ? limiter.getQueued(priority) : 0;
+    }
+
+    public Set<String> getMethods() {
+        return methods;
+    }
+
+    void setMethods(Set<String> methods) {
+        this.methods = methods;
+    }
+
+    public Set<String> getCacheable() {
+        return cacheable;
+    }
+
+    void setCacheable(Set<String> cacheable) {
+        this.cacheable = cacheable;
+    }
+
+    /**
+     * 是否可能实现了该方法（未上报方法列表的旧客户端视为全部实现）
+     */
+    public boolean supports(String action) {
+        Set<String> current = methods;
+        return current == null || current.contains(action);
+    }
+
+    void onCallStarted() {
+        inFlight.incrementAndGet();
+    }
+
+    /**
+     * 调用结束，成功时用本次往返时间和浏览器上报的执行时间更新EWMA（并发更新偶尔丢一个样本可以接受）
+     * @param execNanos 浏览器上报的执行时间，0表示未上报
+     */
+    void onCallFinished(long rttNanos, long execNanos, boolean success) {
+        inFlight.decrementAndGet();
+        if (success) {
+            double current = ewmaRttNanos;
+            ewmaRttNanos = current == 0 ? rttNanos : current + EWMA_ALPHA * (rttNanos - current);
+            if (execNanos > 0) {
+                current = ewmaExecNanos;
+                ewmaExecNanos = current == 0 ? execNanos : current + EWMA_ALPHA * (execNanos - current);
+            }
+        }
+    }
+}
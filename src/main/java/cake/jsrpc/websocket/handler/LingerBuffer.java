@@ -0,0 +1,68 @@
+package cake.jsrpc.websocket.handler;
+
+import cake.jsrpc.websocket.codec.EncodedRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 单个客户端的请求合并缓冲区
+ * 在短暂的等待窗口内把并发的单个调用合并成一个批量帧发送
+ */
+class LingerBuffer {
+
+    private List<PendingCall> calls = new ArrayList<>();
+    private List<EncodedRequest> requests = new ArrayList<>();
+    private int bytes;
+    private boolean flushScheduled;
+
+    /**
+     * 加入一个已编码的请求
+     * @return true 表示这是窗口内的第一个请求，需要安排一次延迟发送
+     */
+    synchronized boolean add(PendingCall call, EncodedRequest request) {
+        calls.add(call);
+        requests.add(request);
+        bytes += request.size() + 1;
+        if (flushScheduled) {
+            return false;
+        }
+        flushScheduled = true;
+        return true;
+    }
+
+    /**
+     * 是否已攒够一批，应立即发送
+     */
+    synchronized boolean isFull(int maxCount, int maxBytes) {
+        return calls.size() >= maxCount || bytes >= maxBytes;
+    }
+
+    /**
+     * 取出当前缓冲的全部请求，缓冲区为空时返回null
+     */
+    synchronized Batch drain() {
+        flushScheduled = false;
+        if (calls.isEmpty()) {
+            return null;
+        }
+        Batch batch = new Batch(calls, requests);
+        calls = new ArrayList<>();
+        requests = new ArrayList<>();
+        bytes = 0;
+        return batch;
+    }
+
+    /**
+     * 一批待发送的请求（两个列表一一对应）
+     */
+    static final class Batch {
+        final List<PendingCall> calls;
+        final List<EncodedRequest> requests;
+
+        Batch(List<PendingCall> calls, List<EncodedRequest> requests) {
+            this.calls = calls;
+            this.requests = requests;
+        }
+    }
+}
@@ -0,0 +1,336 @@
+package cake.jsrpc.websocket.handler;
+
+import cake.jsrpc.websocket.codec.EncodedRequest;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 单个会话的发送队列
+ * WebSocketSession.sendMessage 不支持并发调用（Tomcat 会抛出 TEXT_PARTIAL_WRITING 等 IllegalStateException），
+ * 这里用无锁的多生产者队列收集待发送的请求，同一时刻只有一个线程写socket：
+ * 入队的线程抢到写权限后把写空队列的任务提交到写执行器，否则立即返回；入队线程（可能是超时线程、
+ * 其他会话的WebSocket接收线程）从不编码或写网络，一个慢连接不会拖住它们，写网络期间不持有任何锁
+ * 写的时候把队列中连续的请求合并成一个数组帧（与批量调用格式相同），并发越高合并越多
+ * 大请求的分片帧逐个入队，与其他调用的帧交错写出，一个大请求不会长时间独占连接
+ * {@link RpcPriority#INTERACTIVE} 调用的帧进入单独的队列，写线程每次取帧时先取它，不排在大批量调用的帧之后
+ */
+class OutboundQueue {
+
+    // 分片帧等待发送缓冲区腾出空间时的检查间隔，以及未限制单帧写入时间时的最长等待
+    private static final long WAIT_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+    private static final long DEFAULT_WAIT_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    /**
+     * 发送结果回调
+     */
+    interface Listener {
+        /**
+         * 帧已写入socket
+         * @param enqueuedNanos 帧内最早一个请求的入队时间
+         */
+        void onSent(ClientSession client, List<PendingCall> calls, long enqueuedNanos, int frameBytes);
+
+        /**
+         * 写入失败或入队被拒绝，需要结束这些调用
+         */
+        void onFailed(List<PendingCall> calls, Exception cause);
+
+        /**
+         * 单帧写入时间超过上限，客户端已不可用（每个会话只通知一次）
+         */
+        void onStalled(ClientSession client, long writeNanos);
+    }
+
+    private final ClientSession client;
+    private final Listener listener;
+    // 队列中尚未写出的字节数上限
+    private final long bufferSizeLimit;
+    // 单帧写入时间上限（纳秒），0表示不限制
+    private final long sendTimeLimitNanos;
+    // 合并后单帧的最大请求数和字节数，请求数小于等于1时不合并
+    private final int maxCoalesceCount;
+    private final int maxCoalesceBytes;
+    // 写空队列的执行器，每个会话同一时刻最多占用其中一个线程
+    private final Executor writeExecutor;
+    private final Runnable drain = this::drain;
+
+    private final ConcurrentLinkedQueue<Frame> queue = new ConcurrentLinkedQueue<>();
+    // 交互调用的帧，优先写出
+    private final ConcurrentLinkedQueue<Frame> urgent = new ConcurrentLinkedQueue<>();
+    private final AtomicLong bufferedBytes = new AtomicLong();
+    private final AtomicBoolean writing = new AtomicBoolean();
+    private final AtomicBoolean stalled = new AtomicBoolean();
+    // 当前帧开始写入的时间，0表示空闲
+    private volatile long writeStartNanos;
+    // 持有写权限的线程
+    private volatile Thread writer;
+
+    OutboundQueue(ClientSession client, Listener listener, long bufferSizeLimit, long sendTimeLimitNanos,
+                  int maxCoalesceCount, int maxCoalesceBytes, Executor writeExecutor) {
+        this.client = client;
+        this.listener = listener;
+        this.bufferSizeLimit = bufferSizeLimit;
+        this.sendTimeLimitNanos = sendTimeLimitNanos;
+        this.maxCoalesceCount = maxCoalesceCount;
+        this.maxCoalesceBytes = maxCoalesceBytes;
+        this.writeExecutor = writeExecutor;
+    }
+
+    /**
+     * 发送一组请求（两个列表一一对应，取消等控制消息对应的调用为null）
+     * 入队后立即返回，由写执行器写出
+     * @param asArray 是否以数组帧发送（单个请求且为false时按普通格式发送，兼容旧版rpc.js）
+     */
+    void send(List<EncodedRequest> requests, List<PendingCall> calls, boolean asArray) {
+        if (checkStalled(calls)) {
+            return;
+        }
+        int bytes = 0;
+        for (EncodedRequest request : requests) {
+            bytes += request.size();
+        }
+        // 队列为空时总是允许，保证单个大帧也能发送
+        long buffered = bufferedBytes.get();
+        if (buffered > 0 && buffered + bytes > bufferSizeLimit) {
+            listener.onFailed(calls, new RpcException(RpcException.TOO_MANY_REQUESTS,
+                    "客户端 " + client.getClientId() + " 繁忙: 发送缓冲区已满（" + buffered + " 字节）"));
+            return;
+        }
+        bufferedBytes.addAndGet(bytes);
+        queueFor(calls.get(0)).add(new Frame(requests, calls, asArray, bytes, System.nanoTime()));
+        flush();
+    }
+
+    /**
+     * 发送一个已组装好的帧（分片帧、gzip帧），不与其他帧合并，同一调用的分片按入队顺序写出
+     * 分片发送方会连续产生大量帧，发送缓冲区已满时等待写线程写出而不是直接拒绝
+     * @param call 帧所属的调用，写出前已结束（超时、取消）时跳过
+     * @param onDone 帧写出、失败或被跳过之后执行（归还帧缓冲区），可以为null
+     * @return 是否已入队；客户端已不可用或等待超过单帧写入时间上限时返回false（此时不会执行onDone）
+     */
+    boolean sendMessage(WebSocketMessage<?> message, PendingCall call, Runnable onDone) {
+        List<PendingCall> calls = Collections.singletonList(call);
+        if (checkStalled(calls)) {
+            return false;
+        }
+        int bytes = message.getPayloadLength();
+        long deadline = System.nanoTime() + (sendTimeLimitNanos > 0 ? sendTimeLimitNanos : DEFAULT_WAIT_NANOS);
+        long buffered;
+        // 写线程自己（在发送回调中触发的发送）不能等待，否则要等到超时
+        while ((buffered = bufferedBytes.get()) > 0 && buffered + bytes > bufferSizeLimit
+                && writer != Thread.currentThread()) {
+            if (isDone(call) || !client.isOpen() || System.nanoTime() > deadline) {
+                return false;
+            }
+            // 写线程刚好放弃写权限时重新提交写出任务
+            flush();
+            LockSupport.parkNanos(WAIT_NANOS);
+        }
+        bufferedBytes.addAndGet(bytes);
+        queueFor(call).add(new Frame(message, calls, bytes, System.nanoTime(), onDone));
+        flush();
+        return true;
+    }
+
+    /**
+     * 帧进入的队列：按帧内第一个调用的优先级（交互调用不经过合并窗口，不会和其他通道的调用在同一帧内），控制消息进入普通队列
+     */
+    private ConcurrentLinkedQueue<Frame> queueFor(PendingCall call) {
+        return call != null && call.priority == RpcPriority.INTERACTIVE ? urgent : queue;
+    }
+
+    /**
+     * 当前帧写入时间超过上限时直接失败，并通知一次客户端已不可用
+     */
+    private boolean checkStalled(List<PendingCall> calls) {
+        long writeStart = writeStartNanos;
+        if (writeStart == 0 || sendTimeLimitNanos <= 0) {
+            return false;
+        }
+        long writeNanos = System.nanoTime() - writeStart;
+        if (writeNanos <= sendTimeLimitNanos) {
+            return false;
+        }
+        listener.onFailed(calls, new RpcException(RpcException.NO_CLIENT,
+                "客户端 " + client.getClientId() + " 发送超时: 单帧写入已超过 " + writeNanos / 1_000_000 + " ms"));
+        if (stalled.compareAndSet(false, true)) {
+            listener.onStalled(client, writeNanos);
+        }
+        return true;
+    }
+
+    /**
+     * 尚未写出的字节数
+     */
+    long getBufferedBytes() {
+        return bufferedBytes.get();
+    }
+
+    /**
+     * 有帧待写且没有写线程时，提交一个写出任务
+     */
+    private void flush() {
+        if ((!urgent.isEmpty() || !queue.isEmpty()) && writing.compareAndSet(false, true)) {
+            try {
+                writeExecutor.execute(drain);
+            } catch (RejectedExecutionException e) {
+                // 执行器已关闭（应用停止中），在当前线程写出
+                drain();
+            }
+        }
+    }
+
+    /**
+     * 写空队列（持有写权限时执行）
+     */
+    private void drain() {
+        do {
+            writer = Thread.currentThread();
+            try {
+                Frame frame;
+                while ((frame = poll()) != null) {
+                    write(frame);
+                }
+            } finally {
+                writer = null;
+                writing.set(false);
+            }
+            // 放弃写权限后再检查一次，避免刚入队的帧没人写
+        } while ((!urgent.isEmpty() || !queue.isEmpty()) && writing.compareAndSet(false, true));
+    }
+
+    /**
+     * 取出下一帧（交互调用的帧优先），并把同一队列中紧随其后的帧合并进来（只有写线程调用）
+     */
+    private Frame poll() {
+        ConcurrentLinkedQueue<Frame> source = urgent.isEmpty() ? queue : urgent;
+        Frame head = source.poll();
+        if (head == null) {
+            return null;
+        }
+        bufferedBytes.addAndGet(-head.bytes);
+        Frame next = source.peek();
+        if (head.message != null || maxCoalesceCount <= 1 || next == null || !client.supportsBatch()
+                || !fits(head.calls.size(), head.bytes, next)) {
+            return head;
+        }
+        List<EncodedRequest> requests = new ArrayList<>(head.requests);
+        List<PendingCall> calls = new ArrayList<>(head.calls);
+        int bytes = head.bytes;
+        while ((next = source.peek()) != null && fits(calls.size(), bytes, next)) {
+            source.poll();
+            bufferedBytes.addAndGet(-next.bytes);
+            requests.addAll(next.requests);
+            calls.addAll(next.calls);
+            bytes += next.bytes;
+        }
+        return new Frame(requests, calls, true, bytes, head.enqueuedNanos);
+    }
+
+    private boolean fits(int count, int bytes, Frame next) {
+        return next.message == null && count + next.calls.size() <= maxCoalesceCount && bytes + next.bytes <= maxCoalesceBytes;
+    }
+
+    private void write(Frame frame) {
+        if (frame.message != null) {
+            try {
+                if (!isDone(frame.calls.get(0))) {
+                    writeMessage(frame.message, frame);
+                }
+            } finally {
+                if (frame.onDone != null) {
+                    frame.onDone.run();
+                }
+            }
+            return;
+        }
+        // 排队期间已超时或取消的调用不再发送
+        List<EncodedRequest> requests = frame.requests;
+        List<PendingCall> calls = frame.calls;
+        for (int i = 0; i < calls.size(); i++) {
+            if (isDone(calls.get(i))) {
+                requests = new ArrayList<>(requests.size());
+                calls = new ArrayList<>(calls.size());
+                for (int j = 0; j < frame.calls.size(); j++) {
+                    if (!isDone(frame.calls.get(j))) {
+                        requests.add(frame.requests.get(j));
+                        calls.add(frame.calls.get(j));
+                    }
+                }
+                break;
+            }
+        }
+        if (requests.isEmpty()) {
+            return;
+        }
+
+        WebSocketMessage<?> message;
+        try {
+            message = client.getCodec().toFrame(requests, frame.asArray);
+        } catch (Exception e) {
+            listener.onFailed(calls, e);
+            return;
+        }
+        writeMessage(message, frame.calls == calls ? frame : new Frame(requests, calls, frame.asArray, frame.bytes, frame.enqueuedNanos));
+    }
+
+    private void writeMessage(WebSocketMessage<?> message, Frame frame) {
+        writeStartNanos = System.nanoTime();
+        try {
+            client.getSession().sendMessage(message);
+        } catch (Exception e) {
+            listener.onFailed(frame.calls, e);
+            return;
+        } finally {
+            writeStartNanos = 0;
+        }
+        listener.onSent(client, frame.calls, frame.enqueuedNanos, message.getPayloadLength());
+    }
+
+    private static boolean isDone(PendingCall call) {
+        return call != null && call.future.isDone();
+    }
+
+    /**
+     * 一个待发送的帧：由已编码的请求组装（两个列表一一对应），或已组装好的分片帧
+     */
+    private static final class Frame {
+        final List<EncodedRequest> requests;
+        final List<PendingCall> calls;
+        final boolean asArray;
+        final int bytes;
+        final long enqueuedNanos;
+        final WebSocketMessage<?> message;
+        final Runnable onDone;
+
+        Frame(List<EncodedRequest> requests, List<PendingCall> calls, boolean asArray, int bytes, long enqueuedNanos) {
+            this.requests = requests;
+            this.calls = calls;
+            this.asArray = asArray;
+            this.bytes = bytes;
+            this.enqueuedNanos = enqueuedNanos;
+            this.message = null;
+            this.onDone = null;
+        }
+
+        Frame(WebSocketMessage<?> message, List<PendingCall> calls, int bytes, long enqueuedNanos, Runnable onDone) {
+            this.requests = null;
+            this.calls = calls;
+            this.asArray = false;
+            this.bytes = bytes;
+            this.enqueuedNanos = enqueuedNanos;
+            this.message = message;
+            this.onDone = onDone;
+        }
+    }
+}
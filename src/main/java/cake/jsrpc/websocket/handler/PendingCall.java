@@ -0,0 +1,125 @@
+package cake.jsrpc.websocket.handler;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 一次等待浏览器响应的RPC调用
+ * 同时作为时间轮节点，注册超时不需要额外分配对象
+ */
+class PendingCall extends TimeoutWheel.Task {
+
+    // 会话内单调递增的请求ID，发送时编码为十进制字符串
+    final long id;
+    final String action;
+    final ClientSession client;
+    final CompletableFuture<Object> future = new CompletableFuture<>();
+    private final PendingCallListener listener;
+    final long startNanos = System.nanoTime();
+    // 请求写入socket完成、收到响应帧的时间，用于分阶段统计，0表示未发生
+    volatile long sentNanos;
+    volatile long receivedNanos;
+    // 浏览器在响应中上报的方法执行时间（elapsed），0表示未上报
+    volatile long execNanos;
+    // 是否输出该调用的跟踪日志（登记时按抽样比例决定）
+    boolean traced;
+    // 是否已占用会话的并发名额（由 SessionLimiter 在锁内读写）
+    boolean admitted;
+    // 调用方要求原始结果：分片传输的大结果以 RawResult 交付，不绑定成字符串或对象
+    boolean rawResult;
+    // 优先级通道，决定在准入等待队列和发送队列中的次序（登记后、发送前设置）
+    RpcPriority priority = RpcPriority.NORMAL;
+
+    /**
+     * 调用状态回调
+     */
+    interface PendingCallListener {
+        /**
+         * 超时或被调用方取消时从等待表中移除
+         * @return 是否由本次移除，响应、连接断开等路径已取出该调用时返回false
+         */
+        boolean detach(PendingCall call);
+
+        /**
+         * 超时或被调用方取消结束了该调用（已从等待表移除），通知浏览器放弃执行
+         */
+        void onAbandoned(PendingCall call);
+
+        /**
+         * 调用结束（成功、失败或超时）
+         * @param cause 失败原因，成功时为null
+         */
+        void onFinished(PendingCall call, Throwable cause);
+    }
+
+    PendingCall(long id, String action, ClientSession client, PendingCallListener listener) {
+        this.id = id;
+        this.action = action;
+        this.client = client;
+        this.listener = listener;
+        client.onCallStarted();
+        // 调用方取消Future（future.cancel）时同样结束调用
+        future.whenComplete((result, error) -> {
+            if (error instanceof CancellationException) {
+                cancelled((CancellationException) error);
+            }
+        });
+    }
+
+    /**
+     * 消息中的请求ID（十进制字符串，与旧版随机ID一样是字符串，rpc.js 原样回传）
+     */
+    String wireId() {
+        return Long.toString(id);
+    }
+
+    /**
+     * 收到浏览器响应
+     */
+    boolean complete(Object result) {
+        cancelTimeout();
+        if (!future.complete(result)) {
+            return false;
+        }
+        client.onCallFinished(System.nanoTime() - startNanos, execNanos, true);
+        listener.onFinished(this, null);
+        return true;
+    }
+
+    /**
+     * 发送失败等异常结束
+     */
+    boolean fail(Throwable cause) {
+        cancelTimeout();
+        if (!future.completeExceptionally(cause)) {
+            return false;
+        }
+        client.onCallFinished(System.nanoTime() - startNanos, 0, false);
+        listener.onFinished(this, cause);
+        return true;
+    }
+
+    private void cancelled(CancellationException cause) {
+        cancelTimeout();
+        // 响应已同时到达时不再通知浏览器
+        if (listener.detach(this)) {
+            listener.onAbandoned(this);
+        }
+        client.onCallFinished(System.nanoTime() - startNanos, 0, false);
+        listener.onFinished(this, cause);
+    }
+
+    @Override
+    protected void expire() {
+        // 响应或连接断开已取出该调用时由取出方结束，浏览器已经完成的调用不发送取消通知
+        if (!listener.detach(this)) {
+            return;
+        }
+        RpcException timeout = new RpcException(RpcException.TIMEOUT, "超时: 未收到响应");
+        if (future.completeExceptionally(timeout)) {
+            listener.onAbandoned(this);
+            client.onCallFinished(System.nanoTime() - startNanos, 0, false);
+            listener.onFinished(this, timeout);
+        }
+    }
+}
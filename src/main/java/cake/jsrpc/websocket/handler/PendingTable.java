@@ -0,0 +1,110 @@
+package cake.jsrpc.websocket.handler;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * 单个会话的等待响应表（请求ID -> 等待中的调用）
+ * 请求ID在会话内单调递增，按 id & mask 直接落到预分配的环形槽位上，登记和取出都是一次CAS，不分配对象；
+ * 只有槽位仍被 capacity 个ID之前的长耗时调用占着时，新调用才放进溢出表
+ * 取出时按ID和对象身份校验，响应、超时、取消并发结束同一个调用时只有一方能取到
+ */
+class PendingTable {
+
+    private final AtomicReferenceArray<PendingCall> slots;
+    private final int mask;
+    // 槽位被占用时的溢出表，正常情况下为空
+    private final Map<Long, PendingCall> overflow = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong();
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * @param capacity 环形槽位数，向上取整为2的幂
+     */
+    PendingTable(int capacity) {
+        int slotCount = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.slots = new AtomicReferenceArray<>(slotCount);
+        this.mask = slotCount - 1;
+    }
+
+    /**
+     * 分配下一个请求ID（从1开始）
+     */
+    long nextId() {
+        return nextId.incrementAndGet();
+    }
+
+    /**
+     * 登记等待响应的调用，调用的ID由 {@link #nextId} 分配
+     */
+    void put(PendingCall call) {
+        if (!slots.compareAndSet(index(call.id), null, call)) {
+            overflow.put(call.id, call);
+        }
+        size.incrementAndGet();
+    }
+
+    /**
+     * 取出并移除等待该响应的调用，不存在（未登记、已结束或已被取出）时返回null
+     */
+    PendingCall take(long id) {
+        int index = index(id);
+        PendingCall call = slots.get(index);
+        if (call != null && call.id == id) {
+            return slots.compareAndSet(index, call, null) ? taken(call) : null;
+        }
+        if (overflow.isEmpty()) {
+            return null;
+        }
+        call = overflow.remove(id);
+        return call != null ? taken(call) : null;
+    }
+
+    /**
+     * 移除指定的调用（超时、取消、发送失败）
+     * @return 是否由本次移除，已被响应或其他路径取出时返回false
+     */
+    boolean remove(PendingCall call) {
+        int index = index(call.id);
+        if (slots.get(index) == call) {
+            return slots.compareAndSet(index, call, null) && taken(call) != null;
+        }
+        return !overflow.isEmpty() && overflow.remove(call.id, call) && taken(call) != null;
+    }
+
+    /**
+     * 取出全部调用（会话断开时），每个调用只会交给 action 一次
+     */
+    void drain(Consumer<PendingCall> action) {
+        for (int i = 0; i < slots.length(); i++) {
+            PendingCall call = slots.get(i);
+            if (call != null && slots.compareAndSet(i, call, null)) {
+                taken(call);
+                action.accept(call);
+            }
+        }
+        for (PendingCall call : overflow.values()) {
+            if (overflow.remove(call.id, call)) {
+                taken(call);
+                action.accept(call);
+            }
+        }
+    }
+
+    int size() {
+        return size.get();
+    }
+
+    private int index(long id) {
+        return (int) id & mask;
+    }
+
+    private PendingCall taken(PendingCall call) {
+        size.decrementAndGet();
+        return call;
+    }
+}
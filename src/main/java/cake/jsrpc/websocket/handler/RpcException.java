@@ -0,0 +1,52 @@
+package cake.jsrpc.websocket.handler;
+
+/**
+ * RPC调用异常，状态码沿用 {@link cake.jsrpc.websocket.model.RpcResponse} 的约定
+ * （404方法不存在、408超时、413数据过大、429客户端繁忙、500错误、502连接断开、503无可用客户端）
+ */
+public class RpcException extends RuntimeException {
+
+    public static final int NOT_FOUND = 404;
+    public static final int TIMEOUT = 408;
+    public static final int PAYLOAD_TOO_LARGE = 413;
+    public static final int TOO_MANY_REQUESTS = 429;
+    public static final int REMOTE_ERROR = 500;
+    // 调用所在的会话已断开（关闭或心跳超时），浏览器可能已执行也可能未执行
+    public static final int CONNECTION_LOST = 502;
+    public static final int NO_CLIENT = 503;
+
+    private final int status;
+
+    public RpcException(int status, String message) {
+        super(message);
+        this.status = status;
+    }
+
+    public RpcException(int status, String message, Throwable cause) {
+        super(message, cause);
+        this.status = status;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * 同步接口（invokeRemoteMethod、/api/rpc/call 等）的返回值约定：
+     * 超时、数据过大、方法未注册和浏览器端执行错误以错误信息作为调用结果返回，不抛出
+     * @return 作为结果返回的信息，其他错误返回null
+     */
+    public String toResultMessage() {
+        switch (status) {
+            case TIMEOUT:
+            case NOT_FOUND:
+            case REMOTE_ERROR:
+                // 浏览器端返回的错误信息直接作为结果返回
+                return getMessage();
+            case PAYLOAD_TOO_LARGE:
+                return "错误: " + getMessage();
+            default:
+                return null;
+        }
+    }
+}
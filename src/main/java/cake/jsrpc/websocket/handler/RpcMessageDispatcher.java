@@ -0,0 +1,309 @@
+package cake.jsrpc.websocket.handler;
+
+import cake.jsrpc.websocket.model.RpcRegisterMessage;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 基于流式 JsonParser 的消息分发器
+ * 只扫描一遍消息：先读出 callbackId / type / id 等路由字段，
+ * 只有确实存在等待该响应的调用时才绑定 result，迟到或无主的响应直接跳过，不做对象绑定
+ */
+class RpcMessageDispatcher {
+
+    /**
+     * 分发目标
+     */
+    interface Callbacks {
+        /**
+         * 取出并移除等待该响应的调用，不存在时返回null
+         * @param client 收到响应的会话，请求ID在会话内唯一
+         */
+        PendingCall takePendingCall(ClientSession client, long callbackId);
+
+        /**
+         * 客户端上报方法列表
+         * @param cacheable 声明为可缓存的方法，未声明时为null
+         * @param features 客户端支持的协议特性（如 chunked），未声明时为null
+         */
+        void onRegister(ClientSession client, List<String> methods, List<String> cacheable, List<String> features);
+
+        /**
+         * 客户端主动发送的请求（目前只记录）
+         */
+        void onClientRequest(ClientSession client, String id, String action, int paramCount);
+
+        /**
+         * 无法识别的消息
+         */
+        void onUnknownMessage(ClientSession client);
+    }
+
+    /**
+     * 分片重组得到的完整消息
+     * 要求原始结果的调用（{@link PendingCall#rawResult}）直接接管整条消息，result 不做绑定
+     */
+    interface RawSource {
+        /**
+         * 接管消息
+         * @param resultToken result 字段值的第一个token
+         * @return 代表未绑定结果的对象
+         */
+        Object capture(JsonToken resultToken);
+
+        /**
+         * 接管后调用方不再需要（调用已结束或浏览器返回了错误），归还消息缓冲区
+         */
+        void release();
+    }
+
+    private final ObjectMapper objectMapper;
+    private final Callbacks callbacks;
+
+    RpcMessageDispatcher(ObjectMapper objectMapper, Callbacks callbacks) {
+        this.objectMapper = objectMapper;
+        this.callbacks = callbacks;
+    }
+
+    /**
+     * 分发一条消息（单个对象或批量数组）
+     * @param receivedNanos 收到该消息的时间（System.nanoTime），用于分阶段统计
+     * @throws IOException 消息不是合法JSON
+     */
+    void dispatch(ClientSession client, JsonParser parser, long receivedNanos) throws IOException {
+        dispatch(client, parser, receivedNanos, null);
+    }
+
+    /**
+     * 分发一条分片重组得到的消息
+     * @param raw 单个响应对象对应的调用要求原始结果时由它接管消息，批量数组中的响应总是绑定
+     */
+    void dispatch(ClientSession client, JsonParser parser, long receivedNanos, RawSource raw) throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token == JsonToken.START_ARRAY) {
+            while ((token = parser.nextToken()) == JsonToken.START_OBJECT) {
+                dispatchObject(client, parser, receivedNanos, null);
+            }
+            if (token != JsonToken.END_ARRAY) {
+                callbacks.onUnknownMessage(client);
+            }
+        } else if (token == JsonToken.START_OBJECT) {
+            dispatchObject(client, parser, receivedNanos, raw);
+        } else {
+            callbacks.onUnknownMessage(client);
+        }
+    }
+
+    /**
+     * 解析一个消息对象，调用时parser位于START_OBJECT，返回时位于对应的END_OBJECT
+     */
+    private void dispatchObject(ClientSession client, JsonParser parser, long receivedNanos, RawSource raw) throws IOException {
+        // 是否是响应（带 callbackId 的消息）
+        boolean response = false;
+        PendingCall call = null;
+        Object result = null;
+        boolean captured = false;
+        int status = 0;
+        // 浏览器上报的执行时间（毫秒），-1表示未上报
+        double elapsedMs = -1;
+        // callbackId 出现在 result 之后时暂存 result 的token
+        TokenBuffer bufferedResult = null;
+        String type = null;
+        List<String> methods = null;
+        List<String> cacheable = null;
+        List<String> features = null;
+        String id = null;
+        String action = null;
+        int paramCount = 0;
+
+        try {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                switch (field) {
+                    case "callbackId":
+                        if (value != JsonToken.VALUE_NULL) {
+                            response = true;
+                            long callbackId = readId(parser, value);
+                            call = callbackId > 0 ? callbacks.takePendingCall(client, callbackId) : null;
+                            if (call != null) {
+                                call.receivedNanos = receivedNanos;
+                            }
+                        }
+                        break;
+                    case "result":
+                        if (!response) {
+                            bufferedResult = new TokenBuffer(parser);
+                            bufferedResult.copyCurrentStructure(parser);
+                        } else if (call != null && raw != null && call.rawResult && (status == 0 || status == 200)) {
+                            // 大结果不绑定成对象，由调用方从重组缓冲区流式读取
+                            result = raw.capture(value);
+                            captured = true;
+                            parser.skipChildren();
+                        } else if (call != null) {
+                            result = objectMapper.readValue(parser, Object.class);
+                        } else {
+                            // 无人等待的响应，跳过不绑定
+                            parser.skipChildren();
+                        }
+                        break;
+                    case "status":
+                        status = parser.getValueAsInt();
+                        break;
+                    case "elapsed":
+                        elapsedMs = parser.getValueAsDouble(-1);
+                        break;
+                    case "type":
+                        type = parser.getValueAsString();
+                        break;
+                    case "methods":
+                        methods = readStrings(parser);
+                        break;
+                    case "cacheable":
+                        cacheable = readStrings(parser);
+                        break;
+                    case "features":
+                        features = readStrings(parser);
+                        break;
+                    case "id":
+                        id = parser.getValueAsString();
+                        break;
+                    case "action":
+                        action = parser.getValueAsString();
+                        break;
+                    case "params":
+                        paramCount = countElements(parser);
+                        break;
+                    default:
+                        parser.skipChildren();
+                        break;
+                }
+            }
+        } catch (IOException e) {
+            // 消息格式错误，已取出的调用直接失败，不再等待超时
+            if (captured) {
+                raw.release();
+            }
+            if (call != null) {
+                call.fail(e);
+            }
+            throw e;
+        }
+
+        if (response) {
+            if (call != null) {
+                if (elapsedMs >= 0) {
+                    call.execNanos = Math.max(1, (long) (elapsedMs * 1_000_000));
+                }
+                if (bufferedResult != null) {
+                    try (JsonParser buffered = bufferedResult.asParser(parser.getCodec())) {
+                        result = objectMapper.readValue(buffered, Object.class);
+                    }
+                }
+                if (status == 0 || status == 200) {
+                    if (!call.complete(result) && captured) {
+                        // 已超时或被取消
+                        raw.release();
+                    }
+                } else {
+                    if (captured) {
+                        // status 出现在 result 之后的错误响应
+                        raw.release();
+                        result = null;
+                    }
+                    // 浏览器端返回的错误（404方法未注册、500执行错误等）
+                    call.fail(new RpcException(browserStatus(status),
+                            result != null ? String.valueOf(result) : "状态码 " + status));
+                }
+            }
+            return;
+        }
+        if (RpcRegisterMessage.TYPE.equals(type) && methods != null) {
+            callbacks.onRegister(client, methods, cacheable, features);
+            return;
+        }
+        if (action != null) {
+            callbacks.onClientRequest(client, id, action, paramCount);
+            return;
+        }
+        callbacks.onUnknownMessage(client);
+    }
+
+    /**
+     * 浏览器上报的错误状态码：只保留404（方法未注册）和413（数据过大），其余一律按500执行错误处理
+     * 502、503等表示连接断开、无可用客户端，只能由服务端判定，页面返回这些状态码不应触发重试或计入连接失败
+     */
+    static int browserStatus(int status) {
+        switch (status) {
+            case RpcException.NOT_FOUND:
+            case RpcException.PAYLOAD_TOO_LARGE:
+                return status;
+            default:
+                return RpcException.REMOTE_ERROR;
+        }
+    }
+
+    /**
+     * 读取请求ID：十进制字符串（rpc.js 原样回传）或数字，直接在解析器的字符缓冲区上转换，不创建字符串
+     * @return 请求ID，不是本服务分配的ID（格式不对或超出范围）时返回-1
+     */
+    static long readId(JsonParser parser, JsonToken value) throws IOException {
+        if (value == JsonToken.VALUE_NUMBER_INT) {
+            return parser.getNumberType() == JsonParser.NumberType.BIG_INTEGER ? -1 : parser.getLongValue();
+        }
+        if (value != JsonToken.VALUE_STRING) {
+            return -1;
+        }
+        char[] text = parser.getTextCharacters();
+        int offset = parser.getTextOffset();
+        int length = parser.getTextLength();
+        // 18位以内的十进制数不会溢出long
+        if (length == 0 || length > 18) {
+            return -1;
+        }
+        long id = 0;
+        for (int i = offset; i < offset + length; i++) {
+            char c = text[i];
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            id = id * 10 + (c - '0');
+        }
+        return id;
+    }
+
+    private static List<String> readStrings(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return null;
+        }
+        List<String> values = new ArrayList<>();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (parser.currentToken().isScalarValue()) {
+                values.add(parser.getValueAsString());
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return values;
+    }
+
+    private static int countElements(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return 0;
+        }
+        int count = 0;
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            parser.skipChildren();
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,44 @@
+package cake.jsrpc.websocket.handler;
+
+import java.util.Locale;
+
+/**
+ * 调用的优先级通道
+ * 每个会话的等待队列按通道分开排队，名额空出时按权重轮流放行（见 rpc.priority.*），
+ * 手工测试（如 Repeater）的调用不必排在扫描器的大量调用之后
+ */
+public enum RpcPriority {
+    // 手工触发、有人等待结果的调用，发送队列中也优先写出
+    INTERACTIVE,
+    // 未指定时的默认通道
+    NORMAL,
+    // 扫描、爆破等大批量调用
+    BULK;
+
+    private final String tag = name().toLowerCase(Locale.ROOT);
+
+    /**
+     * 通道名（小写），用于请求字段、请求头和指标标签
+     */
+    public String tag() {
+        return tag;
+    }
+
+    /**
+     * 解析请求中的优先级（不区分大小写）
+     * @param value 通道名，为null或空时返回 {@link #NORMAL}
+     * @throws IllegalArgumentException 未知的通道名
+     */
+    public static RpcPriority parse(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return NORMAL;
+        }
+        String name = value.trim().toLowerCase(Locale.ROOT);
+        for (RpcPriority priority : values()) {
+            if (priority.tag.equals(name)) {
+                return priority;
+            }
+        }
+        throw new IllegalArgumentException("未知的优先级: " + value + "（可选 interactive / normal / bulk）");
+    }
+}
@@ -1,119 +1,785 @@
 package cake.jsrpc.websocket.handler;
 
+import cake.jsrpc.websocket.cache.RpcResultCache;
+import cake.jsrpc.websocket.codec.EncodedRequest;
+import cake.jsrpc.websocket.codec.RpcCodec;
+import cake.jsrpc.websocket.codec.RpcCodecs;
+import cake.jsrpc.websocket.config.RpcProperties;
+import cake.jsrpc.websocket.limit.ConcurrencyLimit;
+import cake.jsrpc.websocket.limit.ConcurrencyLimits;
+import cake.jsrpc.websocket.metrics.RpcMetrics;
 import cake.jsrpc.websocket.model.RpcRequest;
-import cake.jsrpc.websocket.model.RpcResponse;
+import cake.jsrpc.websocket.replay.ReplayStore;
+import cake.jsrpc.websocket.routing.SessionSelector;
+import cake.jsrpc.websocket.routing.SessionSelectors;
+import cake.jsrpc.websocket.transfer.BufferPool;
+import cake.jsrpc.websocket.transfer.ChunkAssembler;
+import cake.jsrpc.websocket.transfer.ChunkFrames;
+import cake.jsrpc.websocket.transfer.ChunkOutputStream;
+import cake.jsrpc.websocket.transfer.Gzip;
+import cake.jsrpc.websocket.transfer.RawResult;
+import cake.jsrpc.websocket.transfer.SegmentedBuffer;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.socket.BinaryMessage;
 import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PingMessage;
+import org.springframework.web.socket.PongMessage;
 import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
 import org.springframework.web.socket.WebSocketSession;
-import org.springframework.web.socket.handler.TextWebSocketHandler;
+import org.springframework.web.socket.handler.AbstractWebSocketHandler;
+import org.springframework.web.util.UriComponentsBuilder;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Component
-public class RpcWebSocketHandler extends TextWebSocketHandler {
+public class RpcWebSocketHandler extends AbstractWebSocketHandler {
 
-    // 存储连接的客户端会话（线程安全）
-    private final Map<String, WebSocketSession> connectedClients = new ConcurrentHashMap<>();
-    // 存储等待响应的请求（请求ID -> 结果容器）
-    private final Map<String, Object[]> pendingRequests = new ConcurrentHashMap<>();
+    private static final Logger log = LoggerFactory.getLogger(RpcWebSocketHandler.class);
+    // 单次调用的跟踪日志（DEBUG级别开启，按 rpc.trace.sample-rate 抽样）
+    private static final Logger traceLog = LoggerFactory.getLogger("cake.jsrpc.websocket.trace");
+
+    // 按 ?group= 分组的客户端会话，连接、断开、注册都经过它
+    private final SessionGroups sessionGroups = new SessionGroups();
+    // 全部客户端会话及方法索引（线程安全，选择路径无锁），不指定分组的调用按它路由
+    private final SessionRegistry connectedClients = sessionGroups.all();
+    // 超时时间轮（100ms一格，共512格），所有调用共用一个线程处理超时
+    private final TimeoutWheel timeoutWheel = new TimeoutWheel(100, TimeUnit.MILLISECONDS, 512);
+    // 超时后从等待表中移除，调用结束时记录指标
+    private final PendingCall.PendingCallListener timeoutListener = new CallListener();
     // JSON 序列化工具
     private final ObjectMapper objectMapper = new ObjectMapper()
-            .configure(com.fasterxml.jackson.core.JsonGenerator.Feature.ESCAPE_NON_ASCII, false);
-    
-    // 最大消息大小（10MB）
-    private static final int MAX_MESSAGE_SIZE = 10 * 1024 * 1024;
+            .configure(JsonGenerator.Feature.ESCAPE_NON_ASCII, false);
+    // 消息编码（JSON文本帧 / CBOR二进制帧）
+    private final RpcCodecs codecs = new RpcCodecs(objectMapper);
+    // 收到消息的流式分发器
+    private final RpcMessageDispatcher messageDispatcher = new RpcMessageDispatcher(objectMapper, new DispatchCallbacks());
+    // 分片重组缓冲区的分段大小
+    private static final int SEGMENT_SIZE = 64 * 1024;
     
     // 心跳检测执行器
     private final ScheduledExecutorService heartbeatExecutor = Executors.newSingleThreadScheduledExecutor();
+    // 发送执行器：排队调用放行后的发送（编码、压缩、分片）和各会话发送队列的写出都在这里执行，
+    // 超时线程和WebSocket接收线程只入队；每个会话同一时刻最多占用一个写线程，慢连接不影响其他会话
+    private final ExecutorService sendExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "rpc-sender-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    // 多客户端负载均衡策略
+    private volatile SessionSelector sessionSelector;
+    // 单个批量帧最多包含的调用数
+    private final int maxBatchSize;
+    // 单个调用合并等待窗口（毫秒），0表示不合并
+    private final long batchLingerMs;
+    // 合并窗口到期后的发送执行器（未开启合并时为null）
+    private final ScheduledExecutorService lingerExecutor;
+    // 纯函数调用结果缓存
+    private final RpcResultCache resultCache;
+    // 调用记录与回放（rpc.replay.mode=off 时不生效）
+    private final ReplayStore replayStore;
+    // 调用指标
+    private final RpcMetrics metrics;
+    // 跟踪日志抽样比例
+    private final double traceSampleRate;
+    // 未指定超时的调用的默认超时
+    private final AdaptiveTimeout adaptiveTimeout;
+    // 会话准入控制配置
+    private final RpcProperties.Limit limitProperties;
+    // 各优先级通道的放行权重（按 RpcPriority 顺序）
+    private final int[] laneWeights;
+    // 排队的调用被放行时记录等待时间
+    private final SessionLimiter.AdmissionListener admissionListener;
+    // 发送队列：未写出字节数上限、单帧写入时间上限、是否合并排队的请求
+    private final long sendBufferSizeLimit;
+    private final long sendTimeLimitNanos;
+    private final boolean sendCoalesce;
+    private final OutboundQueue.Listener outboundListener = new OutboundListener();
+    // 单帧上限（不分片的消息）、分片传输的单条消息上限、分片大小、每个会话进行中的分片传输数上限
+    private final int maxFrameBytes;
+    private final long maxMessageBytes;
+    private final int chunkBytes;
+    private final int maxTransfers;
+    // 分片重组的分段缓冲池、发送分片帧的帧缓冲池
+    private final BufferPool segmentPool;
+    private final BufferPool chunkFramePool;
+    // 应用层gzip：是否启用、压缩阈值（编码后的字节数）、压缩级别
+    private final boolean compressionEnabled;
+    private final int compressionThreshold;
+    private final int compressionLevel;
+    // 心跳：静默多久后发送ping、静默多久后判定连接已死（毫秒），间隔为0时只检查会话是否已关闭
+    private final long heartbeatIntervalMs;
+    private final long heartbeatTimeoutMs;
+    // 幂等调用因连接断开失败后在其他客户端上的最大重试次数，以及额外声明为幂等的方法
+    private final int maxRetries;
+    private final Set<String> retryActions;
+
+    public RpcWebSocketHandler(RpcProperties properties, MeterRegistry meterRegistry) {
+        this.sessionSelector = SessionSelectors.create(properties.getRouting().getStrategy());
+        this.maxBatchSize = Math.max(1, properties.getBatch().getMaxSize());
+        this.batchLingerMs = properties.getBatch().getLingerMs();
+        this.lingerExecutor = batchLingerMs > 0 ? Executors.newSingleThreadScheduledExecutor() : null;
+        this.resultCache = new RpcResultCache(properties.getCache(), objectMapper);
+        this.replayStore = new ReplayStore(properties.getReplay(), objectMapper);
+        this.metrics = new RpcMetrics(meterRegistry, properties.getTimeout().getPercentile());
+        this.adaptiveTimeout = new AdaptiveTimeout(properties.getTimeout(), metrics);
+        this.metrics.bindInFlight(this::pendingCount);
+        this.metrics.bindKnownNames(connectedClients::isRegistered, sessionGroups::contains);
+        this.traceSampleRate = properties.getTrace().getSampleRate();
+        this.limitProperties = properties.getLimit();
+        RpcProperties.Priority priority = properties.getPriority();
+        this.laneWeights = new int[]{priority.getInteractiveWeight(), priority.getNormalWeight(), priority.getBulkWeight()};
+        for (RpcPriority lane : RpcPriority.values()) {
+            metrics.bindLaneQueued(lane, () -> queuedCount(lane));
+        }
+        this.admissionListener = (call, waitNanos) -> metrics.recordLaneWait(call.priority, waitNanos);
+        this.sendBufferSizeLimit = properties.getSend().getBufferSizeLimit();
+        this.sendTimeLimitNanos = TimeUnit.MILLISECONDS.toNanos(properties.getSend().getTimeLimitMs());
+        this.sendCoalesce = properties.getSend().isCoalesce();
+        RpcProperties.Transfer transfer = properties.getTransfer();
+        this.maxFrameBytes = transfer.getMaxFrameBytes();
+        this.maxMessageBytes = transfer.getMaxMessageBytes();
+        this.chunkBytes = transfer.getChunkBytes();
+        this.maxTransfers = transfer.getMaxTransfers();
+        int frameBufferSize = chunkBytes + ChunkFrames.MAX_HEADER_SIZE;
+        // 两个缓冲池各占一半的空闲缓冲区上限
+        this.segmentPool = new BufferPool(SEGMENT_SIZE, (int) (transfer.getPoolBytes() / 2 / SEGMENT_SIZE));
+        this.chunkFramePool = new BufferPool(frameBufferSize, (int) (transfer.getPoolBytes() / 2 / frameBufferSize));
+        RpcProperties.Compression compression = properties.getCompression();
+        this.compressionEnabled = compression.isEnabled();
+        this.compressionThreshold = compression.getThresholdBytes();
+        this.compressionLevel = compression.getLevel();
+        this.heartbeatIntervalMs = properties.getHeartbeat().getIntervalMs();
+        long timeoutMs = properties.getHeartbeat().getTimeoutMs();
+        // 超时至少一个心跳间隔，否则还没发ping就被驱逐
+        this.heartbeatTimeoutMs = timeoutMs > 0 ? Math.max(timeoutMs, heartbeatIntervalMs) : Long.MAX_VALUE;
+        this.maxRetries = properties.getRetry().getMaxRetries();
+        this.retryActions = new HashSet<>(properties.getRetry().getActions());
+    }
+
+    /**
+     * 替换负载均衡策略
+     */
+    public void setSessionSelector(SessionSelector sessionSelector) {
+        this.sessionSelector = sessionSelector;
+    }
 
     @PostConstruct
     public void init() {
-        // 启动心跳检测任务，每30秒检查一次连接状态
-        heartbeatExecutor.scheduleAtFixedRate(this::checkConnections, 30, 30, TimeUnit.SECONDS);
+        if (heartbeatIntervalMs > 0) {
+            // 检查周期不超过1秒，静默的会话在超时后1秒内被驱逐
+            long period = Math.min(heartbeatIntervalMs, 1000);
+            heartbeatExecutor.scheduleAtFixedRate(this::checkConnections, period, period, TimeUnit.MILLISECONDS);
+        } else {
+            // 未开启心跳，每30秒检查一次连接状态
+            heartbeatExecutor.scheduleAtFixedRate(this::checkConnections, 30, 30, TimeUnit.SECONDS);
+        }
     }
     
     @PreDestroy
     public void destroy() {
         heartbeatExecutor.shutdown();
+        if (lingerExecutor != null) {
+            lingerExecutor.shutdown();
+        }
+        timeoutWheel.stop();
+        sendExecutor.shutdown();
+        replayStore.close();
     }
     
     /**
-     * 检查所有连接的状态
+     * 检查所有连接的状态：驱逐已关闭或超时未响应的会话，向静默的会话发送ping
+     * 收到任何消息（包括pong）都算存活，繁忙的会话不需要额外的ping
      */
     private void checkConnections() {
+        long now = System.currentTimeMillis();
+        for (ClientSession client : connectedClients.clients()) {
+            try {
+                if (!client.isOpen()) {
+                    log.info("[心跳检测] 发现已关闭的会话: {}", client.getClientId());
+                    evict(client, "closed");
+                    continue;
+                }
+                if (heartbeatIntervalMs <= 0) {
+                    continue;
+                }
+                long silentMs = now - client.getLastSeen();
+                if (silentMs > heartbeatTimeoutMs) {
+                    log.warn("[心跳检测] 客户端 {} 已 {} ms 无响应，判定连接已断开", client.getClientId(), silentMs);
+                    evict(client, "heartbeat");
+                } else if (silentMs >= heartbeatIntervalMs && client.getOutboundBytes() < sendBufferSizeLimit / 2) {
+                    // ping的载荷是发送时间，pong原样带回，用于计算心跳往返延迟
+                    ByteBuffer payload = ByteBuffer.allocate(Long.BYTES).putLong(0, System.nanoTime());
+                    client.getOutbound().sendMessage(new PingMessage(payload), null, null);
+                }
+            } catch (Exception e) {
+                log.debug("[心跳检测] 检查客户端 {} 失败: {}", client.getClientId(), e.getMessage());
+            }
+        }
+    }
 
-        //System.out.println("[心跳检测] 当前连接数: " + connectedClients.size());
-        for (Map.Entry<String, WebSocketSession> entry : connectedClients.entrySet()) {
-            WebSocketSession session = entry.getValue();
-            if (!session.isOpen()) {
-                System.out.println("[心跳检测] 发现已关闭的会话: " + entry.getKey());
-                // 移除已关闭的会话
-                connectedClients.remove(entry.getKey());
+    /**
+     * 驱逐失效的会话：移出路由，立即结束它的全部在途调用（幂等调用会在其他客户端上重试），然后关闭连接
+     */
+    private void evict(ClientSession client, String reason) {
+        if (sessionGroups.remove(client.getClientId()) == null) {
+            // 已被连接关闭回调处理
+            return;
+        }
+        metrics.recordEviction(reason);
+        failPendingCalls(client);
+        try {
+            client.getSession().close(CloseStatus.SESSION_NOT_RELIABLE);
+        } catch (Exception e) {
+            log.debug("关闭客户端 {} 失败: {}", client.getClientId(), e.getMessage());
+        }
+    }
+
+    /**
+     * 结束发往该客户端、尚未收到响应的全部调用（包括在准入队列中等待的调用）
+     */
+    private void failPendingCalls(ClientSession client) {
+        int[] failed = {0};
+        client.getPending().drain(call -> {
+            if (call.fail(connectionLost(client))) {
+                failed[0]++;
             }
+        });
+        if (failed[0] > 0) {
+            log.info("客户端 {} 的 {} 个在途调用因连接断开而失败", client.getClientId(), failed[0]);
+        }
+    }
+
+    /**
+     * 全部会话等待响应的调用数（指标采集时汇总，调用路径上不维护全局计数）
+     */
+    private int pendingCount() {
+        int count = 0;
+        for (ClientSession client : connectedClients.clients()) {
+            count += client.getPending().size();
+        }
+        return count;
+    }
+
+    /**
+     * 全部会话在指定通道中排队的调用数
+     */
+    private int queuedCount(RpcPriority lane) {
+        int count = 0;
+        for (ClientSession client : connectedClients.clients()) {
+            count += client.getQueued(lane);
         }
+        return count;
+    }
+
+    private static RpcException connectionLost(ClientSession client) {
+        return new RpcException(RpcException.CONNECTION_LOST, "客户端 " + client.getClientId() + " 连接已断开");
     }
 
     /**
-     * 公共方法：供外部调用，向第一个连接的客户端发送RPC请求
+     * 公共方法：供外部调用，按负载均衡策略选择客户端发送RPC请求
      * @param action 要调用的方法名
      * @param params 参数列表
      * @return 调用结果
      */
     public Object invokeRemoteMethod(String action, Object... params) throws Exception {
-        // 获取第一个可用的会话
-        WebSocketSession session = getFirstAvailableSession();
-        if (session == null) {
-            throw new RuntimeException("没有可用的WebSocket客户端连接");
+        return awaitResult(invokeRemoteMethodAsync(action, params));
+    }
+
+    /**
+     * 异步版本的 {@link #invokeRemoteMethod}，不占用调用线程
+     * 声明为可缓存的方法先查结果缓存，相同参数的并发调用共享一次浏览器往返
+     * @param action 要调用的方法名
+     * @param params 参数列表
+     * @return 调用结果的Future，超时或失败时以 {@link RpcException} 异常结束
+     */
+    public CompletableFuture<Object> invokeRemoteMethodAsync(String action, Object... params) {
+        return invokeWithTimeoutAsync(action, 0, params);
+    }
+
+    /**
+     * 指定超时的 {@link #invokeRemoteMethod}
+     * @param timeoutMs 超时（毫秒），小于等于0时使用默认超时
+     */
+    public Object invokeWithTimeout(String action, long timeoutMs, Object... params) throws Exception {
+        return awaitResult(invokeWithTimeoutAsync(action, timeoutMs, params));
+    }
+
+    /**
+     * 指定超时的 {@link #invokeRemoteMethodAsync}
+     * 超时或调用方取消返回的Future（cancel）后会通知浏览器放弃执行该调用
+     * @param timeoutMs 超时（毫秒），小于等于0时使用默认超时（rpc.timeout.*，开启 adaptive 时按该方法的历史耗时自适应）
+     */
+    public CompletableFuture<Object> invokeWithTimeoutAsync(String action, long timeoutMs, Object... params) {
+        return invokeGroupAsync(null, action, timeoutMs, params);
+    }
+
+    /**
+     * 调用指定分组（连接地址上的 ?group= 参数）的浏览器方法并阻塞等待结果，返回值约定同 {@link #invokeWithTimeout}
+     * @param group 分组名，为null时不限分组
+     */
+    public Object invokeGroup(String group, String action, long timeoutMs, Object... params) throws Exception {
+        return awaitResult(invokeGroupAsync(group, action, timeoutMs, params));
+    }
+
+    /**
+     * 以指定优先级调用浏览器方法并阻塞等待结果，返回值约定同 {@link #invokeWithTimeout}
+     * @param group 分组名，为null时不限分组
+     * @param priority 优先级通道
+     */
+    public Object invokeGroup(String group, RpcPriority priority, String action, long timeoutMs, Object... params)
+            throws Exception {
+        return awaitResult(invokeGroupAsync(group, priority, action, timeoutMs, params));
+    }
+
+    /**
+     * 调用指定分组的浏览器方法：只路由到该分组的客户端，结果缓存也按分组隔离，其他同 {@link #invokeWithTimeoutAsync}
+     * @param group 分组名，为null时不限分组；分组内没有客户端时以 {@link RpcException#NO_CLIENT} 失败
+     */
+    public CompletableFuture<Object> invokeGroupAsync(String group, String action, long timeoutMs, Object... params) {
+        return invokeGroupAsync(group, RpcPriority.NORMAL, action, timeoutMs, params);
+    }
+
+    /**
+     * 以指定优先级调用浏览器方法，其他同 {@link #invokeGroupAsync(String, String, long, Object...)}
+     * 会话达到并发上限后，调用在该优先级的通道中排队，名额空出时按通道权重放行
+     * @param group 分组名，为null时不限分组
+     * @param priority 优先级通道
+     */
+    public CompletableFuture<Object> invokeGroupAsync(String group, RpcPriority priority, String action, long timeoutMs,
+                                                      Object... params) {
+        SessionRegistry pool = sessionGroups.group(group);
+        if (resultCache.isEnabled() && (resultCache.isConfigured(action) || pool.isCacheable(action))) {
+            return metrics.track(action, group, resultCache.get(action, group, params,
+                    () -> invokeRecordedAsync(pool, group, priority, action, timeoutMs, false, params)));
+        }
+        return metrics.track(action, group, invokeRecordedAsync(pool, group, priority, action, timeoutMs, false, params));
+    }
+
+    /**
+     * 开启记录回放时经过 {@link ReplayStore}：replay 模式下有记录的调用不发给浏览器，其余调用的成功结果写入记录
+     */
+    private CompletableFuture<Object> invokeRecordedAsync(SessionRegistry pool, String group, RpcPriority priority,
+                                                          String action, long timeoutMs, boolean rawResult,
+                                                          Object... params) {
+        if (!replayStore.isEnabled()) {
+            return invokeUncachedAsync(pool, group, priority, action, timeoutMs, rawResult, params);
+        }
+        return replayStore.get(action, group, params,
+                () -> invokeUncachedAsync(pool, group, priority, action, timeoutMs, rawResult, params));
+    }
+
+    /**
+     * 调用浏览器方法并阻塞等待结果，大结果不绑定（见 {@link #invokeStreamingAsync}）
+     * 与 {@link #invokeWithTimeout} 不同，超时等错误一律以 {@link RpcException} 抛出
+     */
+    public Object invokeStreaming(String action, long timeoutMs, Object... params) throws Exception {
+        try {
+            return invokeStreamingAsync(action, timeoutMs, params).get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 调用浏览器方法，浏览器分片回传的大结果以 {@link RawResult} 交付，不解析成完整的字符串或对象，
+     * 调用方用 {@link RawResult#writeTo} 流式写出（例如直接写入HTTP响应）或用 {@link RawResult#release} 丢弃；
+     * 未分片的小结果照常以字符串或对象交付。不经过结果缓存；开启记录回放时小结果照常记录和回放，分片回传的大结果不记录
+     * @param timeoutMs 超时（毫秒），小于等于0时使用默认超时
+     */
+    public CompletableFuture<Object> invokeStreamingAsync(String action, long timeoutMs, Object... params) {
+        return invokeGroupStreamingAsync(null, action, timeoutMs, params);
+    }
+
+    /**
+     * 指定分组的 {@link #invokeStreamingAsync}
+     * @param group 分组名，为null时不限分组
+     */
+    public CompletableFuture<Object> invokeGroupStreamingAsync(String group, String action, long timeoutMs, Object... params) {
+        return invokeGroupStreamingAsync(group, RpcPriority.NORMAL, action, timeoutMs, params);
+    }
+
+    /**
+     * 指定分组和优先级的 {@link #invokeStreamingAsync}
+     * @param group 分组名，为null时不限分组
+     * @param priority 优先级通道
+     */
+    public CompletableFuture<Object> invokeGroupStreamingAsync(String group, RpcPriority priority, String action,
+                                                               long timeoutMs, Object... params) {
+        return metrics.track(action, group,
+                invokeRecordedAsync(sessionGroups.group(group), group, priority, action, timeoutMs, true, params));
+    }
+
+    private CompletableFuture<Object> invokeUncachedAsync(SessionRegistry pool, String group, RpcPriority priority,
+                                                          String action, long timeoutMs, boolean rawResult, Object... params) {
+        if (pool.isEmpty()) {
+            return failedFuture(noClient(group));
+        }
+        ClientSession client = selectSession(pool, action, null);
+        if (client == null) {
+            return failedFuture(new RpcException(RpcException.NOT_FOUND, "方法 " + action + " 未注册"));
+        }
+        if (isRetryable(pool, action)) {
+            long effectiveTimeoutMs = timeoutMs > 0 ? timeoutMs : adaptiveTimeout.timeoutMs(action, params);
+            RetryingCall call = new RetryingCall(pool, priority, action, effectiveTimeoutMs, rawResult, params);
+            return call.start(callClientAsync(client, priority, action, effectiveTimeoutMs, rawResult, params), client);
+        }
+        return callClientAsync(client, priority, action, timeoutMs, rawResult, params);
+    }
+
+    /**
+     * 连接断开后可以换一个客户端重试的方法：声明为可缓存（纯函数）或在 rpc.retry.actions 中配置的方法
+     */
+    private boolean isRetryable(SessionRegistry pool, String action) {
+        return maxRetries > 0 && (retryActions.contains(action)
+                || resultCache.isConfigured(action) || pool.isCacheable(action));
+    }
+
+    private static RpcException noClient(String group) {
+        return new RpcException(RpcException.NO_CLIENT, group == null
+                ? "没有可用的WebSocket客户端连接"
+                : "分组 " + group + " 没有可用的WebSocket客户端连接");
+    }
+
+    /**
+     * 批量调用同一个浏览器方法（阻塞等待全部结果）
+     * 单个调用的超时等错误沿用 {@link #invokeRemoteMethod} 的返回值约定
+     * @param action 要调用的方法名
+     * @param paramsList 每次调用的参数列表
+     * @return 与 paramsList 一一对应的结果
+     */
+    public List<Object> invokeRemoteBatch(String action, List<Object[]> paramsList) throws Exception {
+        List<CompletableFuture<Object>> futures = invokeRemoteBatchAsync(action, paramsList);
+        List<Object> results = new ArrayList<>(futures.size());
+        for (CompletableFuture<Object> future : futures) {
+            results.add(awaitResult(future));
         }
-        return callBrowserMethod(session, action, params);
+        return results;
     }
 
     /**
-     * 获取第一个可用的WebSocket会话
+     * 异步批量调用同一个浏览器方法
+     * 每 maxBatchSize 个调用打包成一个WebSocket帧，各批按负载均衡策略分给不同客户端
+     * @return 与 paramsList 一一对应的结果Future
      */
-    private WebSocketSession getFirstAvailableSession() {
-        for (WebSocketSession session : connectedClients.values()) {
-            if (session.isOpen()) {
-                return session;
+    public List<CompletableFuture<Object>> invokeRemoteBatchAsync(String action, List<Object[]> paramsList) {
+        return invokeGroupBatchAsync(null, action, paramsList);
+    }
+
+    /**
+     * 指定分组的 {@link #invokeRemoteBatchAsync}
+     * @param group 分组名，为null时不限分组
+     */
+    public List<CompletableFuture<Object>> invokeGroupBatchAsync(String group, String action, List<Object[]> paramsList) {
+        SessionRegistry pool = sessionGroups.group(group);
+        // 开启记录回放时每个调用单独记录和回放，replay 模式下只有没有记录的调用发给浏览器
+        List<CompletableFuture<Object>> futures = replayStore.isEnabled()
+                ? replayStore.getAll(action, group, paramsList, missing -> invokeBatchUncachedAsync(pool, group, action, missing))
+                : invokeBatchUncachedAsync(pool, group, action, paramsList);
+        for (CompletableFuture<Object> future : futures) {
+            metrics.track(action, group, future);
+        }
+        return futures;
+    }
+
+    private List<CompletableFuture<Object>> invokeBatchUncachedAsync(SessionRegistry pool, String group, String action,
+                                                                     List<Object[]> paramsList) {
+        List<CompletableFuture<Object>> futures = new ArrayList<>(paramsList.size());
+        for (int from = 0; from < paramsList.size(); from += maxBatchSize) {
+            List<Object[]> slice = paramsList.subList(from, Math.min(from + maxBatchSize, paramsList.size()));
+            RpcException error = null;
+            ClientSession client = null;
+            if (pool.isEmpty()) {
+                error = noClient(group);
+            } else if ((client = selectSession(pool, action, null)) == null) {
+                error = new RpcException(RpcException.NOT_FOUND, "方法 " + action + " 未注册");
+            }
+            if (error != null) {
+                for (int i = 0; i < slice.size(); i++) {
+                    futures.add(failedFuture(error));
+                }
+                continue;
+            }
+            List<CompletableFuture<Object>> results = callClientBatchAsync(client, action, slice);
+            if (isRetryable(pool, action)) {
+                // 每个调用单独重试，同批的其他调用不受影响
+                for (int i = 0; i < results.size(); i++) {
+                    Object[] params = slice.get(i);
+                    RetryingCall call = new RetryingCall(pool, RpcPriority.NORMAL, action,
+                            adaptiveTimeout.fixedTimeoutMs(params), false, params);
+                    results.set(i, call.start(results.get(i), client));
+                }
+            }
+            futures.addAll(results);
+        }
+        return futures;
+    }
+
+    /**
+     * 按负载均衡策略选择一个实现了该方法的客户端会话
+     * 有其他候选时避开超过两个心跳间隔没有任何响应的会话（可能已半开，等待心跳超时驱逐）
+     * @param pool 全部客户端或某个分组的客户端
+     * @param action 方法名，为null时不限制方法
+     * @param exclude 不选择的会话（重试时排除刚失败的会话），可以为null
+     */
+    private ClientSession selectSession(SessionRegistry pool, String action, ClientSession exclude) {
+        List<ClientSession> candidates = pool.candidates(action);
+        if (candidates.isEmpty()) {
+            return null;
+        }
+        long suspectBefore = heartbeatIntervalMs > 0 ? System.currentTimeMillis() - 2 * heartbeatIntervalMs : Long.MIN_VALUE;
+        List<ClientSession> healthy = null;
+        for (int i = 0; i < candidates.size(); i++) {
+            ClientSession candidate = candidates.get(i);
+            boolean usable = candidate != exclude && candidate.getLastSeen() >= suspectBefore;
+            if (!usable && healthy == null) {
+                // 只在确实需要排除时才复制候选列表
+                healthy = new ArrayList<>(candidates.subList(0, i));
+            } else if (usable && healthy != null) {
+                healthy.add(candidate);
+            }
+        }
+        if (healthy != null) {
+            if (!healthy.isEmpty()) {
+                return sessionSelector.select(healthy);
+            }
+            if (exclude != null) {
+                // 重试时没有其他客户端可选
+                return null;
             }
         }
-        return null;
+        return sessionSelector.select(candidates);
+    }
+
+    /**
+     * 一次可重试的调用：当前客户端连接断开（{@link RpcException#CONNECTION_LOST}）时，
+     * 在截止时间内换一个客户端重新调用，总耗时不超过最初的超时
+     * 取消返回的Future会取消正在进行的那次调用
+     */
+    private final class RetryingCall {
+
+        private final CompletableFuture<Object> future = new CompletableFuture<>();
+        // 重试只在同一个会话池（全部客户端或同一分组）内选择
+        private final SessionRegistry pool;
+        private final RpcPriority priority;
+        private final String action;
+        private final boolean rawResult;
+        private final Object[] params;
+        private final long deadlineNanos;
+        private int retries;
+        // 当前这次调用
+        private volatile CompletableFuture<Object> attempt;
+
+        RetryingCall(SessionRegistry pool, RpcPriority priority, String action, long timeoutMs, boolean rawResult,
+                     Object[] params) {
+            this.pool = pool;
+            this.priority = priority;
+            this.action = action;
+            this.rawResult = rawResult;
+            this.params = params;
+            this.deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+            future.whenComplete((result, error) -> {
+                CompletableFuture<Object> current = attempt;
+                if (error instanceof CancellationException && current != null) {
+                    current.cancel(false);
+                }
+            });
+        }
+
+        /**
+         * @param first 已发往 client 的第一次调用
+         */
+        CompletableFuture<Object> start(CompletableFuture<Object> first, ClientSession client) {
+            follow(first, client);
+            return future;
+        }
+
+        private void follow(CompletableFuture<Object> current, ClientSession client) {
+            attempt = current;
+            if (future.isCancelled()) {
+                current.cancel(false);
+                return;
+            }
+            current.whenComplete((result, error) -> {
+                if (error == null) {
+                    future.complete(result);
+                } else if (!retry(error, client)) {
+                    future.completeExceptionally(error);
+                }
+            });
+        }
+
+        private boolean retry(Throwable error, ClientSession failed) {
+            long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime());
+            if (!(error instanceof RpcException) || ((RpcException) error).getStatus() != RpcException.CONNECTION_LOST
+                    || retries >= maxRetries || remainingMs <= 0 || future.isDone()) {
+                return false;
+            }
+            ClientSession next = selectSession(pool, action, failed);
+            if (next == null) {
+                return false;
+            }
+            retries++;
+            metrics.recordRetry(action);
+            log.info("客户端 {} 连接断开，方法 {} 改由客户端 {} 重试（第 {} 次）",
+                    failed.getClientId(), action, next.getClientId(), retries);
+            follow(callClientAsync(next, priority, action, remainingMs, rawResult, params), next);
+            return true;
+        }
     }
 
     /**
      * 获取当前连接的客户端数量
      */
     public int getConnectedClientCount() {
-        int count = connectedClients.size();
-        System.out.println("[DEBUG] getConnectedClientCount() 被调用, 当前连接数: " + count);
-        System.out.println("[DEBUG] 连接的客户端ID: " + connectedClients.keySet());
+        return getConnectedClientCount(null);
+    }
+
+    /**
+     * 获取指定分组的客户端数量
+     * @param group 分组名，为null时返回全部客户端数量
+     */
+    public int getConnectedClientCount(String group) {
+        SessionRegistry pool = sessionGroups.group(group);
+        int count = pool.size();
+        if (log.isDebugEnabled()) {
+            log.debug("分组 {} 当前连接数: {}, 客户端ID: {}", group, count, pool.clientIds());
+        }
         return count;
     }
+
+    /**
+     * 各分组（连接地址上的 ?group= 参数，未指定时为 default）的客户端数量
+     */
+    public Map<String, Integer> getGroups() {
+        return sessionGroups.groupSizes();
+    }
     
+    /**
+     * 调用指标汇总（按方法、阶段、消息大小、客户端）
+     */
+    public Map<String, Object> getStats() {
+        return getStats(null);
+    }
+
+    /**
+     * 指定分组的调用指标：按方法的调用统计和各客户端的统计只包含该分组，阶段耗时、消息大小等为全局统计
+     * @param group 分组名，为null时返回全局汇总
+     */
+    public Map<String, Object> getStats(String group) {
+        SessionRegistry pool = sessionGroups.group(group);
+        Map<String, Object> stats = metrics.snapshot(pool.clients(), group);
+        stats.put("clientCount", pool.size());
+        if (group == null) {
+            stats.put("groups", sessionGroups.groupSizes());
+        } else {
+            int inFlight = 0;
+            for (ClientSession client : pool.clients()) {
+                inFlight += client.getPending().size();
+            }
+            stats.put("group", group);
+            stats.put("inFlight", inFlight);
+        }
+        stats.put("adaptiveTimeoutsMs", adaptiveTimeout.snapshot());
+        if (group == null && replayStore.isEnabled()) {
+            stats.put("replay", replayStore.stats());
+        }
+        return stats;
+    }
+
+    /**
+     * 结果缓存统计
+     */
+    public Map<String, Object> getCacheStats() {
+        Map<String, Object> stats = resultCache.stats();
+        stats.put("clientCacheableActions", connectedClients.cacheableActions());
+        return stats;
+    }
+
+    /**
+     * 清除结果缓存
+     * @param action 方法名，为null时清除全部
+     * @return 清除的条目数
+     */
+    public int invalidateCache(String action) {
+        return resultCache.invalidate(action);
+    }
+
     /**
      * 获取客户端注册的所有方法列表
-     * 通过调用浏览器端的 getRegisteredMethods 方法获取
+     * 优先从客户端上报的方法索引中读取，无需与浏览器往返；
+     * 只有当所有客户端都未上报（旧版rpc.js）时才调用浏览器端的 getRegisteredMethods 方法获取
      * 
      * @return 方法名列表
      * @throws Exception 调用失败时抛出异常
      */
     public List<String> getRegisteredMethods() throws Exception {
-        // 获取第一个可用的客户端会话
-        WebSocketSession session = getFirstAvailableSession();
-        if (session == null) {
-            throw new RuntimeException("没有可用的WebSocket客户端连接");
+        return getRegisteredMethods(null);
+    }
+
+    /**
+     * 获取指定分组的客户端注册的方法列表
+     * @param group 分组名，为null时不限分组
+     */
+    public List<String> getRegisteredMethods(String group) throws Exception {
+        SessionRegistry pool = sessionGroups.group(group);
+        if (!pool.methodNames().isEmpty()) {
+            List<String> methods = new ArrayList<>(pool.methodNames());
+            Collections.sort(methods);
+            return methods;
+        }
+
+        // 获取一个可用的客户端会话
+        ClientSession client = selectSession(pool, null, null);
+        if (client == null) {
+            throw noClient(group);
+        }
+        if (client.getMethods() != null) {
+            // 客户端已上报，只是没有注册任何方法
+            return new ArrayList<>();
         }
         
         // 调用浏览器端的特殊方法获取注册的方法列表
-        Object result = callBrowserMethod(session, "getRegisteredMethods");
+        Object result = awaitResult(callClientAsync(client, RpcPriority.INTERACTIVE, "getRegisteredMethods", 0, false));
         
         // 解析返回结果（假设浏览器返回逗号分隔的方法名字符串）
         if (result instanceof String) {
@@ -133,52 +799,284 @@ public class RpcWebSocketHandler extends TextWebSocketHandler {
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws Exception {
         String clientId = UUID.randomUUID().toString().substring(0, 8);
-        connectedClients.put(clientId, session);
-        System.out.printf("\n[INFO] 客户端 %s 已连接，当前在线: %s%n", clientId, connectedClients.keySet());
-        System.out.printf("[INFO] WebSocket会话信息: remoteAddress=%s, id=%s%n", 
-            session.getRemoteAddress(), session.getId());
+        // 编码由连接地址上的 ?codec= 参数协商（json / cbor），默认JSON；?group= 指定所在分组
+        MultiValueMap<String, String> query = session.getUri() != null
+                ? UriComponentsBuilder.fromUri(session.getUri()).build().getQueryParams()
+                : new LinkedMultiValueMap<>();
+        String group = SessionGroups.groupName(query.getFirst("group"));
+        ConcurrencyLimit limit = ConcurrencyLimits.create(limitProperties);
+        SessionLimiter limiter = limit != null
+                ? new SessionLimiter(limit, limitProperties.getQueueSize(), laneWeights, admissionListener, sendExecutor)
+                : null;
+        ClientSession client = withTransport(new ClientSession(clientId, group, session,
+                codecs.forName(query.getFirst("codec")), limiter));
+        // 客户端状态挂在会话属性上，收到消息时无需查找
+        session.getAttributes().put(ClientSession.ATTRIBUTE, client);
+        sessionGroups.add(client);
+        metrics.bindSession(client);
+        if (log.isInfoEnabled()) {
+            log.info("客户端 {} 已连接，分组: {}，当前在线: {}", clientId, group, connectedClients.clientIds());
+            log.info("WebSocket会话信息: remoteAddress={}, id={}, codec={}",
+                    session.getRemoteAddress(), session.getId(), client.getCodec().getName());
+        }
     }
 
     /**
-     * 处理客户端发送的消息（包括响应）
+     * 处理客户端发送的文本消息（JSON编码的响应等）
      */
     @Override
     protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
-        String clientId = getClientIdBySession(session);
-        String payload = message.getPayload();
+        handleRpcMessage(session, message, codecs.getJson());
+    }
+
+    /**
+     * 处理客户端发送的二进制消息（CBOR编码的响应等，以及两种编码通用的分片帧和gzip帧）
+     */
+    @Override
+    protected void handleBinaryMessage(WebSocketSession session, BinaryMessage message) throws Exception {
+        if (ChunkFrames.isChunk(message.getPayload())) {
+            handleChunk(session, message.getPayload());
+            return;
+        }
+        if (Gzip.isGzip(message.getPayload())) {
+            handleCompressed(session, message.getPayload());
+            return;
+        }
+        handleRpcMessage(session, message, codecs.getCbor());
+    }
+
+    /**
+     * 浏览器自动回复的pong：更新存活时间，载荷是ping的发送时间
+     */
+    @Override
+    protected void handlePongMessage(WebSocketSession session, PongMessage message) {
+        ClientSession client = getClientSession(session);
+        if (client == null) {
+            return;
+        }
+        ByteBuffer payload = message.getPayload();
+        if (payload.remaining() == Long.BYTES) {
+            client.recordPong(System.nanoTime() - payload.getLong(payload.position()));
+        } else {
+            client.markSeen();
+        }
+    }
+
+    /**
+     * 处理单帧的gzip消息：复制到池化的分段缓冲区后与分片重组的消息一样解压、解析
+     */
+    private void handleCompressed(WebSocketSession session, ByteBuffer payload) {
+        long receivedNanos = System.nanoTime();
+        ClientSession client = getClientSession(session);
+        if (client == null) {
+            return;
+        }
+        client.markSeen();
+        SegmentedBuffer message = new SegmentedBuffer(segmentPool);
+        message.write(payload.duplicate());
+        dispatchAssembled(client, message, receivedNanos);
+    }
+
+    /**
+     * 处理分片帧：追加到该传输的重组缓冲区，收到最后一片后按会话编码解析整条消息
+     * 要求原始结果的调用直接接管重组缓冲区，其余调用照常绑定结果，之后缓冲区归还缓冲池
+     */
+    private void handleChunk(WebSocketSession session, ByteBuffer payload) {
+        long receivedNanos = System.nanoTime();
+        ClientSession client = getClientSession(session);
+        if (client == null || client.getChunkAssembler() == null) {
+            return;
+        }
+        client.markSeen();
+        SegmentedBuffer message;
+        try {
+            message = client.getChunkAssembler().accept(ChunkFrames.parse(payload));
+        } catch (IOException | IllegalArgumentException e) {
+            log.warn("[客户端 {}] 丢弃分片消息: {}", client.getClientId(), e.getMessage());
+            return;
+        }
+        if (message == null) {
+            return;
+        }
+        dispatchAssembled(client, message, receivedNanos);
+    }
+
+    /**
+     * 按会话编码解析一条完整消息（gzip压缩的先边解压边解析），message 的所有权转移给本方法
+     * 要求原始结果的调用直接接管缓冲区，其余调用照常绑定结果，之后缓冲区归还缓冲池
+     */
+    private void dispatchAssembled(ClientSession client, SegmentedBuffer message, long receivedNanos) {
+        metrics.recordResponseSize(message.size());
+        ObjectMapper mapper = client.getCodec().getObjectMapper();
+        boolean compressed = Gzip.isGzip(message);
+        RawCapture raw = new RawCapture(message, mapper, compressed);
+        Gzip.DecompressingInputStream decompressed = null;
+        try {
+            InputStream in = message.inputStream();
+            if (compressed) {
+                decompressed = Gzip.decompress(in, maxMessageBytes);
+                in = decompressed;
+            }
+            try (JsonParser parser = mapper.getFactory().createParser(in)) {
+                messageDispatcher.dispatch(client, parser, receivedNanos, raw);
+            }
+        } catch (IOException e) {
+            log.debug("[客户端 {}] 消息解析失败，长度={}: {}", client.getClientId(), message.size(), e.getMessage());
+        } finally {
+            if (decompressed != null) {
+                // 解压与解析交错进行，耗时包含解析
+                metrics.recordCompression(false, decompressed.getBytes(), message.size(), System.nanoTime() - receivedNanos);
+            }
+            if (raw.result == null) {
+                message.release();
+            }
+        }
+    }
+
+    /**
+     * 由要求原始结果的调用接管分片重组后的消息
+     */
+    private static final class RawCapture implements RpcMessageDispatcher.RawSource {
+        final SegmentedBuffer message;
+        final ObjectMapper mapper;
+        final boolean compressed;
+        RawResult result;
+
+        RawCapture(SegmentedBuffer message, ObjectMapper mapper, boolean compressed) {
+            this.message = message;
+            this.mapper = mapper;
+            this.compressed = compressed;
+        }
+
+        @Override
+        public Object capture(JsonToken resultToken) {
+            result = new RawResult(message, mapper, RawResult.kindOf(resultToken), compressed);
+            return result;
+        }
+
+        @Override
+        public void release() {
+            result.release();
+        }
+    }
+
+    /**
+     * 处理客户端发送的消息（包括响应），文本帧按JSON、二进制帧按CBOR解析
+     */
+    private void handleRpcMessage(WebSocketSession session, WebSocketMessage<?> message, RpcCodec codec) {
+        long receivedNanos = System.nanoTime();
+        metrics.recordResponseSize(message.getPayloadLength());
+        ClientSession client = getClientSession(session);
+        String clientId = client != null ? client.getClientId() : null;
+        if (client != null) {
+            client.markSeen();
+        }
         
         // 检查消息大小
-        if (payload.length() > MAX_MESSAGE_SIZE) {
-            System.err.println("[错误] 接收到的消息超过最大大小限制: " + payload.length());
+        if (message.getPayloadLength() > maxFrameBytes) {
+            log.warn("接收到的消息超过最大大小限制: {}", message.getPayloadLength());
             return;
         }
         
-        //System.out.printf("\n[客户端 %s 消息] 原始数据: %s%n", clientId, payload);
+        //System.out.printf("\n[客户端 %s 消息] 原始数据: %s%n", clientId, message.getPayload());
 
-        try {
-            // 尝试解析为响应（优先处理响应）
-            RpcResponse response = objectMapper.readValue(payload, RpcResponse.class);
-            if (response.getCallbackId() != null) {
-                // 唤醒等待该响应的线程
-                Object[] holder = pendingRequests.remove(response.getCallbackId());
-                if (holder != null) {
-                    synchronized (holder) {
-                        holder[0] = response.getResult(); // 存储结果
-                        holder.notify(); // 唤醒等待
-                    }
-                }
+        // 单次流式解析并分发（响应、批量响应、方法注册、客户端请求）
+        try (JsonParser parser = codec.createParser(message)) {
+            messageDispatcher.dispatch(client, parser, receivedNanos);
+        } catch (IOException e) {
+            // 可能是心跳消息或其他非RPC消息，直接忽略
+            log.debug("[客户端 {}] 接收到非RPC消息，长度={}", clientId, message.getPayloadLength());
+        }
+    }
+
+    /**
+     * 分发器回调：消息解析后的处理
+     */
+    private class DispatchCallbacks implements RpcMessageDispatcher.Callbacks {
+
+        @Override
+        public PendingCall takePendingCall(ClientSession client, long callbackId) {
+            return client != null ? client.getPending().take(callbackId) : null;
+        }
+
+        @Override
+        public void onRegister(ClientSession client, List<String> methods, List<String> cacheable, List<String> features) {
+            if (client == null) {
                 return;
             }
-        } catch (Exception e) {
-            // 不是响应格式，可能是客户端主动发送的请求
-            try {
-                RpcRequest request = objectMapper.readValue(payload, RpcRequest.class);
-                System.out.printf("[客户端 %s 请求] 方法=%s, 参数数量=%d, ID=%s%n",
-                        clientId, request.getAction(), request.getParams().size(), request.getId());
-            } catch (Exception ex) {
-                // 可能是心跳消息或其他非RPC消息，直接忽略
-                System.out.printf("[客户端 %s] 接收到非RPC消息，长度=%d%n", clientId, payload.length());
-                return;
+            client.setFeatures(features == null || features.isEmpty()
+                    ? Collections.<String>emptySet()
+                    : Collections.unmodifiableSet(new HashSet<>(features)));
+            sessionGroups.updateMethods(client, methods, cacheable);
+            log.info("[客户端 {} 注册] 方法: {}, 可缓存: {}, 特性: {}", client.getClientId(), methods, cacheable, features);
+        }
+
+        @Override
+        public void onClientRequest(ClientSession client, String id, String action, int paramCount) {
+            if (log.isDebugEnabled()) {
+                log.debug("[客户端 {} 请求] 方法={}, 参数数量={}, ID={}",
+                        client != null ? client.getClientId() : null, action, paramCount, id);
+            }
+        }
+
+        @Override
+        public void onUnknownMessage(ClientSession client) {
+            if (log.isDebugEnabled()) {
+                log.debug("[客户端 {}] 接收到非RPC消息", client != null ? client.getClientId() : null);
+            }
+        }
+    }
+
+    /**
+     * 调用结束回调：清理超时或取消的等待项并通知浏览器，记录分阶段耗时和客户端调用统计
+     */
+    private class CallListener implements PendingCall.PendingCallListener {
+
+        @Override
+        public boolean detach(PendingCall call) {
+            return call.client.getPending().remove(call);
+        }
+
+        @Override
+        public void onAbandoned(PendingCall call) {
+            // 已发给浏览器的调用通知其放弃执行，迟到的结果也不再回传
+            if (call.sentNanos != 0 && call.client.getOutbound() != null && call.client.isOpen()) {
+                sendCancel(call);
+            }
+        }
+
+        @Override
+        public void onFinished(PendingCall call, Throwable cause) {
+            long sent = call.sentNanos;
+            long received = call.receivedNanos;
+            if (cause == null) {
+                metrics.recordActionRtt(call.action, System.nanoTime() - call.startNanos);
+            }
+            SessionLimiter limiter = call.client.getLimiter();
+            if (limiter != null) {
+                // 浏览器返回的错误也是一次正常往返，只有超时和发送失败算过载
+                boolean dropped = cause instanceof RpcException
+                        ? ((RpcException) cause).getStatus() == RpcException.TIMEOUT
+                        : cause != null && !(cause instanceof CancellationException);
+                long now = System.nanoTime();
+                limiter.release(call, sent == 0 ? 0 : (received != 0 ? received : now) - sent, dropped);
+            }
+            if (cause == null && call.execNanos != 0) {
+                metrics.recordPhase(RpcMetrics.Phase.EXEC, call.execNanos);
+                metrics.recordActionExec(call.action, call.execNanos);
+            }
+            if (sent != 0 && received != 0) {
+                metrics.recordPhase(RpcMetrics.Phase.BROWSER, received - sent);
+                metrics.recordPhase(RpcMetrics.Phase.PARSE, System.nanoTime() - received);
+            }
+            if (call.client.getClientId() != null) {
+                metrics.recordSessionCall(call.client, RpcMetrics.Outcome.of(cause));
+            }
+            if (call.traced) {
+                traceLog.debug("[调用结束] 客户端: {}, 方法: {}, 请求ID: {}, 结果: {}, 浏览器往返: {} us",
+                        call.client.getClientId(), call.action, call.id,
+                        cause == null ? "success" : cause.getMessage(),
+                        sent != 0 && received != 0 ? (received - sent) / 1000 : -1);
             }
         }
     }
@@ -188,11 +1086,24 @@ public class RpcWebSocketHandler extends TextWebSocketHandler {
      */
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
-        String clientId = getClientIdBySession(session);
+        ClientSession client = getClientSession(session);
+        String clientId = client != null ? client.getClientId() : null;
+        if (client != null && client.getChunkAssembler() != null) {
+            // 归还未完成传输的重组缓冲区
+            client.getChunkAssembler().close();
+        }
         if (clientId != null) {
-            connectedClients.remove(clientId);
-            System.out.printf("\n客户端 %s 已断开连接，当前在线: %s%n", clientId, connectedClients.keySet());
-            System.out.printf("关闭状态: %s, 代码: %d%n", status.getReason(), status.getCode());
+            sessionGroups.remove(clientId);
+            // 不等超时，立即结束该会话上的全部在途调用
+            failPendingCalls(client);
+            metrics.unbindSession(clientId);
+            if (log.isInfoEnabled()) {
+                log.info("客户端 {} 已断开连接，当前在线: {}，关闭状态: {}, 代码: {}",
+                        clientId, connectedClients.clientIds(), status.getReason(), status.getCode());
+            }
+        } else if (client != null) {
+            // 未登记的会话上发出的调用
+            failPendingCalls(client);
         }
     }
     
@@ -202,81 +1113,504 @@ public class RpcWebSocketHandler extends TextWebSocketHandler {
     @Override
     public void handleTransportError(WebSocketSession session, Throwable exception) throws Exception {
         String clientId = getClientIdBySession(session);
-        System.err.printf("客户端 %s 传输错误: %s%n", clientId, exception.getMessage());
+        log.warn("客户端 {} 传输错误: {}", clientId, exception.getMessage());
         super.handleTransportError(session, exception);
     }
 
     /**
-     * 调用浏览器方法并返回结果（移除TimeUnit依赖）
+     * 调用浏览器方法并返回结果（阻塞等待，基于 {@link #callBrowserMethodAsync} 实现）
      * 修改为public，允许外部通过invokeRemoteMethod间接调用
      */
     public Object callBrowserMethod(WebSocketSession session, String action, Object... params) throws Exception {
-        String requestId = UUID.randomUUID().toString().substring(0, 10);
+        return awaitResult(callBrowserMethodAsync(session, action, params));
+    }
 
-        // 构建请求
-        RpcRequest request = new RpcRequest();
-        request.setId(requestId);
-        request.setAction(action);
-        request.setParams(Arrays.asList(params)); // 兼容Java 8的集合操作
+    /**
+     * 异步调用浏览器方法
+     * 请求发送后立即返回，响应到达时由消息线程完成Future，超时由时间轮统一处理
+     */
+    public CompletableFuture<Object> callBrowserMethodAsync(WebSocketSession session, String action, Object... params) {
+        ClientSession client = getClientSession(session);
+        if (client == null) {
+            client = unregisteredClient(session);
+        }
+        return metrics.track(action, callClientAsync(client, RpcPriority.NORMAL, action, 0, false, params));
+    }
 
-        // 发送请求
-        String requestJson = objectMapper.writeValueAsString(request);
-        
-        // 检查请求大小
-        if (requestJson.length() > MAX_MESSAGE_SIZE) {
-            return "错误: 请求数据过大: " + requestJson.length() + " 字节";
+    /**
+     * 未登记的会话（没有经过 {@link #afterConnectionEstablished}）只创建一次客户端状态并挂在会话属性上，
+     * 同一会话上的调用共用等待响应表和发送队列，响应到达时按会话属性取出对应的调用；不参与负载均衡统计
+     */
+    private ClientSession unregisteredClient(WebSocketSession session) {
+        synchronized (session) {
+            ClientSession client = getClientSession(session);
+            if (client == null) {
+                client = withTransport(new ClientSession(null, session, codecs.getJson()));
+                session.getAttributes().put(ClientSession.ATTRIBUTE, client);
+            }
+            return client;
         }
-        
-        session.sendMessage(new TextMessage(requestJson));
-        System.out.printf("[发送请求] 方法: %s, 参数数量: %d, 请求ID: %s, 请求大小: %d 字节%n",
-                action, params.length, requestId, requestJson.length());
+    }
 
-        // 初始化结果容器并等待响应
-        Object[] resultHolder = new Object[1]; // 用数组存储结果（可修改）
-        pendingRequests.put(requestId, resultHolder);
+    /**
+     * 向指定客户端发送请求，并维护其在途请求数和往返延迟
+     * 参数估算超过分片大小、且客户端支持分片帧时，请求直接流式编码成分片帧发送，不先序列化成完整的字符串
+     * @param priority 在会话等待队列和发送队列中的优先级通道
+     * @param timeoutMs 超时（毫秒），小于等于0时使用默认超时
+     * @param rawResult 分片回传的大结果是否以 {@link RawResult} 交付
+     */
+    private CompletableFuture<Object> callClientAsync(ClientSession client, RpcPriority priority, String action,
+                                                      long timeoutMs, boolean rawResult, Object... params) {
+        long requestId = client.getPending().nextId();
 
-        synchronized (resultHolder) {
+        long estimatedSize = estimateSize(params);
+        boolean chunked = client.supportsChunked() && estimatedSize > chunkBytes;
+        if (estimatedSize > (chunked ? maxMessageBytes : maxFrameBytes)) {
+            return failedFuture(new RpcException(RpcException.PAYLOAD_TOO_LARGE,
+                    "请求数据过大: 约 " + estimatedSize + " 字节"));
+        }
+        EncodedRequest encoded = null;
+        if (!chunked) {
             try {
-                // 设置合理的超时时间
-                long timeout = 30000; // 30秒超时
-                
-                // 如果参数中包含大量数据，适当增加超时时间
-                for (Object param : params) {
-                    if (param instanceof String) {
-                        String strParam = (String) param;
-                        // 如果字符串长度超过10KB，增加超时时间
-                        if (strParam.length() > 10000) {
-                            timeout = 60000; // 60秒超时
-                            break;
-                        }
-                    }
+                encoded = encodeRequest(client.getCodec(), requestId, action, params);
+            } catch (Exception e) {
+                return failedFuture(e);
+            }
+            // 检查请求大小，超过单帧上限时只能分片发送
+            if (encoded.size() > maxFrameBytes) {
+                if (!client.supportsChunked()) {
+                    return failedFuture(new RpcException(RpcException.PAYLOAD_TOO_LARGE,
+                            "请求数据过大: " + encoded.size() + " 字节（客户端不支持分片传输）"));
                 }
-                
-                resultHolder.wait(timeout);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                return "请求被中断";
+                chunked = true;
             }
         }
+        RpcRequest request = chunked && encoded == null ? newRequest(requestId, action, params) : null;
+        // 超过阈值的请求gzip后发送（浏览器需支持解压）
+        boolean compressed = compressionEnabled && client.supportsGzip()
+                && (encoded != null ? encoded.size() : estimatedSize) > compressionThreshold;
 
-        // 处理结果
-        if (resultHolder[0] != null) {
-            return resultHolder[0];
+        // 先登记再发送，避免响应先于登记到达
+        PendingCall call = registerCall(requestId, action, client,
+                timeoutMs > 0 ? timeoutMs : adaptiveTimeout.timeoutMs(action, params));
+        call.rawResult = rawResult;
+        call.priority = priority;
+
+        EncodedRequest frame = encoded;
+        Runnable send;
+        if (chunked) {
+            send = () -> sendChunked(client, call, request, frame, compressed);
+        } else if (compressed) {
+            send = () -> sendCompressed(client, call, frame);
         } else {
-            pendingRequests.remove(requestId); // 清理超时请求
-            return "超时: 未收到响应";
+            send = () -> sendCall(client, call, frame);
         }
+        SessionLimiter limiter = client.getLimiter();
+        if (limiter != null) {
+            switch (limiter.acquire(call, send)) {
+                case QUEUED:
+                    return call.future;
+                case REJECTED:
+                    client.getPending().remove(call);
+                    call.fail(new RpcException(RpcException.TOO_MANY_REQUESTS,
+                            "客户端 " + client.getClientId() + " 繁忙: 在途请求和等待队列已满"));
+                    return call.future;
+                default:
+                    metrics.recordLaneWait(priority, 0);
+                    break;
+            }
+        }
+        send.run();
+        return call.future;
     }
 
     /**
-     * 根据会话获取客户端ID
+     * 发送一个已登记（且已通过准入）的调用
      */
-    private String getClientIdBySession(WebSocketSession session) {
-        for (Map.Entry<String, WebSocketSession> entry : connectedClients.entrySet()) {
-            if (entry.getValue().equals(session)) {
-                return entry.getKey();
+    private void sendCall(ClientSession client, PendingCall call, EncodedRequest encoded) {
+        if (call.future.isDone()) {
+            // 排队期间已超时
+            return;
+        }
+        if (batchLingerMs > 0 && client.getClientId() != null && call.priority != RpcPriority.INTERACTIVE
+                && client.supportsBatch()) {
+            // 合并窗口内的并发调用攒成一个批量帧发送，交互调用不等待合并窗口
+            LingerBuffer buffer = client.getLingerBuffer();
+            boolean first = buffer.add(call, encoded);
+            if (buffer.isFull(maxBatchSize, maxFrameBytes / 2)) {
+                flushLingerBuffer(client);
+            } else if (first) {
+                lingerExecutor.schedule(() -> flushLingerBuffer(client), batchLingerMs, TimeUnit.MILLISECONDS);
             }
+            return;
+        }
+        client.getOutbound().send(Collections.singletonList(encoded), Collections.singletonList(call), false);
+    }
+
+    /**
+     * gzip后以单个二进制帧发送一个已登记（且已通过准入）的调用，不参与合并
+     * 压缩后放不进单帧时改为分片发送，几乎不可压缩的数据按原样发送
+     */
+    private void sendCompressed(ClientSession client, PendingCall call, EncodedRequest encoded) {
+        if (call.future.isDone()) {
+            // 排队期间已超时
+            return;
+        }
+        long start = System.nanoTime();
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(Math.max(512, encoded.size() / 4));
+        try (Gzip.CompressingOutputStream out = Gzip.compress(buffer, compressionLevel)) {
+            writeEncoded(out, encoded);
+            out.finish();
+            metrics.recordCompression(true, out.getRawBytes(), out.getCompressedBytes(), System.nanoTime() - start);
+        } catch (IOException e) {
+            // 写内存缓冲区不会失败
+            throw new IllegalStateException(e);
+        }
+        if (buffer.size() >= encoded.size()) {
+            sendCall(client, call, encoded);
+            return;
+        }
+        if (buffer.size() > maxFrameBytes && client.supportsChunked()) {
+            sendChunked(client, call, null, encoded, true);
+            return;
+        }
+        BinaryMessage frame = new BinaryMessage(buffer.toByteArray());
+        if (!client.getOutbound().sendMessage(frame, call, null) && !call.future.isDone()) {
+            call.client.getPending().remove(call);
+            call.fail(new RpcException(RpcException.TOO_MANY_REQUESTS,
+                    "客户端 " + client.getClientId() + " 繁忙: 发送缓冲区已满"));
+        }
+    }
+
+    /**
+     * 以分片帧发送一个已登记（且已通过准入）的调用
+     * 序列化器直接写入池化的帧缓冲区，每写满一片入队一次，与其他调用的帧交错写出，写出后缓冲区归还缓冲池
+     * @param request 未编码的请求，为null时发送已编码的 encoded
+     * @param compressed 是否先gzip再分片（分片内容为压缩后的字节）
+     */
+    private void sendChunked(ClientSession client, PendingCall call, RpcRequest request, EncodedRequest encoded,
+                             boolean compressed) {
+        if (call.future.isDone()) {
+            // 排队期间已超时
+            return;
         }
-        return null;
+        OutboundQueue outbound = client.getOutbound();
+        ChunkOutputStream out = new ChunkOutputStream(call.wireId(), chunkFramePool, maxMessageBytes, (buffer, length, last) -> {
+            if (call.future.isDone()) {
+                chunkFramePool.release(buffer);
+                throw new IOException("调用已结束");
+            }
+            BinaryMessage frame = new BinaryMessage(ByteBuffer.wrap(buffer, 0, length));
+            if (!outbound.sendMessage(frame, call, () -> chunkFramePool.release(buffer))) {
+                chunkFramePool.release(buffer);
+                throw new RpcException(RpcException.TOO_MANY_REQUESTS,
+                        "客户端 " + client.getClientId() + " 繁忙: 发送缓冲区已满，分片发送中止");
+            }
+        });
+        long start = System.nanoTime();
+        Gzip.CompressingOutputStream gzip = null;
+        try {
+            OutputStream target = out;
+            if (compressed) {
+                gzip = Gzip.compress(out, compressionLevel);
+                target = gzip;
+            }
+            if (request != null) {
+                client.getCodec().getObjectMapper().writer()
+                        .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                        .writeValue(target, request);
+            } else {
+                writeEncoded(target, encoded);
+            }
+            // 关闭gzip流时写出gzip尾并关闭分片流
+            target.close();
+        } catch (Exception e) {
+            if (gzip != null) {
+                gzip.discard();
+            }
+            out.abort();
+            call.client.getPending().remove(call);
+            call.fail(e instanceof ChunkOutputStream.MessageTooLargeException
+                    ? new RpcException(RpcException.PAYLOAD_TOO_LARGE, "请求数据过大: " + e.getMessage())
+                    : e);
+            // 已发出的分片由浏览器在收到取消通知后丢弃
+            if (out.getFrameCount() > 0 && client.isOpen()) {
+                sendCancel(call);
+            }
+            return;
+        }
+        metrics.recordRequestSize(out.getTotalBytes());
+        if (gzip != null) {
+            // 边序列化边压缩边发送，耗时包含序列化和等待发送缓冲区
+            metrics.recordCompression(true, gzip.getRawBytes(), gzip.getCompressedBytes(), System.nanoTime() - start);
+        }
+        if (call.traced) {
+            traceLog.debug("[分片发送] 客户端: {}, 方法: {}, 请求ID: {}, 分片数: {}, 大小: {} 字节",
+                    client.getClientId(), call.action, call.id, out.getFrameCount(), out.getTotalBytes());
+        }
+    }
+
+    /**
+     * 写出已编码的请求（JSON按UTF-8）
+     */
+    private static void writeEncoded(OutputStream out, EncodedRequest encoded) throws IOException {
+        if (encoded.getText() != null) {
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            writer.write(encoded.getText());
+            writer.flush();
+        } else {
+            out.write(encoded.getBytes());
+        }
+    }
+
+    /**
+     * 参数中字符串和字节数组的总长度，用于在序列化之前判断是否分片发送
+     */
+    private static long estimateSize(Object[] params) {
+        long size = 0;
+        for (Object param : params) {
+            if (param instanceof CharSequence) {
+                size += ((CharSequence) param).length();
+            } else if (param instanceof byte[]) {
+                size += ((byte[]) param).length;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * 把一批调用打包成数组帧发送给指定客户端，超过消息大小上限时拆成多个帧
+     * 批量帧不经过准入排队，但计入会话的在途请求，之后的单个调用会等批量完成后再发送
+     */
+    private List<CompletableFuture<Object>> callClientBatchAsync(ClientSession client, String action, List<Object[]> paramsList) {
+        RpcCodec codec = client.getCodec();
+        List<CompletableFuture<Object>> futures = new ArrayList<>(paramsList.size());
+        List<PendingCall> frameCalls = new ArrayList<>();
+        List<EncodedRequest> frameRequests = new ArrayList<>();
+        int frameSize = 0;
+        for (Object[] params : paramsList) {
+            long requestId = client.getPending().nextId();
+            EncodedRequest encoded;
+            try {
+                encoded = encodeRequest(codec, requestId, action, params);
+            } catch (Exception e) {
+                futures.add(failedFuture(e));
+                continue;
+            }
+            if (encoded.size() + codec.frameOverhead(1) > maxFrameBytes) {
+                if (!client.supportsChunked()) {
+                    futures.add(failedFuture(new RpcException(RpcException.PAYLOAD_TOO_LARGE,
+                            "请求数据过大: " + encoded.size() + " 字节")));
+                    continue;
+                }
+                // 放不进单帧的调用单独分片发送
+                PendingCall call = registerCall(requestId, action, client, adaptiveTimeout.fixedTimeoutMs(params));
+                if (client.getLimiter() != null) {
+                    client.getLimiter().forceAcquire(call);
+                }
+                sendChunked(client, call, null, encoded, compressionEnabled && client.supportsGzip());
+                futures.add(call.future);
+                continue;
+            }
+            if (frameSize + encoded.size() + codec.frameOverhead(frameRequests.size() + 1) > maxFrameBytes) {
+                sendFrame(client, frameRequests, frameCalls, true);
+                frameCalls = new ArrayList<>();
+                frameRequests = new ArrayList<>();
+                frameSize = 0;
+            }
+            PendingCall call = registerCall(requestId, action, client, adaptiveTimeout.fixedTimeoutMs(params));
+            if (client.getLimiter() != null) {
+                client.getLimiter().forceAcquire(call);
+            }
+            frameRequests.add(encoded);
+            frameCalls.add(call);
+            frameSize += encoded.size();
+            futures.add(call.future);
+        }
+        sendFrame(client, frameRequests, frameCalls, true);
+        return futures;
+    }
+
+    /**
+     * 发送合并窗口内攒下的请求
+     */
+    private void flushLingerBuffer(ClientSession client) {
+        LingerBuffer.Batch batch = client.getLingerBuffer().drain();
+        if (batch == null) {
+            return;
+        }
+        // 只有一个请求时按普通格式发送，兼容旧版rpc.js
+        sendFrame(client, batch.requests, batch.calls, batch.calls.size() > 1);
+    }
+
+    /**
+     * 通知浏览器取消调用：{"type": "cancel", "id": 请求ID}
+     */
+    private void sendCancel(PendingCall call) {
+        RpcRequest cancel = new RpcRequest();
+        cancel.setId(call.wireId());
+        cancel.setType("cancel");
+        EncodedRequest encoded;
+        try {
+            encoded = call.client.getCodec().encode(cancel);
+        } catch (IOException e) {
+            log.debug("编码取消消息失败: {}", e.getMessage());
+            return;
+        }
+        // 控制消息没有对应的等待调用
+        call.client.getOutbound().send(Collections.singletonList(encoded), Collections.singletonList(null), false);
+    }
+
+    /**
+     * 通过客户端的发送队列发送一个帧
+     */
+    private void sendFrame(ClientSession client, List<EncodedRequest> requests, List<PendingCall> calls, boolean asArray) {
+        if (calls.isEmpty()) {
+            return;
+        }
+        client.getOutbound().send(requests, calls, asArray);
+    }
+
+    /**
+     * 为客户端创建发送队列和分片重组器
+     */
+    private ClientSession withTransport(ClientSession client) {
+        client.setOutbound(new OutboundQueue(client, outboundListener, sendBufferSizeLimit, sendTimeLimitNanos,
+                sendCoalesce ? maxBatchSize : 1, maxFrameBytes / 2, sendExecutor));
+        client.setChunkAssembler(new ChunkAssembler(segmentPool, maxMessageBytes, maxTransfers));
+        return client;
+    }
+
+    /**
+     * 发送队列回调：记录发送耗时，发送失败时结束帧内的全部调用
+     */
+    private class OutboundListener implements OutboundQueue.Listener {
+
+        @Override
+        public void onSent(ClientSession client, List<PendingCall> calls, long enqueuedNanos, int frameBytes) {
+            long sent = System.nanoTime();
+            if (calls.size() == 1 && calls.get(0) == null) {
+                // 取消、ping等控制消息
+                return;
+            }
+            // 包含在发送队列中等待的时间
+            metrics.recordPhase(RpcMetrics.Phase.SEND, sent - enqueuedNanos);
+            for (PendingCall call : calls) {
+                if (call == null) {
+                    continue;
+                }
+                call.sentNanos = sent;
+                if (call.traced) {
+                    traceLog.debug("[发送请求] 客户端: {}, 方法: {}, 请求ID: {}, 帧内调用数: {}, 帧大小: {} 字节",
+                            client.getClientId(), call.action, call.id, calls.size(), frameBytes);
+                }
+            }
+            if (calls.size() > 1 && log.isDebugEnabled()) {
+                log.debug("[发送批量请求] 客户端: {}, 调用数: {}, 帧大小: {} 字节",
+                        client.getClientId(), calls.size(), frameBytes);
+            }
+        }
+
+        @Override
+        public void onFailed(List<PendingCall> calls, Exception cause) {
+            for (PendingCall call : calls) {
+                if (call == null) {
+                    continue;
+                }
+                call.client.getPending().remove(call);
+                // 连接已断开导致的写入失败按连接断开处理，幂等调用可以重试
+                if (!(cause instanceof RpcException) && (cause instanceof IOException || !call.client.isOpen())) {
+                    RpcException lost = connectionLost(call.client);
+                    lost.initCause(cause);
+                    call.fail(lost);
+                } else {
+                    call.fail(cause);
+                }
+            }
+        }
+
+        @Override
+        public void onStalled(ClientSession client, long writeNanos) {
+            log.warn("客户端 {} 单帧写入已超过 {} ms，关闭连接", client.getClientId(), writeNanos / 1_000_000);
+            try {
+                client.getSession().close(CloseStatus.SESSION_NOT_RELIABLE);
+            } catch (Exception e) {
+                log.debug("关闭客户端 {} 失败: {}", client.getClientId(), e.getMessage());
+            }
+        }
+    }
+
+    private EncodedRequest encodeRequest(RpcCodec codec, long requestId, String action, Object[] params) throws Exception {
+        RpcRequest request = newRequest(requestId, action, params);
+        long start = System.nanoTime();
+        EncodedRequest encoded = codec.encode(request);
+        metrics.recordPhase(RpcMetrics.Phase.SERIALIZE, System.nanoTime() - start);
+        metrics.recordRequestSize(encoded.size());
+        return encoded;
+    }
+
+    private static RpcRequest newRequest(long requestId, String action, Object[] params) {
+        // 构建请求
+        RpcRequest request = new RpcRequest();
+        request.setId(Long.toString(requestId));
+        request.setAction(action);
+        request.setParams(Arrays.asList(params)); // 兼容Java 8的集合操作
+        return request;
+    }
+
+    /**
+     * 登记等待响应的调用并开始计时
+     */
+    private PendingCall registerCall(long requestId, String action, ClientSession client, long timeoutMs) {
+        PendingCall call = new PendingCall(requestId, action, client, timeoutListener);
+        // 只在跟踪日志开启时抽样，关闭时不产生任何开销
+        call.traced = traceSampleRate > 0 && traceLog.isDebugEnabled()
+                && (traceSampleRate >= 1 || ThreadLocalRandom.current().nextDouble() < traceSampleRate);
+        client.getPending().put(call);
+        timeoutWheel.schedule(call, timeoutMs, TimeUnit.MILLISECONDS);
+        return call;
+    }
+
+    /**
+     * 阻塞等待异步调用结果，超时和数据过大沿用原有的字符串返回值
+     * 客户端繁忙（429）以 {@link RpcException} 抛出，调用方可以据此退避重试
+     */
+    private Object awaitResult(CompletableFuture<Object> future) throws Exception {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "请求被中断";
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RpcException && ((RpcException) cause).toResultMessage() != null) {
+                return ((RpcException) cause).toResultMessage();
+            }
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+
+    private static <T> CompletableFuture<T> failedFuture(Throwable cause) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(cause);
+        return future;
+    }
+
+    /**
+     * 根据会话获取客户端状态（保存在会话属性中，O(1)）
+     */
+    private static ClientSession getClientSession(WebSocketSession session) {
+        return (ClientSession) session.getAttributes().get(ClientSession.ATTRIBUTE);
+    }
+
+    /**
+     * 根据会话获取客户端ID
+     */
+    private String getClientIdBySession(WebSocketSession session) {
+        ClientSession client = getClientSession(session);
+        return client != null ? client.getClientId() : null;
     }
 }
\ No newline at end of file
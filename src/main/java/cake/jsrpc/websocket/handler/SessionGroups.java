@@ -0,0 +1,117 @@
+package cake.jsrpc.websocket.handler;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按连接地址上的 ?group= 参数分组的客户端会话
+ * 每个分组是独立的分片：有自己的会话池和方法索引，指定分组的调用只路由到该分组的客户端，
+ * 一个目标站点的客户端变慢或被打满不会影响其他分组；不指定分组的调用仍按全部客户端路由（兼容旧用法）
+ * 连接、断开、注册在同一把锁内同时更新全部客户端和所在分组的索引，选择路径与 {@link SessionRegistry} 一样无锁
+ */
+class SessionGroups {
+
+    // 连接地址未带 group 参数的客户端所在的分组
+    static final String DEFAULT_GROUP = "default";
+    // 分组名长度上限，超过时归入默认分组
+    private static final int MAX_GROUP_LENGTH = 64;
+    // 不存在的分组，不会有客户端加入
+    private static final SessionRegistry EMPTY = new SessionRegistry();
+
+    private final SessionRegistry all = new SessionRegistry();
+    // 分组名 -> 分组内的客户端，分组的最后一个客户端断开时移除
+    private final Map<String, SessionRegistry> groups = new ConcurrentHashMap<>();
+
+    /**
+     * 连接地址上的分组参数规范化为分组名
+     */
+    static String groupName(String group) {
+        if (group == null || group.isEmpty() || group.length() > MAX_GROUP_LENGTH) {
+            return DEFAULT_GROUP;
+        }
+        return group;
+    }
+
+    synchronized void add(ClientSession client) {
+        all.add(client);
+        groups.computeIfAbsent(client.getGroup(), g -> new SessionRegistry()).add(client);
+    }
+
+    /**
+     * @return 被移除的客户端，已移除过时返回null
+     */
+    synchronized ClientSession remove(String clientId) {
+        ClientSession client = all.remove(clientId);
+        if (client == null) {
+            return null;
+        }
+        SessionRegistry group = groups.get(client.getGroup());
+        if (group != null) {
+            group.remove(clientId);
+            if (group.isEmpty()) {
+                groups.remove(client.getGroup());
+            }
+        }
+        return client;
+    }
+
+    /**
+     * 更新客户端上报的方法列表
+     * @param cacheable 客户端声明为可缓存的方法，可以为null
+     */
+    synchronized void updateMethods(ClientSession client, Collection<String> methods, Collection<String> cacheable) {
+        if (all.get(client.getClientId()) != client) {
+            return;
+        }
+        Set<String> previous = client.getMethods();
+        client.setMethods(Collections.unmodifiableSet(new HashSet<>(methods)));
+        Set<String> updatedCacheable = cacheable == null || cacheable.isEmpty()
+                ? Collections.<String>emptySet()
+                : Collections.unmodifiableSet(new HashSet<>(cacheable));
+        boolean cacheableChanged = !updatedCacheable.equals(client.getCacheable());
+        if (cacheableChanged) {
+            client.setCacheable(updatedCacheable);
+        }
+        all.reindex(client, previous, cacheableChanged);
+        SessionRegistry group = groups.get(client.getGroup());
+        if (group != null) {
+            group.reindex(client, previous, cacheableChanged);
+        }
+    }
+
+    /**
+     * 全部客户端
+     */
+    SessionRegistry all() {
+        return all;
+    }
+
+    /**
+     * 指定分组的客户端
+     * @param group 分组名，为null时返回全部客户端；分组不存在时返回空的会话池
+     */
+    SessionRegistry group(String group) {
+        if (group == null) {
+            return all;
+        }
+        return groups.getOrDefault(group, EMPTY);
+    }
+
+    /**
+     * 分组当前是否有客户端
+     */
+    boolean contains(String group) {
+        return groups.containsKey(group);
+    }
+
+    /**
+     * 各分组的客户端数
+     */
+    Map<String, Integer> groupSizes() {
+        Map<String, Integer> sizes = new TreeMap<>();
+        for (Map.Entry<String, SessionRegistry> entry : groups.entrySet()) {
+            sizes.put(entry.getKey(), entry.getValue().size());
+        }
+        return sizes;
+    }
+}
@@ -0,0 +1,215 @@
+package cake.jsrpc.websocket.handler;
+
+import cake.jsrpc.websocket.limit.ConcurrencyLimit;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 单个浏览器会话的准入控制
+ * 在途请求数低于上限时直接发送，否则按调用的优先级进入对应通道的有界等待队列，队列也满时拒绝；
+ * 调用结束时用往返时间更新上限，并按新的上限放行排队的请求
+ * 浏览器页面是单线程执行的，请求堆积只会让后面的调用一起超时，提前排队或拒绝可以保护页面和调用方
+ * 多个通道都有排队时按权重平滑轮转（smooth weighted round-robin）放行：权重越大放行越多，
+ * 但每个非空通道在一轮（权重之和次放行）内至少放行一次，批量通道再拥挤也不会饿死；各通道的队列长度单独限制，
+ * 批量调用排满自己的队列只会让批量调用被拒绝
+ */
+class SessionLimiter {
+
+    /**
+     * 准入结果
+     */
+    enum Admission {
+        // 立即发送
+        ADMITTED,
+        // 进入等待队列，轮到时在发送执行器上发送
+        QUEUED,
+        // 在途和队列都已满
+        REJECTED
+    }
+
+    /**
+     * 排队的调用被放行时的回调（在锁外、提交发送之前执行）
+     */
+    interface AdmissionListener {
+        /**
+         * @param waitNanos 在等待队列中的时间
+         */
+        void onAdmitted(PendingCall call, long waitNanos);
+    }
+
+    private static final RpcPriority[] LANES = RpcPriority.values();
+
+    private final ConcurrencyLimit limit;
+    // 每个通道的等待队列长度上限
+    private final int maxQueue;
+    // 各通道的权重，按 RpcPriority 顺序
+    private final int[] weights;
+    private final AdmissionListener listener;
+    // 放行的调用在这里发送：结束调用的线程可能是超时线程或WebSocket接收线程，不能在上面压缩、分片和写socket
+    private final Executor sendExecutor;
+    // 以下字段由this保护
+    @SuppressWarnings("unchecked")
+    private final ArrayDeque<Waiter>[] lanes = new ArrayDeque[LANES.length];
+    // 平滑加权轮转的当前积分
+    private final int[] credits = new int[LANES.length];
+    private int queued;
+    private int active;
+
+    /**
+     * @param maxQueue 每个通道的等待队列长度
+     * @param weights 各通道的权重（按 {@link RpcPriority} 顺序），小于1的按1处理
+     * @param listener 排队的调用被放行时的回调，可以为null
+     * @param sendExecutor 放行的调用的发送执行器
+     */
+    SessionLimiter(ConcurrencyLimit limit, int maxQueue, int[] weights, AdmissionListener listener,
+                   Executor sendExecutor) {
+        this.limit = limit;
+        this.maxQueue = Math.max(0, maxQueue);
+        this.weights = new int[LANES.length];
+        for (int i = 0; i < LANES.length; i++) {
+            this.weights[i] = Math.max(1, weights[i]);
+            lanes[i] = new ArrayDeque<>();
+        }
+        this.listener = listener;
+        this.sendExecutor = sendExecutor;
+    }
+
+    /**
+     * 申请发送一个调用
+     * @param send 排队的调用轮到时执行的发送动作
+     */
+    synchronized Admission acquire(PendingCall call, Runnable send) {
+        if (queued == 0 && active < limit.getLimit()) {
+            active++;
+            call.admitted = true;
+            return Admission.ADMITTED;
+        }
+        ArrayDeque<Waiter> lane = lanes[call.priority.ordinal()];
+        if (lane.size() >= maxQueue) {
+            return Admission.REJECTED;
+        }
+        lane.addLast(new Waiter(call, send));
+        queued++;
+        return Admission.QUEUED;
+    }
+
+    /**
+     * 不经排队直接计入在途（批量帧整体发送，不能拆开排队），
+     * 超出上限的部分会让后续的单个调用排队等待
+     */
+    synchronized void forceAcquire(PendingCall call) {
+        active++;
+        call.admitted = true;
+    }
+
+    /**
+     * 调用结束（成功、失败、超时或被拒绝）
+     * 已发送的调用释放名额并作为上限算法的样本，仍在排队的调用直接移出队列
+     * @param rttNanos 往返时间
+     * @param dropped 是否超时或发送失败
+     */
+    void release(PendingCall call, long rttNanos, boolean dropped) {
+        List<Waiter> ready = null;
+        synchronized (this) {
+            if (call.admitted) {
+                limit.onSample(rttNanos, active, dropped);
+                active--;
+            } else if (lanes[call.priority.ordinal()].removeIf(waiter -> waiter.call == call)) {
+                queued--;
+            }
+            int current = limit.getLimit();
+            Waiter waiter;
+            while (active < current && (waiter = next()) != null) {
+                active++;
+                waiter.call.admitted = true;
+                if (ready == null) {
+                    ready = new ArrayList<>();
+                }
+                ready.add(waiter);
+            }
+        }
+        // 在锁外提交发送，不阻塞其他调用的准入，也不占用结束调用的线程
+        if (ready != null) {
+            long now = System.nanoTime();
+            for (Waiter waiter : ready) {
+                if (listener != null) {
+                    listener.onAdmitted(waiter.call, now - waiter.enqueuedNanos);
+                }
+            }
+            List<Waiter> admitted = ready;
+            Runnable send = () -> {
+                for (Waiter waiter : admitted) {
+                    waiter.send.run();
+                }
+            };
+            try {
+                sendExecutor.execute(send);
+            } catch (RejectedExecutionException e) {
+                // 执行器已关闭（应用停止中），在当前线程发送
+                send.run();
+            }
+        }
+    }
+
+    /**
+     * 按权重选出下一个放行的调用（已超时或取消的调用直接丢弃），没有排队的调用时返回null
+     * 每次选择时所有非空通道加上各自的权重，选积分最高的通道，被选中的通道减去本次参与的权重之和
+     */
+    private Waiter next() {
+        int best = -1;
+        int total = 0;
+        for (int i = 0; i < lanes.length; i++) {
+            ArrayDeque<Waiter> lane = lanes[i];
+            while (!lane.isEmpty() && lane.peekFirst().call.future.isDone()) {
+                lane.pollFirst();
+                queued--;
+            }
+            if (lane.isEmpty()) {
+                // 空闲的通道不积累积分，重新有调用时不会连续放行一大串
+                credits[i] = 0;
+                continue;
+            }
+            credits[i] += weights[i];
+            total += weights[i];
+            if (best < 0 || credits[i] > credits[best]) {
+                best = i;
+            }
+        }
+        if (best < 0) {
+            return null;
+        }
+        credits[best] -= total;
+        queued--;
+        return lanes[best].pollFirst();
+    }
+
+    synchronized int getLimit() {
+        return limit.getLimit();
+    }
+
+    synchronized int getQueued() {
+        return queued;
+    }
+
+    /**
+     * 指定通道中等待发送的请求数
+     */
+    synchronized int getQueued(RpcPriority priority) {
+        return lanes[priority.ordinal()].size();
+    }
+
+    private static final class Waiter {
+        final PendingCall call;
+        final Runnable send;
+        final long enqueuedNanos = System.nanoTime();
+
+        Waiter(PendingCall call, Runnable send) {
+            this.call = call;
+            this.send = send;
+        }
+    }
+}
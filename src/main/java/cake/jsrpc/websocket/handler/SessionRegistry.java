@@ -0,0 +1,182 @@
+package cake.jsrpc.websocket.handler;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 已连接客户端及方法索引
+ * 连接、断开、注册等低频操作加锁并生成新的快照数组（写时复制），
+ * 每次调用都要走的选择路径只读取volatile快照，无锁、无遍历
+ */
+class SessionRegistry {
+
+    private static final ClientSession[] EMPTY = new ClientSession[0];
+
+    // 客户端ID -> 客户端
+    private final Map<String, ClientSession> clients = new ConcurrentHashMap<>();
+    // 未上报方法列表的旧客户端快照
+    private volatile ClientSession[] legacyClients = EMPTY;
+    // 全部客户端快照
+    private volatile ClientSession[] allClients = EMPTY;
+    // 方法名 -> 上报了该方法的客户端快照
+    private final Map<String, ClientSession[]> methodIndex = new ConcurrentHashMap<>();
+    // 已连接客户端声明为可缓存的方法（全部客户端声明的并集）快照
+    private volatile Set<String> cacheableActions = Collections.emptySet();
+
+    synchronized void add(ClientSession client) {
+        clients.put(client.getClientId(), client);
+        allClients = append(allClients, client);
+        legacyClients = append(legacyClients, client);
+    }
+
+    /**
+     * @return 被移除的客户端，已移除过时返回null
+     */
+    synchronized ClientSession remove(String clientId) {
+        ClientSession client = clients.remove(clientId);
+        if (client == null) {
+            return null;
+        }
+        allClients = without(allClients, client);
+        Set<String> methods = client.getMethods();
+        if (methods == null) {
+            legacyClients = without(legacyClients, client);
+        } else {
+            for (String action : methods) {
+                unindex(action, client);
+            }
+        }
+        if (!client.getCacheable().isEmpty()) {
+            rebuildCacheable();
+        }
+        return client;
+    }
+
+    /**
+     * 客户端上报的方法列表更新后重建其索引（客户端的方法列表已由 {@link SessionGroups} 更新）
+     * @param previous 更新前的方法列表，null表示之前未上报
+     * @param cacheableChanged 客户端声明的可缓存方法是否有变化
+     */
+    synchronized void reindex(ClientSession client, Set<String> previous, boolean cacheableChanged) {
+        if (clients.get(client.getClientId()) != client) {
+            // 已断开的客户端，避免与断开清理交错后残留在索引中
+            return;
+        }
+        Set<String> updated = client.getMethods();
+        if (previous == null) {
+            legacyClients = without(legacyClients, client);
+        } else {
+            for (String action : previous) {
+                if (!updated.contains(action)) {
+                    unindex(action, client);
+                }
+            }
+        }
+        for (String action : updated) {
+            if (previous == null || !previous.contains(action)) {
+                methodIndex.put(action, append(methodIndex.getOrDefault(action, EMPTY), client));
+            }
+        }
+        if (cacheableChanged) {
+            rebuildCacheable();
+        }
+    }
+
+    /**
+     * 是否有已连接的客户端声明该方法可缓存
+     */
+    boolean isCacheable(String action) {
+        return cacheableActions.contains(action);
+    }
+
+    Set<String> cacheableActions() {
+        return cacheableActions;
+    }
+
+    /**
+     * 可执行该方法的候选客户端（上报了该方法的客户端 + 未上报方法列表的旧客户端）
+     * @param action 方法名，为null时返回全部客户端
+     */
+    List<ClientSession> candidates(String action) {
+        if (action == null) {
+            return Arrays.asList(allClients);
+        }
+        ClientSession[] registered = methodIndex.getOrDefault(action, EMPTY);
+        ClientSession[] legacy = legacyClients;
+        if (legacy.length == 0) {
+            return Arrays.asList(registered);
+        }
+        if (registered.length == 0) {
+            return Arrays.asList(legacy);
+        }
+        ClientSession[] merged = Arrays.copyOf(registered, registered.length + legacy.length);
+        System.arraycopy(legacy, 0, merged, registered.length, legacy.length);
+        return Arrays.asList(merged);
+    }
+
+    ClientSession get(String clientId) {
+        return clients.get(clientId);
+    }
+
+    Collection<ClientSession> clients() {
+        return clients.values();
+    }
+
+    Set<String> clientIds() {
+        return clients.keySet();
+    }
+
+    Set<String> methodNames() {
+        return methodIndex.keySet();
+    }
+
+    /**
+     * 是否有客户端上报了该方法
+     */
+    boolean isRegistered(String action) {
+        return methodIndex.containsKey(action);
+    }
+
+    int size() {
+        return clients.size();
+    }
+
+    boolean isEmpty() {
+        return clients.isEmpty();
+    }
+
+    private void rebuildCacheable() {
+        Set<String> union = new HashSet<>();
+        for (ClientSession client : clients.values()) {
+            union.addAll(client.getCacheable());
+        }
+        cacheableActions = Collections.unmodifiableSet(union);
+    }
+
+    private void unindex(String action, ClientSession client) {
+        ClientSession[] remaining = without(methodIndex.getOrDefault(action, EMPTY), client);
+        if (remaining.length == 0) {
+            methodIndex.remove(action);
+        } else {
+            methodIndex.put(action, remaining);
+        }
+    }
+
+    private static ClientSession[] append(ClientSession[] array, ClientSession client) {
+        ClientSession[] copy = Arrays.copyOf(array, array.length + 1);
+        copy[array.length] = client;
+        return copy;
+    }
+
+    private static ClientSession[] without(ClientSession[] array, ClientSession client) {
+        for (int i = 0; i < array.length; i++) {
+            if (array[i] == client) {
+                ClientSession[] copy = new ClientSession[array.length - 1];
+                System.arraycopy(array, 0, copy, 0, i);
+                System.arraycopy(array, i + 1, copy, i, array.length - i - 1);
+                return copy;
+            }
+        }
+        return array;
+    }
+}
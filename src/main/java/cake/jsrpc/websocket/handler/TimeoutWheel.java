@@ -0,0 +1,214 @@
+package cake.jsrpc.websocket.handler;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * 哈希时间轮，统一管理所有RPC调用的超时
+ * 所有超时任务共用一个工作线程，注册和取消都是O(1)，不会为每个调用占用线程
+ */
+public class TimeoutWheel {
+
+    private static final Logger log = LoggerFactory.getLogger(TimeoutWheel.class);
+
+    /**
+     * 可挂到时间轮上的超时任务（侵入式链表节点，避免额外分配）
+     */
+    public abstract static class Task {
+        private static final int ST_INIT = 0;
+        private static final int ST_CANCELLED = 1;
+        private static final int ST_EXPIRED = 2;
+        private static final AtomicIntegerFieldUpdater<Task> STATE =
+                AtomicIntegerFieldUpdater.newUpdater(Task.class, "state");
+
+        private volatile int state = ST_INIT;
+        private TimeoutWheel wheel;
+        private long deadline;      // 到期时间（相对时间轮启动的纳秒数）
+        private long remainingRounds;
+        // 以下字段只由工作线程访问
+        private Bucket bucket;
+        private Task prev;
+        private Task next;
+
+        /**
+         * 到期时在时间轮线程中回调，实现应尽量轻量
+         */
+        protected abstract void expire();
+
+        /**
+         * 取消超时，返回false表示任务已经到期或已被取消
+         */
+        public boolean cancelTimeout() {
+            if (!STATE.compareAndSet(this, ST_INIT, ST_CANCELLED)) {
+                return false;
+            }
+            TimeoutWheel w = wheel;
+            if (w != null) {
+                w.cancelledTasks.add(this);
+            }
+            return true;
+        }
+
+        public boolean isExpired() {
+            return state == ST_EXPIRED;
+        }
+    }
+
+    /**
+     * 时间轮格子，双向链表只由工作线程修改
+     */
+    private static final class Bucket {
+        private Task head;
+        private Task tail;
+
+        void add(Task task) {
+            task.bucket = this;
+            if (head == null) {
+                head = tail = task;
+            } else {
+                tail.next = task;
+                task.prev = tail;
+                tail = task;
+            }
+        }
+
+        void remove(Task task) {
+            Task next = task.next;
+            if (task.prev != null) {
+                task.prev.next = next;
+            }
+            if (task.next != null) {
+                task.next.prev = task.prev;
+            }
+            if (task == head) {
+                head = next;
+            }
+            if (task == tail) {
+                tail = task.prev;
+            }
+            task.prev = null;
+            task.next = null;
+            task.bucket = null;
+        }
+
+        void expireTasks(long now) {
+            Task task = head;
+            while (task != null) {
+                Task next = task.next;
+                if (task.remainingRounds <= 0 && task.deadline <= now) {
+                    remove(task);
+                    if (Task.STATE.compareAndSet(task, Task.ST_INIT, Task.ST_EXPIRED)) {
+                        try {
+                            task.expire();
+                        } catch (Throwable t) {
+                            log.warn("[时间轮] 超时回调异常", t);
+                        }
+                    }
+                } else if (task.state == Task.ST_CANCELLED) {
+                    remove(task);
+                } else {
+                    task.remainingRounds--;
+                }
+                task = next;
+            }
+        }
+    }
+
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final Queue<Task> pendingTasks = new ConcurrentLinkedQueue<>();
+    private final Queue<Task> cancelledTasks = new ConcurrentLinkedQueue<>();
+    private final Thread workerThread;
+    private final long startTime;
+    private volatile boolean running = true;
+    private long tick;
+
+    /**
+     * @param tickDuration 每格时长
+     * @param unit 时间单位
+     * @param ticksPerWheel 格子数量（会向上取整为2的幂）
+     */
+    public TimeoutWheel(long tickDuration, TimeUnit unit, int ticksPerWheel) {
+        this.tickNanos = unit.toNanos(tickDuration);
+        int size = 1;
+        while (size < ticksPerWheel) {
+            size <<= 1;
+        }
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = size - 1;
+        this.startTime = System.nanoTime();
+        this.workerThread = new Thread(this::run, "rpc-timeout-wheel");
+        this.workerThread.setDaemon(true);
+        this.workerThread.start();
+    }
+
+    /**
+     * 注册超时任务，delay后若任务未被取消则回调 {@link Task#expire()}
+     */
+    public void schedule(Task task, long delay, TimeUnit unit) {
+        task.wheel = this;
+        task.deadline = System.nanoTime() - startTime + unit.toNanos(delay);
+        pendingTasks.add(task);
+    }
+
+    public void stop() {
+        running = false;
+        workerThread.interrupt();
+    }
+
+    private void run() {
+        while (running) {
+            long deadline = tickNanos * (tick + 1);
+            long sleepNanos = deadline - (System.nanoTime() - startTime);
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    if (!running) {
+                        return;
+                    }
+                }
+            }
+            removeCancelledTasks();
+            transferPendingTasks();
+            wheel[(int) (tick & mask)].expireTasks(System.nanoTime() - startTime);
+            tick++;
+        }
+    }
+
+    private void transferPendingTasks() {
+        // 每个tick最多转移10万个任务，避免工作线程被突发注册饿死
+        for (int i = 0; i < 100000; i++) {
+            Task task = pendingTasks.poll();
+            if (task == null) {
+                return;
+            }
+            if (task.state != Task.ST_INIT) {
+                continue;
+            }
+            long calculated = task.deadline / tickNanos;
+            task.remainingRounds = (calculated - tick) / wheel.length;
+            long ticks = Math.max(calculated, tick);
+            wheel[(int) (ticks & mask)].add(task);
+        }
+    }
+
+    private void removeCancelledTasks() {
+        Task task;
+        while ((task = cancelledTasks.poll()) != null) {
+            Bucket bucket = task.bucket;
+            if (bucket != null) {
+                bucket.remove(task);
+            }
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package cake.jsrpc.websocket.limit;
+
+/**
+ * 加性增、乘性减（AIMD）：
+ * 超时、发送失败或往返时间超过阈值时按比例缩小上限，其余情况在上限被用满一半以上时加1
+ * 只对明确的过载信号做出反应，不同方法执行时间差异很大时也能稳定工作
+ */
+public class AimdLimit implements ConcurrencyLimit {
+
+    private final int minLimit;
+    private final int maxLimit;
+    // 缩小比例（0~1）
+    private final double backoffRatio;
+    // 往返时间超过该值视为过载
+    private final long slowRttNanos;
+    private double limit;
+
+    public AimdLimit(int initialLimit, int minLimit, int maxLimit, double backoffRatio, long slowRttNanos) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.backoffRatio = backoffRatio;
+        this.slowRttNanos = slowRttNanos;
+        this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+    }
+
+    @Override
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    @Override
+    public void onSample(long rttNanos, int inFlight, boolean dropped) {
+        if (dropped || (slowRttNanos > 0 && rttNanos > slowRttNanos)) {
+            limit = Math.max(minLimit, limit * backoffRatio);
+        } else if (inFlight * 2 >= limit) {
+            // 上限没有用满时延迟样本说明不了问题，不继续放大
+            limit = Math.min(maxLimit, limit + 1);
+        }
+    }
+}
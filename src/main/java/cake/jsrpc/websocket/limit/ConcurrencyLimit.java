@@ -0,0 +1,21 @@
+package cake.jsrpc.websocket.limit;
+
+/**
+ * 单个浏览器会话的并发上限算法
+ * 每个会话一个实例，调用都在该会话的准入锁内进行，实现不需要考虑线程安全
+ */
+public interface ConcurrencyLimit {
+
+    /**
+     * 当前允许的最大在途请求数
+     */
+    int getLimit();
+
+    /**
+     * 一次调用结束后的样本
+     * @param rttNanos 从发送到收到响应的往返时间
+     * @param inFlight 该调用结束前的在途请求数
+     * @param dropped 是否超时或发送失败（视为过载信号）
+     */
+    void onSample(long rttNanos, int inFlight, boolean dropped);
+}
@@ -0,0 +1,45 @@
+package cake.jsrpc.websocket.limit;
+
+import cake.jsrpc.websocket.config.RpcProperties;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 根据配置创建会话并发上限算法
+ */
+public final class ConcurrencyLimits {
+
+    public static final String FIXED = "fixed";
+    public static final String AIMD = "aimd";
+    public static final String VEGAS = "vegas";
+
+    private ConcurrencyLimits() {
+    }
+
+    /**
+     * 每个会话调用一次，得到独立的算法实例
+     * @return max-in-flight 小于等于0（不限流）时返回null
+     */
+    public static ConcurrencyLimit create(RpcProperties.Limit properties) {
+        int maxInFlight = properties.getMaxInFlight();
+        if (maxInFlight <= 0) {
+            return null;
+        }
+        String algorithm = properties.getAlgorithm();
+        if (algorithm == null) {
+            algorithm = AIMD;
+        }
+        int initialLimit = Math.min(maxInFlight, properties.getInitialLimit());
+        switch (algorithm.trim().toLowerCase()) {
+            case FIXED:
+                return new FixedLimit(maxInFlight);
+            case AIMD:
+                return new AimdLimit(initialLimit, properties.getMinLimit(), maxInFlight,
+                        properties.getBackoffRatio(), TimeUnit.MILLISECONDS.toNanos(properties.getSlowRttMs()));
+            case VEGAS:
+                return new VegasLimit(initialLimit, properties.getMinLimit(), maxInFlight);
+            default:
+                throw new IllegalArgumentException("未知的并发限制算法: " + algorithm);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package cake.jsrpc.websocket.limit;
+
+/**
+ * 固定上限，不随延迟调整
+ */
+public class FixedLimit implements ConcurrencyLimit {
+
+    private final int limit;
+
+    public FixedLimit(int limit) {
+        this.limit = Math.max(1, limit);
+    }
+
+    @Override
+    public int getLimit() {
+        return limit;
+    }
+
+    @Override
+    public void onSample(long rttNanos, int inFlight, boolean dropped) {
+    }
+}
@@ -0,0 +1,66 @@
+package cake.jsrpc.websocket.limit;
+
+/**
+ * 基于延迟的 TCP Vegas 式算法：
+ * 以观察到的最小往返时间作为无排队延迟，估算浏览器端排队的请求数 queue = limit × (1 - rttNoLoad / rtt)，
+ * 排队少于 alpha 时增大上限，多于 beta 时减小，超时或发送失败时减半
+ * 适合方法执行时间接近的场景；不同方法耗时相差很大时，慢方法会被误判为排队，应改用 {@link AimdLimit}
+ */
+public class VegasLimit implements ConcurrencyLimit {
+
+    // 每隔这么多个样本重新测量无排队延迟，跟上页面负载的变化
+    private static final int PROBE_INTERVAL = 1000;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private double limit;
+    private long rttNoLoadNanos;
+    private int samples;
+
+    public VegasLimit(int initialLimit, int minLimit, int maxLimit) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+    }
+
+    @Override
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    @Override
+    public void onSample(long rttNanos, int inFlight, boolean dropped) {
+        if (++samples >= PROBE_INTERVAL) {
+            samples = 0;
+            rttNoLoadNanos = 0;
+        }
+        if (dropped) {
+            limit = Math.max(minLimit, limit / 2);
+            return;
+        }
+        if (rttNanos <= 0) {
+            return;
+        }
+        if (rttNoLoadNanos == 0 || rttNanos < rttNoLoadNanos) {
+            rttNoLoadNanos = rttNanos;
+            return;
+        }
+
+        double log = Math.max(1, Math.log10(limit));
+        double alpha = 3 * log;
+        double beta = 6 * log;
+        double queue = Math.ceil(limit * (1 - (double) rttNoLoadNanos / rttNanos));
+        if (queue <= log) {
+            if (inFlight * 2 >= limit) {
+                limit += beta;
+            }
+        } else if (queue < alpha) {
+            if (inFlight * 2 >= limit) {
+                limit += log;
+            }
+        } else if (queue > beta) {
+            limit -= log;
+        }
+        limit = Math.min(maxLimit, Math.max(minLimit, limit));
+    }
+}
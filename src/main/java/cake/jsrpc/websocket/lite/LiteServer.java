@@ -0,0 +1,294 @@
+package cake.jsrpc.websocket.lite;
+
+import cake.jsrpc.websocket.RpcClientProxy;
+import cake.jsrpc.websocket.config.RpcProperties;
+import cake.jsrpc.websocket.handler.RpcWebSocketHandler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.connector.Connector;
+import org.apache.catalina.core.StandardContext;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.coyote.http11.AbstractHttp11Protocol;
+import org.apache.coyote.http2.Http2Protocol;
+import org.apache.tomcat.websocket.server.WsSci;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.MapConfigurationPropertySource;
+import org.springframework.boot.logging.LogLevel;
+import org.springframework.boot.logging.LoggingInitializationContext;
+import org.springframework.boot.logging.LoggingSystem;
+import org.springframework.boot.logging.LoggingSystemProperties;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.web.socket.adapter.standard.StandardWebSocketHandlerAdapter;
+import org.springframework.web.socket.adapter.standard.StandardWebSocketSession;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.websocket.DeploymentException;
+import javax.websocket.HandshakeResponse;
+import javax.websocket.Extension;
+import javax.websocket.server.HandshakeRequest;
+import javax.websocket.server.ServerContainer;
+import javax.websocket.server.ServerEndpointConfig;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * 轻量模式（--mode=lite）：不创建Spring容器，直接用内嵌Tomcat承载 /ws 和 /api/rpc/*
+ * 协议、接口和 rpc.* 配置与Spring模式相同，配置同样读取 application.properties，命令行 --key=value 覆盖；
+ * 指标使用进程内的 SimpleMeterRegistry（/api/rpc/stats 可用，没有 /actuator）
+ */
+public class LiteServer {
+
+    private static final Logger log = LoggerFactory.getLogger(LiteServer.class);
+
+    private static final String PROPERTIES_FILE = "application.properties";
+    private static final String LOGGING_LEVEL_PREFIX = "logging.level.";
+
+    // 握手请求的远端地址：JSR-356 的握手请求不提供远端地址，由过滤器暂存，WsFilter 在同一线程上调用 modifyHandshake
+    private static final ThreadLocal<InetSocketAddress> HANDSHAKE_ADDRESS = new ThreadLocal<>();
+    private static final String REMOTE_ADDRESS = LiteServer.class.getName() + ".remoteAddress";
+
+    private final Map<String, Object> properties;
+    private final RpcProperties rpcProperties;
+    private Tomcat tomcat;
+    private RpcWebSocketHandler handler;
+
+    public LiteServer(String... args) {
+        this.properties = loadProperties(args);
+        this.rpcProperties = new Binder(new MapConfigurationPropertySource(properties))
+                .bind("rpc", Bindable.ofInstance(new RpcProperties()))
+                .orElseGet(RpcProperties::new);
+    }
+
+    /**
+     * 启动服务，返回时端口已开始监听
+     */
+    public LiteServer start() throws LifecycleException, IOException {
+        initLogging();
+        long startNanos = System.nanoTime();
+
+        handler = new RpcWebSocketHandler(rpcProperties, new SimpleMeterRegistry());
+        handler.init();
+        RpcClientProxy.setHandler(handler);
+
+        File baseDir = Files.createTempDirectory("tomcat-lite.").toFile();
+        baseDir.deleteOnExit();
+        tomcat = new Tomcat();
+        tomcat.setBaseDir(baseDir.getAbsolutePath());
+        tomcat.setConnector(createConnector());
+
+        StandardContext context = (StandardContext) tomcat.addContext("", baseDir.getAbsolutePath());
+        // 与Spring Boot相同，关闭停止时的类加载器泄漏检测（Java 9+ 上需要 --add-opens，否则每次停止都有警告）
+        context.setClearReferencesObjectStreamClassCaches(false);
+        context.setClearReferencesRmiTargets(false);
+        context.setClearReferencesThreadLocals(false);
+        // 握手请求的远端地址，排在 WsFilter 之前；WsSci 创建 WebSocket 容器，随后注册 /ws 端点
+        context.addServletContainerInitializer((classes, servletContext) -> servletContext
+                .addFilter("handshakeAddress", new HandshakeAddressFilter())
+                .addMappingForUrlPatterns(null, false, "/ws"), null);
+        context.addServletContainerInitializer(new WsSci(), null);
+        context.addServletContainerInitializer((classes, servletContext) -> {
+            ServerContainer container = (ServerContainer) servletContext.getAttribute(ServerContainer.class.getName());
+            configureContainer(container);
+        }, null);
+        Tomcat.addServlet(context, "rpc", new RpcHttpServlet()).setAsyncSupported(true);
+        context.addServletMappingDecoded("/api/rpc/*", "rpc");
+        // 默认映射：WebSocket握手由 WsFilter 处理，请求必须先匹配到某个Servlet；其他路径返回404
+        context.addServletMappingDecoded("/", "rpc");
+
+        tomcat.start();
+        // Tomcat的线程都是守护线程，与Spring Boot相同由一个非守护线程保持进程运行，直到 stop
+        Thread awaitThread = new Thread(() -> tomcat.getServer().await(), "container-0");
+        awaitThread.setDaemon(false);
+        awaitThread.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::stop, "lite-shutdown"));
+        log.info("轻量模式已启动，端口 {}，耗时 {} ms（JVM运行 {} ms）", getPort(),
+                (System.nanoTime() - startNanos) / 1_000_000, ManagementFactory.getRuntimeMXBean().getUptime());
+        return this;
+    }
+
+    /**
+     * 停止服务：关闭端口和所有会话
+     */
+    public synchronized void stop() {
+        try {
+            if (tomcat != null && tomcat.getServer().getState().isAvailable()) {
+                tomcat.stop();
+                tomcat.destroy();
+            }
+        } catch (LifecycleException e) {
+            log.warn("停止Tomcat失败", e);
+        } finally {
+            if (handler != null) {
+                handler.destroy();
+                handler = null;
+                RpcClientProxy.setHandler(null);
+            }
+        }
+    }
+
+    public int getPort() {
+        return tomcat.getConnector().getLocalPort();
+    }
+
+    public RpcWebSocketHandler getHandler() {
+        return handler;
+    }
+
+    public RpcProperties getRpcProperties() {
+        return rpcProperties;
+    }
+
+    /**
+     * 与Spring模式相同的连接器配置：server.port、keep-alive 请求数、h2c
+     */
+    private Connector createConnector() {
+        Connector connector = new Connector("HTTP/1.1");
+        connector.setPort(Integer.parseInt(property("server.port", "8080")));
+        if (connector.getProtocolHandler() instanceof AbstractHttp11Protocol) {
+            ((AbstractHttp11Protocol<?>) connector.getProtocolHandler()).setMaxKeepAliveRequests(
+                    Integer.parseInt(property("server.tomcat.max-keep-alive-requests", "100")));
+        }
+        if (Boolean.parseBoolean(property("server.http2.enabled", "false"))) {
+            Http2Protocol http2 = new Http2Protocol();
+            http2.setMaxConcurrentStreams(rpcProperties.getHttp().getMaxConcurrentStreams());
+            http2.setMaxConcurrentStreamExecution(rpcProperties.getHttp().getMaxConcurrentStreamExecution());
+            connector.addUpgradeProtocol(http2);
+        }
+        return connector;
+    }
+
+    /**
+     * 与 WebSocketConfig 相同的容器配置和 /ws 端点
+     */
+    private void configureContainer(ServerContainer container) {
+        int maxFrameBytes = rpcProperties.getTransfer().getMaxFrameBytes();
+        container.setDefaultMaxTextMessageBufferSize(maxFrameBytes);
+        container.setDefaultMaxBinaryMessageBufferSize(maxFrameBytes);
+        container.setDefaultMaxSessionIdleTimeout(5 * 60 * 1000L);
+        container.setAsyncSendTimeout(30000L);
+        boolean permessageDeflate = rpcProperties.getCompression().isPermessageDeflate();
+        // 每个连接创建一个 StandardWebSocketHandlerAdapter，把 JSR-356 事件转给处理器
+        ServerEndpointConfig.Configurator configurator = new ServerEndpointConfig.Configurator() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <T> T getEndpointInstance(Class<T> endpointClass) {
+                StandardWebSocketSession session = new StandardWebSocketSession(null, null, null, null) {
+                    @Override
+                    public InetSocketAddress getRemoteAddress() {
+                        return (InetSocketAddress) getNativeSession().getUserProperties().get(REMOTE_ADDRESS);
+                    }
+                };
+                return (T) new StandardWebSocketHandlerAdapter(handler, session);
+            }
+
+            @Override
+            public void modifyHandshake(ServerEndpointConfig config, HandshakeRequest request, HandshakeResponse response) {
+                // config 是该连接独有的副本，其属性会复制到会话的 getUserProperties
+                InetSocketAddress address = HANDSHAKE_ADDRESS.get();
+                if (address != null) {
+                    config.getUserProperties().put(REMOTE_ADDRESS, address);
+                }
+            }
+
+            @Override
+            public List<Extension> getNegotiatedExtensions(List<Extension> installed, List<Extension> requested) {
+                // 关闭 permessage-deflate 时握手不协商任何扩展
+                return permessageDeflate ? super.getNegotiatedExtensions(installed, requested) : Collections.emptyList();
+            }
+        };
+        ServerEndpointConfig registration = ServerEndpointConfig.Builder
+                .create(StandardWebSocketHandlerAdapter.class, "/ws")
+                .configurator(configurator)
+                .build();
+        try {
+            container.addEndpoint(registration);
+        } catch (DeploymentException e) {
+            throw new IllegalStateException("注册 /ws 端点失败", e);
+        }
+    }
+
+    /**
+     * 按Spring Boot的方式初始化日志（相同的输出格式、logging.level.* 级别、JUL桥接）
+     */
+    private void initLogging() {
+        StandardEnvironment environment = new StandardEnvironment();
+        environment.getPropertySources().addFirst(new MapPropertySource("lite", properties));
+        LoggingSystem loggingSystem = LoggingSystem.get(LiteServer.class.getClassLoader());
+        loggingSystem.beforeInitialize();
+        new LoggingSystemProperties(environment).apply();
+        loggingSystem.initialize(new LoggingInitializationContext(environment), null, null);
+        for (Map.Entry<String, Object> entry : properties.entrySet()) {
+            if (entry.getKey().startsWith(LOGGING_LEVEL_PREFIX)) {
+                String name = entry.getKey().substring(LOGGING_LEVEL_PREFIX.length());
+                LogLevel level = LogLevel.valueOf(String.valueOf(entry.getValue()).trim().toUpperCase(Locale.ROOT));
+                loggingSystem.setLogLevel("root".equals(name) ? null : name, level);
+            }
+        }
+    }
+
+    private String property(String name, String defaultValue) {
+        Object value = properties.get(name);
+        return value != null ? value.toString().trim() : defaultValue;
+    }
+
+    /**
+     * 读取类路径上的 application.properties，命令行的 --key=value 覆盖同名配置
+     */
+    private static Map<String, Object> loadProperties(String[] args) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        Properties file = new Properties();
+        try (InputStream in = LiteServer.class.getClassLoader().getResourceAsStream(PROPERTIES_FILE)) {
+            if (in != null) {
+                file.load(new InputStreamReader(in, StandardCharsets.UTF_8));
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("读取 " + PROPERTIES_FILE + " 失败", e);
+        }
+        for (String name : file.stringPropertyNames()) {
+            result.put(name, file.getProperty(name));
+        }
+        if (args != null) {
+            for (String arg : args) {
+                if (arg.startsWith("--") && arg.indexOf('=') > 2) {
+                    int eq = arg.indexOf('=');
+                    result.put(arg.substring(2, eq), arg.substring(eq + 1));
+                }
+            }
+        }
+        return result;
+    }
+
+    private static class HandshakeAddressFilter implements Filter {
+
+        @Override
+        public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+                throws IOException, ServletException {
+            HANDSHAKE_ADDRESS.set(new InetSocketAddress(request.getRemoteAddr(), request.getRemotePort()));
+            try {
+                chain.doFilter(request, response);
+            } finally {
+                HANDSHAKE_ADDRESS.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package cake.jsrpc.websocket.lite;
+
+import cake.jsrpc.websocket.controller.RpcTestController;
+import cake.jsrpc.websocket.model.RpcBatchRequest;
+import cake.jsrpc.websocket.model.RpcCallRequest;
+import cake.jsrpc.websocket.model.RpcCallResult;
+import cake.jsrpc.websocket.transfer.RawResultHttpMessageConverter;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.ByteArrayHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.StringHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.http.server.ServletServerHttpResponse;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 轻量模式的 /api/rpc/* 接口：按路径分发到 {@link RpcTestController}，响应与Spring模式一致
+ * /call 和 /batch 以异步Servlet处理，等待浏览器响应期间不占用工作线程；结果由容器线程写出，不阻塞WebSocket读线程
+ */
+public class RpcHttpServlet extends HttpServlet {
+
+    private static final Logger log = LoggerFactory.getLogger(RpcHttpServlet.class);
+
+    private final RpcTestController controller = new RpcTestController();
+    // 与Spring Boot默认配置相同：忽略未知字段
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+    // 与Spring MVC相同的消息转换，RawResult 从重组缓冲区流式写出
+    private final List<HttpMessageConverter<?>> converters = Arrays.asList(
+            new RawResultHttpMessageConverter(),
+            new ByteArrayHttpMessageConverter(),
+            new StringHttpMessageConverter(StandardCharsets.UTF_8),
+            new MappingJackson2HttpMessageConverter(objectMapper));
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        switch (route(req)) {
+            case "/test":
+                write(resp, controller.testRpcCall());
+                break;
+            case "/stats":
+                write(resp, controller.getStats());
+                break;
+            case "/cache":
+                write(resp, controller.getCacheStats());
+                break;
+            case "/clients":
+                write(resp, controller.getClientCount());
+                break;
+            case "/methods":
+                write(resp, controller.getRegisteredMethods());
+                break;
+            case "/groups":
+                write(resp, controller.getGroups());
+                break;
+            case "/{group}/stats":
+                write(resp, controller.getGroupStats(group(req)));
+                break;
+            case "/{group}/clients":
+                write(resp, controller.getGroupClientCount(group(req)));
+                break;
+            case "/{group}/methods":
+                write(resp, controller.getGroupMethods(group(req)));
+                break;
+            default:
+                notFound(req, resp);
+        }
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        switch (route(req)) {
+            case "/call": {
+                RpcCallRequest request = readBody(req, resp, RpcCallRequest.class);
+                if (request != null) {
+                    writeAsync(req, controller.callBrowserMethod(request, req.getHeader(RpcTestController.PRIORITY_HEADER)));
+                }
+                break;
+            }
+            case "/batch": {
+                RpcBatchRequest request = readBody(req, resp, RpcBatchRequest.class);
+                if (request != null) {
+                    writeAsync(req, controller.callBrowserBatch(request));
+                }
+                break;
+            }
+            case "/{group}/call": {
+                RpcCallRequest request = readBody(req, resp, RpcCallRequest.class);
+                if (request != null) {
+                    writeAsync(req, controller.callGroupMethod(group(req), request, req.getHeader(RpcTestController.PRIORITY_HEADER)));
+                }
+                break;
+            }
+            case "/{group}/batch": {
+                RpcBatchRequest request = readBody(req, resp, RpcBatchRequest.class);
+                if (request != null) {
+                    writeAsync(req, controller.callGroupBatch(group(req), request));
+                }
+                break;
+            }
+            default:
+                notFound(req, resp);
+        }
+    }
+
+    @Override
+    protected void doDelete(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        if ("/cache".equals(route(req))) {
+            write(resp, controller.invalidateCache(req.getParameter("action")));
+        } else {
+            notFound(req, resp);
+        }
+    }
+
+    /**
+     * 请求对应的路由，与 {@link RpcTestController} 的映射写法相同：/test/call 这样的两段路径记为 /{group}/call
+     */
+    private static String route(HttpServletRequest req) {
+        String path = req.getPathInfo();
+        if (path == null) {
+            return "";
+        }
+        int slash = path.indexOf('/', 1);
+        return slash > 0 ? "/{group}" + path.substring(slash) : path;
+    }
+
+    /**
+     * /{group}/... 路由中的分组名
+     */
+    private static String group(HttpServletRequest req) {
+        String path = req.getPathInfo();
+        return path.substring(1, path.indexOf('/', 1));
+    }
+
+    private <T> T readBody(HttpServletRequest req, HttpServletResponse resp, Class<T> type) throws IOException {
+        try {
+            return objectMapper.readValue(req.getInputStream(), type);
+        } catch (JsonProcessingException e) {
+            log.debug("请求体解析失败: {}", e.getOriginalMessage());
+            write(resp, ResponseEntity.badRequest().body(RpcCallResult.failed("请求体解析失败: " + e.getOriginalMessage(),
+                    HttpStatus.BAD_REQUEST.value())));
+            return null;
+        }
+    }
+
+    /**
+     * 异步接口：Future 完成后在容器线程上写出响应
+     */
+    private void writeAsync(HttpServletRequest req, CompletableFuture<?> future) {
+        AsyncContext async = req.startAsync();
+        // 每个调用都有自己的超时，容器不设超时
+        async.setTimeout(0);
+        future.whenComplete((value, error) -> async.start(() -> {
+            HttpServletResponse resp = (HttpServletResponse) async.getResponse();
+            try {
+                if (error != null) {
+                    log.warn("请求处理失败", error);
+                    resp.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                } else {
+                    write(resp, value);
+                }
+            } catch (IOException e) {
+                log.debug("写出响应失败: {}", e.getMessage());
+            } finally {
+                async.complete();
+            }
+        }));
+    }
+
+    private void notFound(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        write(resp, ResponseEntity.status(HttpStatus.NOT_FOUND)
+                .body(RpcCallResult.failed("接口不存在: " + req.getMethod() + " " + req.getRequestURI(),
+                        HttpStatus.NOT_FOUND.value())));
+    }
+
+    /**
+     * 按 ResponseEntity 的状态码、响应头和内容类型写出，其他返回值作为JSON
+     */
+    @SuppressWarnings("unchecked")
+    private void write(HttpServletResponse resp, Object value) throws IOException {
+        ResponseEntity<?> entity = value instanceof ResponseEntity ? (ResponseEntity<?>) value : ResponseEntity.ok(value);
+        Object body = entity.getBody();
+        MediaType contentType = entity.getHeaders().getContentType();
+        if (contentType == null) {
+            contentType = body instanceof String ? MediaType.TEXT_PLAIN : MediaType.APPLICATION_JSON;
+        }
+        ServletServerHttpResponse output = new ServletServerHttpResponse(resp);
+        output.setStatusCode(entity.getStatusCode());
+        output.getHeaders().putAll(entity.getHeaders());
+        if (body == null) {
+            output.close();
+            return;
+        }
+        for (HttpMessageConverter<?> converter : converters) {
+            if (converter.canWrite(body.getClass(), contentType)) {
+                ((HttpMessageConverter<Object>) converter).write(body, contentType, output);
+                output.close();
+                return;
+            }
+        }
+        throw new IOException("无法写出响应: " + body.getClass().getName() + " (" + contentType + ")");
+    }
+}
@@ -0,0 +1,562 @@
+package cake.jsrpc.websocket.metrics;
+
+import cake.jsrpc.websocket.handler.ClientSession;
+import cake.jsrpc.websocket.handler.RpcException;
+import cake.jsrpc.websocket.handler.RpcPriority;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * RPC调用指标（Micrometer），通过 Actuator /actuator/metrics 和 GET /api/rpc/stats 查看
+ * <ul>
+ *   <li>rpc.calls：按方法、结果（success/timeout/not_found/remote_error/rejected/...）统计的调用次数和端到端延迟</li>
+ *   <li>rpc.phase：各阶段耗时（serialize 序列化、send 发送队列等待及写socket、browser 浏览器往返、exec 浏览器执行方法、parse 解析响应）</li>
+ *   <li>rpc.payload：请求/响应的大小分布（字节）</li>
+ *   <li>rpc.compression.*：应用层gzip压缩前后的字节数和压缩/解压耗时</li>
+ *   <li>rpc.action.rtt：按方法统计的成功调用耗时（登记到收到响应），用于计算自适应超时</li>
+ *   <li>rpc.action.exec：按方法统计的浏览器执行时间（rpc.js 在响应中上报的 elapsed）</li>
+ *   <li>rpc.inflight、rpc.session.*：在途请求数及每个客户端的调用统计、并发上限和排队数</li>
+ * </ul>
+ */
+public class RpcMetrics {
+
+    /**
+     * 调用阶段
+     */
+    public enum Phase {
+        // EXEC 是 BROWSER 中浏览器实际执行方法的部分（rpc.js 上报），其余为网络传输和浏览器端排队
+        SERIALIZE, SEND, BROWSER, EXEC, PARSE;
+
+        final String tag = name().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * 调用结果
+     */
+    public enum Outcome {
+        SUCCESS, TIMEOUT, NOT_FOUND, REMOTE_ERROR, TOO_LARGE, REJECTED, NO_CLIENT, CONNECTION_LOST, CANCELLED, ERROR;
+
+        final String tag = name().toLowerCase(Locale.ROOT);
+
+        public static Outcome of(Throwable error) {
+            if (error == null) {
+                return SUCCESS;
+            }
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            if (cause instanceof CancellationException) {
+                return CANCELLED;
+            }
+            if (!(cause instanceof RpcException)) {
+                return ERROR;
+            }
+            switch (((RpcException) cause).getStatus()) {
+                case RpcException.TIMEOUT:
+                    return TIMEOUT;
+                case RpcException.NOT_FOUND:
+                    return NOT_FOUND;
+                case RpcException.REMOTE_ERROR:
+                    return REMOTE_ERROR;
+                case RpcException.PAYLOAD_TOO_LARGE:
+                    return TOO_LARGE;
+                case RpcException.TOO_MANY_REQUESTS:
+                    return REJECTED;
+                case RpcException.NO_CLIENT:
+                    return NO_CLIENT;
+                case RpcException.CONNECTION_LOST:
+                    return CONNECTION_LOST;
+                default:
+                    return ERROR;
+            }
+        }
+    }
+
+    private static final double[] PERCENTILES = {0.5, 0.95, 0.99};
+    // 未注册的方法名和不存在的分组统一记在这个标签下，避免调用方传入的任意名称撑爆指标数量
+    private static final String UNKNOWN = "unknown";
+    // 每个客户端登记的指标，断开时一并移除
+    private static final String[] SESSION_METERS = {
+            "rpc.session.inflight", "rpc.session.rtt", "rpc.session.exec", "rpc.session.limit", "rpc.session.queued",
+            "rpc.session.ping", "rpc.session.calls"};
+
+    private final MeterRegistry registry;
+    private final Timer[] phaseTimers = new Timer[Phase.values().length];
+    private final Timer[] laneWaitTimers = new Timer[RpcPriority.values().length];
+    private final DistributionSummary requestSize;
+    private final DistributionSummary responseSize;
+    private final CompressionMeters requestCompression;
+    private final CompressionMeters responseCompression;
+    // 自适应超时使用的分位数
+    private final double rttPercentile;
+    private final ConcurrentMap<String, Timer> actionRttTimers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Timer> actionExecTimers = new ConcurrentHashMap<>();
+    // rpc.calls：方法名 -> 按 Outcome 顺序的Timer；rpc.group.calls：分组名 -> 方法名 -> 按 Outcome 顺序的Timer
+    // 只登记已知的名称，数量受浏览器注册的方法和连接的分组限制；并发时重复登记得到的是同一个Timer
+    private final ConcurrentMap<String, Timer[]> callTimers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, ConcurrentMap<String, Timer[]>> groupCallTimers = new ConcurrentHashMap<>();
+    // 方法是否已有客户端注册、分组是否有客户端连接，未登记时不限
+    private volatile Predicate<String> knownAction = action -> true;
+    private volatile Predicate<String> knownGroup = group -> true;
+
+    public RpcMetrics(MeterRegistry registry) {
+        this(registry, 0.99);
+    }
+
+    /**
+     * @param rttPercentile rpc.action.rtt 额外发布的分位数（自适应超时使用）
+     */
+    public RpcMetrics(MeterRegistry registry, double rttPercentile) {
+        this.registry = registry;
+        this.rttPercentile = rttPercentile;
+        for (Phase phase : Phase.values()) {
+            phaseTimers[phase.ordinal()] = Timer.builder("rpc.phase")
+                    .description("RPC调用各阶段耗时")
+                    .tag("phase", phase.tag)
+                    .publishPercentiles(PERCENTILES)
+                    .publishPercentileHistogram()
+                    .register(registry);
+        }
+        for (RpcPriority lane : RpcPriority.values()) {
+            laneWaitTimers[lane.ordinal()] = Timer.builder("rpc.lane.wait")
+                    .description("调用在会话等待队列中的时间，未排队的调用记为0")
+                    .tag("lane", lane.tag())
+                    .publishPercentiles(PERCENTILES)
+                    .publishPercentileHistogram()
+                    .register(registry);
+        }
+        this.requestSize = payloadSummary("request");
+        this.responseSize = payloadSummary("response");
+        this.requestCompression = new CompressionMeters("request");
+        this.responseCompression = new CompressionMeters("response");
+    }
+
+    private DistributionSummary payloadSummary(String direction) {
+        return DistributionSummary.builder("rpc.payload")
+                .description("RPC消息大小")
+                .baseUnit("bytes")
+                .tag("direction", direction)
+                .publishPercentiles(PERCENTILES)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    /**
+     * 登记在途请求数的来源
+     */
+    public void bindInFlight(Supplier<Number> inFlight) {
+        Gauge.builder("rpc.inflight", inFlight).description("等待浏览器响应的请求数").register(registry);
+    }
+
+    /**
+     * 登记已知名称的判断：按方法和分组统计调用时，未注册的方法名和没有客户端的分组（来自HTTP调用方，不可信）
+     * 归入 "unknown"，已经统计过的名称和成功的调用不受影响
+     * @param actions 方法是否有客户端注册
+     * @param groups 分组是否有客户端连接
+     */
+    public void bindKnownNames(Predicate<String> actions, Predicate<String> groups) {
+        this.knownAction = actions;
+        this.knownGroup = groups;
+    }
+
+    /**
+     * 统计一次调用的结果和端到端延迟（调用完成时记录）
+     */
+    public CompletableFuture<Object> track(String action, CompletableFuture<Object> future) {
+        return track(action, null, future);
+    }
+
+    /**
+     * 统计一次指定分组的调用，除全局统计外另按分组记录
+     * @param group 分组名，为null时只记录全局统计
+     */
+    public CompletableFuture<Object> track(String action, String group, CompletableFuture<Object> future) {
+        long start = System.nanoTime();
+        future.whenComplete((result, error) -> {
+            Outcome outcome = Outcome.of(error);
+            long nanos = System.nanoTime() - start;
+            recordCall(action, outcome, nanos);
+            if (group != null) {
+                recordGroupCall(group, action, outcome, nanos);
+            }
+        });
+        return future;
+    }
+
+    public void recordCall(String action, Outcome outcome, long nanos) {
+        String actionTag = metricAction(callTimers, action, outcome);
+        Timer[] timers = timers(callTimers, actionTag);
+        Timer timer = timers[outcome.ordinal()];
+        if (timer == null) {
+            timer = Timer.builder("rpc.calls")
+                    .description("RPC调用次数和端到端延迟")
+                    .tag("action", actionTag)
+                    .tag("outcome", outcome.tag)
+                    .publishPercentiles(PERCENTILES)
+                    .register(registry);
+            timers[outcome.ordinal()] = timer;
+        }
+        timer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordGroupCall(String group, String action, Outcome outcome, long nanos) {
+        String groupTag = group != null && (groupCallTimers.containsKey(group) || knownGroup.test(group)) ? group : UNKNOWN;
+        ConcurrentMap<String, Timer[]> actions = groupCallTimers.computeIfAbsent(groupTag, g -> new ConcurrentHashMap<>());
+        String actionTag = metricAction(actions, action, outcome);
+        Timer[] timers = timers(actions, actionTag);
+        Timer timer = timers[outcome.ordinal()];
+        if (timer == null) {
+            timer = Timer.builder("rpc.group.calls")
+                    .description("按分组统计的RPC调用次数和端到端延迟")
+                    .tag("group", groupTag)
+                    .tag("action", actionTag)
+                    .tag("outcome", outcome.tag)
+                    .publishPercentiles(PERCENTILES)
+                    .register(registry);
+            timers[outcome.ordinal()] = timer;
+        }
+        timer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 统计使用的方法名：已统计过、有客户端注册或调用成功（未上报方法列表的旧客户端执行过）的方法保留原名，其余归入 "unknown"
+     */
+    private String metricAction(Map<String, Timer[]> timers, String action, Outcome outcome) {
+        if (action == null || outcome == Outcome.NOT_FOUND) {
+            return UNKNOWN;
+        }
+        return timers.containsKey(action) || outcome == Outcome.SUCCESS || knownAction.test(action) ? action : UNKNOWN;
+    }
+
+    private static Timer[] timers(ConcurrentMap<String, Timer[]> timers, String action) {
+        return timers.computeIfAbsent(action, a -> new Timer[Outcome.values().length]);
+    }
+
+    /**
+     * 记录一次成功调用的耗时（只记录成功的调用，方法名来自客户端注册的方法）
+     */
+    public void recordActionRtt(String action, long nanos) {
+        actionRttTimers.computeIfAbsent(action, a -> Timer.builder("rpc.action.rtt")
+                .description("按方法统计的成功调用耗时")
+                .tag("action", a)
+                .publishPercentiles(rttPercentile)
+                .register(registry))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 记录浏览器上报的一次方法执行时间
+     */
+    public void recordActionExec(String action, long nanos) {
+        actionExecTimers.computeIfAbsent(action, a -> Timer.builder("rpc.action.exec")
+                .description("浏览器执行方法的时间（rpc.js 上报）")
+                .tag("action", a)
+                .publishPercentiles(PERCENTILES)
+                .register(registry))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 方法的成功调用数（从启动开始累计）
+     */
+    public long actionRttCount(String action) {
+        Timer timer = actionRttTimers.get(action);
+        return timer != null ? timer.count() : 0;
+    }
+
+    /**
+     * 方法最近一段时间（滑动窗口）的耗时分位数（毫秒），没有样本时返回0
+     */
+    public double actionRttPercentileMs(String action) {
+        Timer timer = actionRttTimers.get(action);
+        if (timer == null) {
+            return 0;
+        }
+        for (ValueAtPercentile value : timer.takeSnapshot().percentileValues()) {
+            if (value.percentile() == rttPercentile) {
+                return value.value(TimeUnit.MILLISECONDS);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * 登记各优先级通道的排队数
+     */
+    public void bindLaneQueued(RpcPriority lane, Supplier<Number> queued) {
+        Gauge.builder("rpc.lane.queued", queued)
+                .description("全部会话在该优先级通道中等待发送的请求数")
+                .tag("lane", lane.tag())
+                .register(registry);
+    }
+
+    /**
+     * 记录调用通过准入前在等待队列中的时间
+     */
+    public void recordLaneWait(RpcPriority lane, long nanos) {
+        laneWaitTimers[lane.ordinal()].record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 记录一次幂等调用因连接断开而在其他客户端上的重试
+     */
+    public void recordRetry(String action) {
+        registry.counter("rpc.retries", "action", action).increment();
+    }
+
+    /**
+     * 记录一次会话驱逐（已关闭或心跳超时）
+     */
+    public void recordEviction(String reason) {
+        registry.counter("rpc.session.evictions", "reason", reason).increment();
+    }
+
+    public void recordPhase(Phase phase, long nanos) {
+        phaseTimers[phase.ordinal()].record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordRequestSize(long bytes) {
+        requestSize.record(bytes);
+    }
+
+    public void recordResponseSize(long bytes) {
+        responseSize.record(bytes);
+    }
+
+    /**
+     * 记录一次应用层压缩（请求）或解压（响应）
+     * @param rawBytes 压缩前的字节数
+     * @param wireBytes 实际传输的字节数
+     */
+    public void recordCompression(boolean request, long rawBytes, long wireBytes, long nanos) {
+        CompressionMeters meters = request ? requestCompression : responseCompression;
+        meters.rawBytes.increment(rawBytes);
+        meters.wireBytes.increment(wireBytes);
+        meters.time.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 客户端连接时登记其在途请求数和往返延迟指标
+     */
+    public void bindSession(ClientSession client) {
+        Gauge.builder("rpc.session.inflight", client, ClientSession::getInFlight)
+                .tag("client", client.getClientId())
+                .register(registry);
+        Gauge.builder("rpc.session.rtt", client, c -> c.getEwmaRttNanos() / 1_000_000.0)
+                .description("往返延迟EWMA")
+                .baseUnit("milliseconds")
+                .tag("client", client.getClientId())
+                .register(registry);
+        Gauge.builder("rpc.session.exec", client, c -> c.getEwmaExecNanos() / 1_000_000.0)
+                .description("浏览器执行时间EWMA")
+                .baseUnit("milliseconds")
+                .tag("client", client.getClientId())
+                .register(registry);
+        Gauge.builder("rpc.session.limit", client, ClientSession::getConcurrencyLimit)
+                .description("当前并发上限，-1表示不限流")
+                .tag("client", client.getClientId())
+                .register(registry);
+        Gauge.builder("rpc.session.queued", client, ClientSession::getQueued)
+                .description("等待发送的请求数")
+                .tag("client", client.getClientId())
+                .register(registry);
+        Gauge.builder("rpc.session.ping", client, c -> c.getPingRttNanos() / 1_000_000.0)
+                .description("最近一次心跳往返延迟")
+                .baseUnit("milliseconds")
+                .tag("client", client.getClientId())
+                .register(registry);
+    }
+
+    /**
+     * 记录客户端一次调用的结果
+     */
+    public void recordSessionCall(ClientSession client, Outcome outcome) {
+        registry.counter("rpc.session.calls", "client", client.getClientId(), "outcome", outcome.tag).increment();
+    }
+
+    /**
+     * 客户端断开时移除其全部指标
+     */
+    public void unbindSession(String clientId) {
+        for (String name : SESSION_METERS) {
+            for (Meter meter : registry.find(name).tag("client", clientId).meters()) {
+                registry.remove(meter);
+            }
+        }
+    }
+
+    /**
+     * 汇总当前指标，供 GET /api/rpc/stats 返回
+     */
+    public Map<String, Object> snapshot(Collection<ClientSession> clients) {
+        return snapshot(clients, null);
+    }
+
+    /**
+     * 汇总当前指标，供 GET /api/rpc/stats 和 GET /api/rpc/{group}/stats 返回
+     * @param group 分组名，不为null时按方法的调用统计只包含该分组的调用
+     */
+    public Map<String, Object> snapshot(Collection<ClientSession> clients, String group) {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        Gauge inFlight = registry.find("rpc.inflight").gauge();
+        stats.put("inFlight", inFlight != null ? (long) inFlight.value() : 0);
+
+        Map<String, Map<String, Object>> actions = new TreeMap<>();
+        Collection<Timer> callTimers = group == null
+                ? registry.find("rpc.calls").timers()
+                : registry.find("rpc.group.calls").tag("group", group).timers();
+        for (Timer timer : callTimers) {
+            Map<String, Object> action = actions.computeIfAbsent(timer.getId().getTag("action"), k -> new LinkedHashMap<>());
+            action.put(timer.getId().getTag("outcome"), timerStats(timer));
+        }
+        stats.put("actions", actions);
+
+        Map<String, Object> phases = new LinkedHashMap<>();
+        for (Phase phase : Phase.values()) {
+            phases.put(phase.tag, timerStats(phaseTimers[phase.ordinal()]));
+        }
+        stats.put("phases", phases);
+
+        Map<String, Object> exec = new TreeMap<>();
+        for (Map.Entry<String, Timer> entry : actionExecTimers.entrySet()) {
+            exec.put(entry.getKey(), timerStats(entry.getValue()));
+        }
+        stats.put("exec", exec);
+
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("request", summaryStats(requestSize));
+        payload.put("response", summaryStats(responseSize));
+        stats.put("payloadBytes", payload);
+
+        Map<String, Object> compression = new LinkedHashMap<>();
+        compression.put("request", requestCompression.stats());
+        compression.put("response", responseCompression.stats());
+        stats.put("compression", compression);
+
+        Map<String, Object> lanes = new LinkedHashMap<>();
+        for (RpcPriority lane : RpcPriority.values()) {
+            int queued = 0;
+            for (ClientSession client : clients) {
+                queued += client.getQueued(lane);
+            }
+            Map<String, Object> laneStats = new LinkedHashMap<>();
+            laneStats.put("queued", queued);
+            laneStats.put("wait", timerStats(laneWaitTimers[lane.ordinal()]));
+            lanes.put(lane.tag(), laneStats);
+        }
+        stats.put("lanes", lanes);
+
+        Map<String, Long> retries = new TreeMap<>();
+        for (Counter counter : registry.find("rpc.retries").counters()) {
+            retries.put(counter.getId().getTag("action"), (long) counter.count());
+        }
+        stats.put("retries", retries);
+        Map<String, Long> evictions = new TreeMap<>();
+        for (Counter counter : registry.find("rpc.session.evictions").counters()) {
+            evictions.put(counter.getId().getTag("reason"), (long) counter.count());
+        }
+        stats.put("evictions", evictions);
+
+        List<Map<String, Object>> sessions = new ArrayList<>();
+        for (ClientSession client : clients) {
+            Map<String, Object> session = new LinkedHashMap<>();
+            session.put("clientId", client.getClientId());
+            session.put("group", client.getGroup());
+            session.put("codec", client.getCodec().getName());
+            session.put("inFlight", client.getInFlight());
+            session.put("rttEwmaMs", client.getEwmaRttNanos() / 1_000_000.0);
+            session.put("execEwmaMs", client.getEwmaExecNanos() / 1_000_000.0);
+            session.put("limit", client.getConcurrencyLimit());
+            session.put("queued", client.getQueued());
+            session.put("outboundBytes", client.getOutboundBytes());
+            session.put("idleMs", System.currentTimeMillis() - client.getLastSeen());
+            session.put("pingRttMs", client.getPingRttNanos() / 1_000_000.0);
+            Map<String, Long> calls = new LinkedHashMap<>();
+            for (Counter counter : registry.find("rpc.session.calls").tag("client", client.getClientId()).counters()) {
+                calls.put(counter.getId().getTag("outcome"), (long) counter.count());
+            }
+            session.put("calls", calls);
+            sessions.add(session);
+        }
+        stats.put("sessions", sessions);
+        return stats;
+    }
+
+    private static Map<String, Object> timerStats(Timer timer) {
+        HistogramSnapshot snapshot = timer.takeSnapshot();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("count", snapshot.count());
+        stats.put("meanMs", snapshot.mean(TimeUnit.MILLISECONDS));
+        stats.put("maxMs", snapshot.max(TimeUnit.MILLISECONDS));
+        for (ValueAtPercentile percentile : snapshot.percentileValues()) {
+            stats.put(percentileName(percentile) + "Ms", percentile.value(TimeUnit.MILLISECONDS));
+        }
+        return stats;
+    }
+
+    private static Map<String, Object> summaryStats(DistributionSummary summary) {
+        HistogramSnapshot snapshot = summary.takeSnapshot();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("count", snapshot.count());
+        stats.put("mean", snapshot.mean());
+        stats.put("max", snapshot.max());
+        for (ValueAtPercentile percentile : snapshot.percentileValues()) {
+            stats.put(percentileName(percentile), percentile.value());
+        }
+        return stats;
+    }
+
+    private static String percentileName(ValueAtPercentile percentile) {
+        return "p" + Math.round(percentile.percentile() * 100);
+    }
+
+    /**
+     * 一个方向上的压缩指标
+     */
+    private final class CompressionMeters {
+        final Counter rawBytes;
+        final Counter wireBytes;
+        final Timer time;
+
+        CompressionMeters(String direction) {
+            rawBytes = Counter.builder("rpc.compression.bytes")
+                    .description("应用层压缩前后的字节数")
+                    .baseUnit("bytes")
+                    .tags("direction", direction, "stage", "raw")
+                    .register(registry);
+            wireBytes = Counter.builder("rpc.compression.bytes")
+                    .description("应用层压缩前后的字节数")
+                    .baseUnit("bytes")
+                    .tags("direction", direction, "stage", "wire")
+                    .register(registry);
+            time = Timer.builder("rpc.compression.time")
+                    .description("应用层压缩（请求）或解压（响应）耗时")
+                    .tag("direction", direction)
+                    .publishPercentiles(PERCENTILES)
+                    .register(registry);
+        }
+
+        Map<String, Object> stats() {
+            Map<String, Object> stats = timerStats(time);
+            double raw = rawBytes.count();
+            stats.put("rawBytes", (long) raw);
+            stats.put("wireBytes", (long) wireBytes.count());
+            stats.put("ratio", raw > 0 ? wireBytes.count() / raw : 1.0);
+            return stats;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package cake.jsrpc.websocket.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * POST /api/rpc/batch 的请求体
+ * 格式: { "action": "enc", "params": [["a"], ["b"], "c"] }
+ * params 中每个元素是一次调用的参数列表，非数组元素视为单个参数
+ */
+@Data
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class RpcBatchRequest {
+    private String action;
+    private List<Object> params = new ArrayList<>();
+
+    public List<Object[]> paramsList() {
+        List<Object[]> paramsList = new ArrayList<>();
+        if (params != null) {
+            for (Object item : params) {
+                paramsList.add(item instanceof List ? ((List<?>) item).toArray() : new Object[]{item});
+            }
+        }
+        return paramsList;
+    }
+}
@@ -0,0 +1,37 @@
+package cake.jsrpc.websocket.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * POST /api/rpc/batch 的响应体
+ * 成功: { "success": true, "action": "enc", "count": 3, "results": [...] }
+ * 失败: { "success": false, "message": "调用失败: ..." }
+ */
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class RpcBatchResult {
+    private boolean success;
+    private String action;
+    private Integer count;
+    private List<Object> results;
+    private String message;
+
+    public static RpcBatchResult ok(String action, List<Object> results) {
+        RpcBatchResult response = new RpcBatchResult();
+        response.setSuccess(true);
+        response.setAction(action);
+        response.setCount(results.size());
+        response.setResults(results);
+        return response;
+    }
+
+    public static RpcBatchResult failed(String message) {
+        RpcBatchResult response = new RpcBatchResult();
+        response.setSuccess(false);
+        response.setMessage(message);
+        return response;
+    }
+}
@@ -0,0 +1,25 @@
+package cake.jsrpc.websocket.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * POST /api/rpc/call 的请求体
+ * 格式: { "action": "base64", "params": ["test"], "timeout": 5000, "stream": false, "priority": "interactive" }
+ */
+@Data
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class RpcCallRequest {
+    private String action;        // 浏览器方法名
+    private List<Object> params = new ArrayList<>(); // 参数列表，可选
+    private Long timeout;         // 超时毫秒数，可选，不指定时使用服务端的默认超时（rpc.timeout.*）
+    private boolean stream;       // 为 true 时响应体直接是结果本身，可选
+    private String priority;      // 优先级通道 interactive / normal / bulk，可选，不指定时取 X-Rpc-Priority 请求头，默认 normal
+
+    public Object[] paramsArray() {
+        return params == null ? new Object[0] : params.toArray();
+    }
+}
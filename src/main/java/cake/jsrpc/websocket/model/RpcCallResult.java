@@ -0,0 +1,36 @@
+package cake.jsrpc.websocket.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+
+/**
+ * POST /api/rpc/call 的响应体
+ * 成功: { "success": true, "action": "base64", "result": "dGVzdA==" }
+ * 失败: { "success": false, "message": "调用失败: ...", "status": 429 }
+ */
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class RpcCallResult {
+    private boolean success;
+    private String action;
+    @JsonInclude(JsonInclude.Include.ALWAYS)
+    private Object result;        // 调用结果，失败时为null
+    private String message;       // 失败原因
+    private Integer status;       // 失败的状态码（429客户端繁忙等），可选
+
+    public static RpcCallResult ok(String action, Object result) {
+        RpcCallResult response = new RpcCallResult();
+        response.setSuccess(true);
+        response.setAction(action);
+        response.setResult(result);
+        return response;
+    }
+
+    public static RpcCallResult failed(String message, Integer status) {
+        RpcCallResult response = new RpcCallResult();
+        response.setSuccess(false);
+        response.setMessage(message);
+        response.setStatus(status);
+        return response;
+    }
+}
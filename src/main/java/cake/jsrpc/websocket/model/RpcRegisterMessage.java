@@ -0,0 +1,21 @@
+package cake.jsrpc.websocket.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 客户端主动上报的方法注册消息（连接建立时及每次 register 后发送）
+ * 格式: { "type": "register", "methods": ["base64", "enc"], "cacheable": ["base64"], "features": ["chunked"] }
+ */
+@Data
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class RpcRegisterMessage {
+    public static final String TYPE = "register";
+
+    private String type;          // 消息类型，固定为 register
+    private List<String> methods; // 客户端当前注册的全部方法名
+    private List<String> cacheable; // 其中结果可缓存的纯函数方法名（可选）
+    private List<String> features; // 客户端支持的协议特性，如 chunked（分片帧），可选
+}
@@ -14,4 +14,5 @@ public class RpcRequest {
     private String id;         // 请求ID（用于匹配响应）
     private String action;     // 要调用的方法名
     private List<Object> params; // 方法参数列表
+    private String type;       // 消息类型，普通调用为空；cancel 表示取消该ID的调用
 }
\ No newline at end of file
@@ -8,6 +8,7 @@ public class RpcResponse {
     private String callbackId; // 对应请求的ID
     private int status; // 状态码（200成功、404方法不存在、500错误）
     private Object result; // 响应结果
+    private Double elapsed; // 浏览器执行方法的耗时（毫秒），旧版rpc.js不上报
 
     // 必须有默认构造函数（Jackson解析需要）
     public RpcResponse() {}
@@ -36,4 +37,12 @@ public class RpcResponse {
     public void setResult(Object result) {
         this.result = result;
     }
+
+    public Double getElapsed() {
+        return elapsed;
+    }
+
+    public void setElapsed(Double elapsed) {
+        this.elapsed = elapsed;
+    }
 }
\ No newline at end of file
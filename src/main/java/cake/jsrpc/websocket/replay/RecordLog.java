@@ -0,0 +1,577 @@
+package cake.jsrpc.websocket.replay;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * 追加写的内存映射记录文件（键 -> 值），附带同样内存映射的磁盘哈希索引
+ * <pre>
+ * 记录文件 {path}.log：文件头(16) + 记录…，未写入的部分全为0
+ *   记录：总长度(4) CRC32(4) 键长度(4) 键 值，CRC覆盖键长度之后的全部字节，总长度最后写入
+ * 索引文件 {path}.idx：文件头(40) + 槽位…（开放寻址、线性探测，装载率不超过1/2）
+ *   槽位：键哈希(8，0表示空) 记录偏移(8)
+ * </pre>
+ * 同一个键再次写入时索引指向新记录，旧记录成为垃圾；文件写满时原地压缩：有效记录依次前移，
+ * 有效记录仍超过上限的一半时丢弃最早的记录，文件大小始终不超过上限
+ * 索引文件头保存记录文件的有效长度，打开时从这里继续扫描进程退出前写入但未登记的记录；
+ * 索引损坏、缺失或压缩中途退出时按记录文件重建（CRC不符的记录及其之后的内容丢弃）
+ * 查询持读锁并发进行，写入和压缩持写锁
+ */
+class RecordLog implements Closeable {
+
+    // "JRPL"、"JRPI"
+    private static final int LOG_MAGIC = 0x4A52504C;
+    private static final int INDEX_MAGIC = 0x4A525049;
+    private static final int VERSION = 1;
+    private static final int LOG_HEADER = 16;
+    private static final int RECORD_HEADER = 12;
+    // 索引文件头：magic(4) 版本(4) 槽位数(4) 条目数(4) 状态(4) 保留(4) 记录文件有效长度(8) 有效记录字节数(8)
+    private static final int INDEX_HEADER = 40;
+    private static final int INDEX_CAPACITY = 8;
+    private static final int INDEX_COUNT = 12;
+    private static final int INDEX_STATE = 16;
+    private static final int INDEX_LOG_END = 24;
+    private static final int INDEX_LIVE_BYTES = 32;
+    private static final int SLOT_SIZE = 16;
+    private static final int MIN_SLOTS = 1024;
+    // 压缩进行中：打开时看到这个状态说明上次压缩中途退出，索引不可信
+    private static final int STATE_CLEAN = 0;
+    private static final int STATE_COMPACTING = 1;
+    // 记录文件初始映射大小，之后按两倍扩大直到上限
+    private static final int INITIAL_MAP_BYTES = 1 << 20;
+    private static final long MIN_MAX_BYTES = 64 * 1024;
+    private static final byte[] ZEROS = new byte[8192];
+    // 64位FNV-1a
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final Path logPath;
+    private final Path indexPath;
+    private final FileChannel logChannel;
+    private final FileChannel indexChannel;
+    // 记录文件大小上限
+    private final int maxBytes;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // 以下字段在写锁内修改
+    private MappedByteBuffer log;
+    private MappedByteBuffer index;
+    private int capacity;
+    private int count;
+    private int logEnd;
+    private long liveBytes;
+    private long compactions;
+    private long evictions;
+
+    /**
+     * 打开（不存在时创建）记录文件和索引文件
+     * @param path 文件路径，不含扩展名
+     * @param maxBytes 记录文件大小上限，最大2GB
+     * @throws IOException 文件无法读写，或已存在的文件不是记录文件
+     */
+    RecordLog(String path, long maxBytes) throws IOException {
+        this.maxBytes = (int) Math.min(Math.max(maxBytes, MIN_MAX_BYTES), Integer.MAX_VALUE - 8);
+        this.logPath = Paths.get(path + ".log").toAbsolutePath();
+        this.indexPath = Paths.get(path + ".idx").toAbsolutePath();
+        Files.createDirectories(logPath.getParent());
+        this.logChannel = FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.indexChannel = FileChannel.open(indexPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            open();
+        } catch (IOException | RuntimeException e) {
+            logChannel.close();
+            indexChannel.close();
+            throw e;
+        }
+    }
+
+    private void open() throws IOException {
+        long existing = logChannel.size();
+        boolean truncated = existing > maxBytes;
+        if (truncated) {
+            // 上限调小了：超出部分截断，截断处不完整的记录在重建索引时丢弃
+            logChannel.truncate(maxBytes);
+            existing = maxBytes;
+        }
+        log = logChannel.map(FileChannel.MapMode.READ_WRITE, 0, Math.min(Math.max(existing, INITIAL_MAP_BYTES), maxBytes));
+        boolean fresh = log.getInt(0) == 0 && log.getInt(4) == 0;
+        if (fresh) {
+            log.putInt(0, LOG_MAGIC);
+            log.putInt(4, VERSION);
+        } else if (log.getInt(0) != LOG_MAGIC || log.getInt(4) != VERSION) {
+            throw new IOException(logPath + " 不是调用记录文件");
+        }
+        if (fresh || truncated || !loadIndex()) {
+            rebuildIndex();
+        } else {
+            // 进程退出前已写入记录文件、但索引文件头还没更新的记录
+            recover(logEnd);
+        }
+        if (logEnd > INITIAL_MAP_BYTES && liveBytes * 2 < logEnd - LOG_HEADER) {
+            // 一半以上是被替换的旧记录，启动时先回收
+            compact();
+        }
+    }
+
+    /**
+     * 读取索引文件，文件头校验不通过时返回false
+     */
+    private boolean loadIndex() throws IOException {
+        long size = indexChannel.size();
+        if (size < INDEX_HEADER + (long) MIN_SLOTS * SLOT_SIZE) {
+            return false;
+        }
+        // 先读文件头，校验通过才映射（已映射的文件在部分系统上不能截断重建）
+        ByteBuffer header = ByteBuffer.allocate(INDEX_HEADER);
+        while (header.hasRemaining() && indexChannel.read(header, header.position()) > 0) {
+            // 读满文件头
+        }
+        int slots = header.getInt(INDEX_CAPACITY);
+        long end = header.getLong(INDEX_LOG_END);
+        if (header.hasRemaining() || header.getInt(0) != INDEX_MAGIC || header.getInt(4) != VERSION
+                || Integer.bitCount(slots) != 1 || size != INDEX_HEADER + (long) slots * SLOT_SIZE
+                || header.getInt(INDEX_STATE) != STATE_CLEAN || end < LOG_HEADER || end > log.capacity()) {
+            return false;
+        }
+        index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        capacity = slots;
+        count = index.getInt(INDEX_COUNT);
+        logEnd = (int) end;
+        liveBytes = index.getLong(INDEX_LIVE_BYTES);
+        return true;
+    }
+
+    /**
+     * 清空索引，按记录文件重新登记全部记录
+     */
+    private void rebuildIndex() throws IOException {
+        indexChannel.truncate(0);
+        mapIndex(MIN_SLOTS);
+        count = 0;
+        liveBytes = 0;
+        recover(LOG_HEADER);
+    }
+
+    /**
+     * 从指定位置扫描记录文件，登记完整且CRC正确的记录，遇到第一条无效记录时停止并清除其后的内容
+     */
+    private void recover(int from) {
+        int position = from;
+        int length;
+        while ((length = validLength(position)) > 0) {
+            register(hashAt(position), position, length);
+            position += length;
+        }
+        if (position + RECORD_HEADER <= log.capacity() && log.getInt(position) != 0) {
+            // 写到一半的记录，清零后从这里继续追加
+            clear(position, (int) Math.min(log.capacity(), (long) position + Math.max(RECORD_HEADER, log.getInt(position))));
+        }
+        logEnd = position;
+        writeHeader();
+    }
+
+    /**
+     * 查询键对应的值
+     * @return 值，不存在或记录已损坏时返回null
+     */
+    byte[] get(byte[] key) {
+        long hash = hash(key);
+        lock.readLock().lock();
+        try {
+            int slot = probe(hash, key);
+            if (slot < 0) {
+                return null;
+            }
+            int offset = (int) index.getLong(slotPosition(slot) + 8);
+            int length = validLength(offset);
+            if (length == 0) {
+                return null;
+            }
+            int valueOffset = offset + RECORD_HEADER + key.length;
+            byte[] value = new byte[offset + length - valueOffset];
+            ByteBuffer view = log.duplicate();
+            view.position(valueOffset);
+            view.get(value);
+            return value;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 写入一条记录，键已存在时替换（旧记录在压缩时回收）
+     * @return 是否已写入；单条记录超过上限的1/4时不写入
+     */
+    boolean put(byte[] key, byte[] value) throws IOException {
+        long length = (long) RECORD_HEADER + key.length + value.length;
+        if (length > maxBytes / 4) {
+            return false;
+        }
+        long hash = hash(key);
+        lock.writeLock().lock();
+        try {
+            if (logEnd + length > maxBytes) {
+                compact();
+            }
+            ensureMapped(logEnd + (int) length);
+            int offset = logEnd;
+            ByteBuffer view = log.duplicate();
+            view.position(offset + 8);
+            view.putInt(key.length);
+            view.put(key);
+            view.put(value);
+            log.putInt(offset + 4, crc(offset + 8, (int) length - 8));
+            // 总长度最后写入，写到一半退出时这条记录读出来长度为0
+            log.putInt(offset, (int) length);
+            logEnd += (int) length;
+            register(hash, offset, (int) length);
+            writeHeader();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 压缩记录文件（写满或启动时大部分是旧记录时）：有效记录依次前移，覆盖被替换的旧记录；有效记录超过上限的一半时从最早的记录开始丢弃
+     * 记录只会向前移动，可以在同一个映射上原地进行
+     */
+    void compact() {
+        lock.writeLock().lock();
+        try {
+            index.putInt(INDEX_STATE, STATE_COMPACTING);
+            long drop = Math.max(0, liveBytes - (maxBytes - LOG_HEADER) / 2);
+            long[] hashes = new long[count];
+            int[] offsets = new int[count];
+            int kept = 0;
+            int read = LOG_HEADER;
+            int write = LOG_HEADER;
+            while (read < logEnd) {
+                int length = log.getInt(read);
+                long hash = hashAt(read);
+                if (isLive(hash, read)) {
+                    if (drop > 0) {
+                        drop -= length;
+                        evictions++;
+                    } else {
+                        if (write != read) {
+                            move(read, write, length);
+                        }
+                        hashes[kept] = hash;
+                        offsets[kept] = write;
+                        kept++;
+                        write += length;
+                    }
+                }
+                read += length;
+            }
+            clear(write, logEnd);
+            clearSlots();
+            for (int i = 0; i < kept; i++) {
+                insert(hashes[i], offsets[i]);
+            }
+            count = kept;
+            logEnd = write;
+            liveBytes = write - LOG_HEADER;
+            compactions++;
+            index.putInt(INDEX_STATE, STATE_CLEAN);
+            writeHeader();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 记录文件和索引的当前状态
+     */
+    Map<String, Object> stats() {
+        lock.readLock().lock();
+        try {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("path", logPath.toString());
+            stats.put("entries", count);
+            stats.put("logBytes", logEnd);
+            stats.put("liveBytes", liveBytes);
+            stats.put("fileBytes", log.capacity());
+            stats.put("maxBytes", maxBytes);
+            stats.put("compactions", compactions);
+            stats.put("evictions", evictions);
+            return stats;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 把映射的内容写回磁盘并关闭文件
+     */
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            log.force();
+            index.force();
+        } finally {
+            lock.writeLock().unlock();
+            logChannel.close();
+            indexChannel.close();
+        }
+    }
+
+    /**
+     * 登记一条已写入的记录，替换同键的旧记录
+     */
+    private void register(long hash, int offset, int length) {
+        int slot = probe(hash, offset);
+        if (slot >= 0) {
+            int position = slotPosition(slot);
+            int previous = (int) index.getLong(position + 8);
+            if (previous == offset) {
+                return;
+            }
+            liveBytes -= log.getInt(previous);
+            index.putLong(position + 8, offset);
+        } else {
+            int position = slotPosition(-slot - 1);
+            index.putLong(position, hash);
+            index.putLong(position + 8, offset);
+            count++;
+        }
+        liveBytes += length;
+        if (count * 2 > capacity) {
+            growIndex();
+        }
+    }
+
+    /**
+     * 查找与键相同的槽位
+     * @return 槽位号；不存在时返回 -(可以插入的空槽位号 + 1)
+     */
+    private int probe(long hash, byte[] key) {
+        int mask = capacity - 1;
+        for (int slot = spread(hash) & mask; ; slot = (slot + 1) & mask) {
+            int position = slotPosition(slot);
+            long slotHash = index.getLong(position);
+            if (slotHash == 0) {
+                return -slot - 1;
+            }
+            if (slotHash == hash && keyEquals((int) index.getLong(position + 8), key)) {
+                return slot;
+            }
+        }
+    }
+
+    /**
+     * 查找与指定记录的键相同的槽位（键从记录文件中比较）
+     */
+    private int probe(long hash, int recordOffset) {
+        int mask = capacity - 1;
+        int keyLength = log.getInt(recordOffset + 8);
+        for (int slot = spread(hash) & mask; ; slot = (slot + 1) & mask) {
+            int position = slotPosition(slot);
+            long slotHash = index.getLong(position);
+            if (slotHash == 0) {
+                return -slot - 1;
+            }
+            int offset = (int) index.getLong(position + 8);
+            if (slotHash == hash && (offset == recordOffset || keysEqual(offset, recordOffset, keyLength))) {
+                return slot;
+            }
+        }
+    }
+
+    /**
+     * 记录是否仍被索引引用（未被同键的新记录替换）
+     */
+    private boolean isLive(long hash, int recordOffset) {
+        int mask = capacity - 1;
+        for (int slot = spread(hash) & mask; ; slot = (slot + 1) & mask) {
+            int position = slotPosition(slot);
+            long slotHash = index.getLong(position);
+            if (slotHash == 0) {
+                return false;
+            }
+            if (slotHash == hash && index.getLong(position + 8) == recordOffset) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 插入一个已知不重复的条目（重建或扩容时）
+     */
+    private void insert(long hash, int offset) {
+        int mask = capacity - 1;
+        int slot = spread(hash) & mask;
+        while (index.getLong(slotPosition(slot)) != 0) {
+            slot = (slot + 1) & mask;
+        }
+        index.putLong(slotPosition(slot), hash);
+        index.putLong(slotPosition(slot) + 8, offset);
+    }
+
+    /**
+     * 槽位数翻倍：取出全部条目，扩大映射后重新插入
+     */
+    private void growIndex() {
+        long[] hashes = new long[count];
+        int[] offsets = new int[count];
+        int n = 0;
+        for (int slot = 0; slot < capacity; slot++) {
+            int position = slotPosition(slot);
+            long hash = index.getLong(position);
+            if (hash != 0) {
+                hashes[n] = hash;
+                offsets[n] = (int) index.getLong(position + 8);
+                n++;
+            }
+        }
+        try {
+            mapIndex(capacity * 2);
+        } catch (IOException e) {
+            throw new IllegalStateException("扩大索引文件失败: " + indexPath, e);
+        }
+        clearSlots();
+        for (int i = 0; i < n; i++) {
+            insert(hashes[i], offsets[i]);
+        }
+        writeHeader();
+    }
+
+    private void mapIndex(int slots) throws IOException {
+        index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, INDEX_HEADER + (long) slots * SLOT_SIZE);
+        capacity = slots;
+        index.putInt(0, INDEX_MAGIC);
+        index.putInt(4, VERSION);
+        index.putInt(INDEX_CAPACITY, slots);
+        index.putInt(INDEX_STATE, STATE_CLEAN);
+    }
+
+    private void clearSlots() {
+        for (int slot = 0; slot < capacity; slot++) {
+            index.putLong(slotPosition(slot), 0);
+        }
+    }
+
+    private void writeHeader() {
+        index.putInt(INDEX_COUNT, count);
+        index.putLong(INDEX_LOG_END, logEnd);
+        index.putLong(INDEX_LIVE_BYTES, liveBytes);
+    }
+
+    /**
+     * 需要写到 end 时扩大记录文件的映射（按两倍扩大，不超过上限）
+     */
+    private void ensureMapped(int end) throws IOException {
+        if (end <= log.capacity()) {
+            return;
+        }
+        long size = Math.min(maxBytes, Math.max(end, (long) log.capacity() * 2));
+        log = logChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    /**
+     * 指定位置上完整且CRC正确的记录长度，不是有效记录时返回0
+     */
+    private int validLength(int offset) {
+        if (offset + RECORD_HEADER > log.capacity()) {
+            return 0;
+        }
+        int length = log.getInt(offset);
+        int keyLength = log.getInt(offset + 8);
+        if (length < RECORD_HEADER || length > log.capacity() - offset
+                || keyLength < 0 || keyLength > length - RECORD_HEADER) {
+            return 0;
+        }
+        return crc(offset + 8, length - 8) == log.getInt(offset + 4) ? length : 0;
+    }
+
+    private int crc(int offset, int length) {
+        ByteBuffer view = log.duplicate();
+        view.position(offset);
+        view.limit(offset + length);
+        CRC32 crc = new CRC32();
+        crc.update(view);
+        return (int) crc.getValue();
+    }
+
+    private boolean keyEquals(int recordOffset, byte[] key) {
+        if (log.getInt(recordOffset + 8) != key.length) {
+            return false;
+        }
+        int start = recordOffset + RECORD_HEADER;
+        for (int i = 0; i < key.length; i++) {
+            if (log.get(start + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean keysEqual(int offset, int otherOffset, int keyLength) {
+        if (log.getInt(offset + 8) != keyLength) {
+            return false;
+        }
+        for (int i = 0; i < keyLength; i++) {
+            if (log.get(offset + RECORD_HEADER + i) != log.get(otherOffset + RECORD_HEADER + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void move(int from, int to, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer view = log.duplicate();
+        view.position(from);
+        view.get(bytes);
+        view.position(to);
+        view.put(bytes);
+    }
+
+    private void clear(int from, int to) {
+        ByteBuffer view = log.duplicate();
+        view.position(from);
+        for (int remaining = to - from; remaining > 0; remaining -= ZEROS.length) {
+            view.put(ZEROS, 0, Math.min(remaining, ZEROS.length));
+        }
+    }
+
+    private long hashAt(int recordOffset) {
+        int keyLength = log.getInt(recordOffset + 8);
+        long hash = FNV_OFFSET;
+        for (int i = 0; i < keyLength; i++) {
+            hash = (hash ^ (log.get(recordOffset + RECORD_HEADER + i) & 0xff)) * FNV_PRIME;
+        }
+        return hash != 0 ? hash : 1;
+    }
+
+    /**
+     * 键的64位FNV-1a哈希，0留给空槽位
+     */
+    static long hash(byte[] key) {
+        long hash = FNV_OFFSET;
+        for (byte b : key) {
+            hash = (hash ^ (b & 0xff)) * FNV_PRIME;
+        }
+        return hash != 0 ? hash : 1;
+    }
+
+    private static int spread(long hash) {
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    private static int slotPosition(int slot) {
+        return INDEX_HEADER + slot * SLOT_SIZE;
+    }
+}
@@ -0,0 +1,262 @@
+package cake.jsrpc.websocket.replay;
+
+import cake.jsrpc.websocket.cache.CallKeys;
+import cake.jsrpc.websocket.config.RpcProperties;
+import cake.jsrpc.websocket.transfer.RawResult;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 调用记录与回放：(方法, 分组, 参数) -> 结果 持久化在内存映射的记录文件中（见 {@link RecordLog}），重启后仍然保留
+ * record 模式调用浏览器并记录成功的结果；replay 模式先按记录应答，不需要浏览器在线，
+ * 没有记录的调用照常发给浏览器（有客户端连接时）并补记，可用于预热启动、离线回归和压测Java端
+ * 键与结果缓存相同（见 {@link CallKeys}），结果以CBOR保存，byte[] 原样回放
+ * 记录由单独的写线程序列化并写入（写满时的压缩也在写线程上），完成调用的WebSocket消息线程只负责入队
+ */
+public class ReplayStore {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplayStore.class);
+
+    public static final String OFF = "off";
+    public static final String RECORD = "record";
+    public static final String REPLAY = "replay";
+
+    // 等待写入的记录数上限，写线程跟不上时丢弃新的记录（计入 skipped）
+    private static final int WRITE_QUEUE_SIZE = 10000;
+
+    private final String mode;
+    // 只记录和回放这些方法，为空时不限
+    private final Set<String> actions;
+    private final CallKeys callKeys;
+    private final ObjectMapper valueMapper = new ObjectMapper(new CBORFactory());
+    // off 模式为null
+    private final RecordLog recordLog;
+    // 记录写线程，off 模式为null
+    private final ThreadPoolExecutor writer;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder recorded = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+
+    /**
+     * @throws IllegalArgumentException 未知的模式
+     * @throws IllegalStateException 记录文件无法打开
+     */
+    public ReplayStore(RpcProperties.Replay config, ObjectMapper objectMapper) {
+        String configured = config.getMode() == null ? OFF : config.getMode().trim().toLowerCase();
+        if (!OFF.equals(configured) && !RECORD.equals(configured) && !REPLAY.equals(configured)) {
+            throw new IllegalArgumentException("未知的记录回放模式: " + config.getMode());
+        }
+        this.mode = configured;
+        this.actions = Collections.unmodifiableSet(new HashSet<>(config.getActions()));
+        this.callKeys = new CallKeys(objectMapper);
+        if (OFF.equals(mode)) {
+            this.recordLog = null;
+            this.writer = null;
+            return;
+        }
+        try {
+            this.recordLog = new RecordLog(config.getPath(), config.getMaxBytes());
+        } catch (IOException e) {
+            throw new IllegalStateException("打开调用记录文件失败: " + config.getPath() + ": " + e.getMessage(), e);
+        }
+        this.writer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(WRITE_QUEUE_SIZE), r -> {
+                    Thread thread = new Thread(r, "rpc-replay-writer");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        log.info("调用记录回放已开启，模式: {}，文件: {}", mode, recordLog.stats().get("path"));
+    }
+
+    public boolean isEnabled() {
+        return recordLog != null;
+    }
+
+    public String getMode() {
+        return mode;
+    }
+
+    /**
+     * 按模式应答调用：replay 模式有记录时直接返回记录的结果，否则调用loader，成功的结果写入记录
+     * @param group 分组名，可以为null
+     * @param loader 发起实际的浏览器调用
+     */
+    public CompletableFuture<Object> get(String action, String group, Object[] params, Supplier<CompletableFuture<Object>> loader) {
+        if (recordLog == null || (!actions.isEmpty() && !actions.contains(action))) {
+            return loader.get();
+        }
+        byte[] key = key(action, group, params);
+        if (key == null) {
+            // 参数无法规范化，不记录
+            return loader.get();
+        }
+        CompletableFuture<Object> replayed = replay(action, key);
+        if (replayed != null) {
+            return replayed;
+        }
+        CompletableFuture<Object> future = loader.get();
+        future.thenAccept(result -> submit(action, key, result));
+        return future;
+    }
+
+    /**
+     * 批量调用按单个调用应答：replay 模式下有记录的调用直接返回记录的结果，其余调用一起交给loader，成功的结果逐个写入记录
+     * @param loader 以没有记录的调用的参数发起实际的批量调用，返回与参数一一对应的结果
+     * @return 与 paramsList 一一对应的结果
+     */
+    public List<CompletableFuture<Object>> getAll(String action, String group, List<Object[]> paramsList,
+                                                  Function<List<Object[]>, List<CompletableFuture<Object>>> loader) {
+        if (recordLog == null || (!actions.isEmpty() && !actions.contains(action))) {
+            return loader.apply(paramsList);
+        }
+        List<CompletableFuture<Object>> futures = new ArrayList<>(Collections.nCopies(paramsList.size(), null));
+        List<byte[]> keys = new ArrayList<>(paramsList.size());
+        List<Integer> missing = new ArrayList<>();
+        List<Object[]> missingParams = new ArrayList<>();
+        for (int i = 0; i < paramsList.size(); i++) {
+            byte[] key = key(action, group, paramsList.get(i));
+            keys.add(key);
+            CompletableFuture<Object> replayed = key != null ? replay(action, key) : null;
+            if (replayed != null) {
+                futures.set(i, replayed);
+            } else {
+                missing.add(i);
+                missingParams.add(paramsList.get(i));
+            }
+        }
+        if (missing.isEmpty()) {
+            return futures;
+        }
+        List<CompletableFuture<Object>> loaded = loader.apply(missingParams);
+        for (int j = 0; j < missing.size(); j++) {
+            int i = missing.get(j);
+            CompletableFuture<Object> future = loaded.get(j);
+            byte[] key = keys.get(i);
+            if (key != null) {
+                future.thenAccept(result -> submit(action, key, result));
+            }
+            futures.set(i, future);
+        }
+        return futures;
+    }
+
+    /**
+     * 调用的记录键，参数无法规范化时返回null
+     */
+    private byte[] key(String action, String group, Object[] params) {
+        try {
+            return callKeys.key(action, group, params).getBytes(StandardCharsets.UTF_8);
+        } catch (JsonProcessingException e) {
+            return null;
+        }
+    }
+
+    /**
+     * replay 模式下按记录应答，不是 replay 模式或没有记录时返回null
+     */
+    private CompletableFuture<Object> replay(String action, byte[] key) {
+        if (!REPLAY.equals(mode)) {
+            return null;
+        }
+        byte[] value = recordLog.get(key);
+        if (value != null) {
+            try {
+                Object result = valueMapper.readValue(value, Object.class);
+                hits.increment();
+                return CompletableFuture.completedFuture(result);
+            } catch (IOException e) {
+                log.debug("读取方法 {} 的记录失败: {}", action, e.getMessage());
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * 把记录交给写线程，不在完成调用的线程上序列化或写文件
+     * 分片回传的大结果（流式调用的 {@link RawResult}）交给调用方流式写出，不记录
+     */
+    private void submit(String action, byte[] key, Object result) {
+        if (result instanceof RawResult) {
+            return;
+        }
+        try {
+            writer.execute(() -> record(action, key, result));
+        } catch (RejectedExecutionException e) {
+            // 写入队列已满或已关闭
+            skipped.increment();
+        }
+    }
+
+    private void record(String action, byte[] key, Object result) {
+        try {
+            if (recordLog.put(key, valueMapper.writeValueAsBytes(result))) {
+                recorded.increment();
+            } else {
+                // 单条记录超过文件上限的1/4
+                skipped.increment();
+            }
+        } catch (IOException | RuntimeException e) {
+            skipped.increment();
+            log.warn("记录方法 {} 的结果失败: {}", action, e.getMessage());
+        }
+    }
+
+    /**
+     * 模式、命中次数、记录数和文件状态，供 GET /api/rpc/stats 返回
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("mode", mode);
+        if (recordLog == null) {
+            return stats;
+        }
+        stats.put("hits", hits.sum());
+        stats.put("misses", misses.sum());
+        stats.put("recorded", recorded.sum());
+        stats.put("skipped", skipped.sum());
+        stats.put("writeQueue", writer.getQueue().size());
+        stats.putAll(recordLog.stats());
+        return stats;
+    }
+
+    /**
+     * 写完已排队的记录，把记录写回磁盘并关闭文件
+     */
+    public void close() {
+        if (recordLog == null) {
+            return;
+        }
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(10, TimeUnit.SECONDS)) {
+                log.warn("调用记录写线程未在10秒内结束，丢弃 {} 条未写入的记录", writer.shutdownNow().size());
+                // 仍在写入的记录结束前不能解除文件映射
+                writer.awaitTermination(10, TimeUnit.SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            recordLog.close();
+        } catch (IOException e) {
+            log.warn("关闭调用记录文件失败: {}", e.getMessage());
+        }
+    }
+}
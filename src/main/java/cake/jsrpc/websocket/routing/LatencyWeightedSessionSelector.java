@@ -0,0 +1,36 @@
+package cake.jsrpc.websocket.routing;
+
+import cake.jsrpc.websocket.handler.ClientSession;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 延迟加权：按 往返延迟EWMA + 单次执行时间 × 在途请求数 估算完成时间，选择最小者
+ * 在途请求的网络往返相互重叠，排在前面的每个请求只占用浏览器的执行时间；
+ * 客户端上报了执行时间（rpc.js 响应中的 elapsed）时按执行时间EWMA计算，否则按往返延迟EWMA（即 往返延迟 × (在途请求数 + 1)）
+ * 还没有延迟样本的客户端得分为0，会优先拿到请求用于探测
+ */
+public class LatencyWeightedSessionSelector implements SessionSelector {
+
+    private final AtomicInteger offset = new AtomicInteger();
+
+    @Override
+    public ClientSession select(List<ClientSession> candidates) {
+        int size = candidates.size();
+        int start = (offset.getAndIncrement() & Integer.MAX_VALUE) % size;
+        ClientSession best = null;
+        double bestScore = Double.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            ClientSession candidate = candidates.get((start + i) % size);
+            double rtt = candidate.getEwmaRttNanos();
+            double exec = candidate.getEwmaExecNanos();
+            double score = rtt + (exec > 0 ? exec : rtt) * candidate.getInFlight();
+            if (score < bestScore) {
+                best = candidate;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+}
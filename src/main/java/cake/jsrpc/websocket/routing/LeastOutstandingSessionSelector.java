@@ -0,0 +1,35 @@
+package cake.jsrpc.websocket.routing;
+
+import cake.jsrpc.websocket.handler.ClientSession;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 最少在途请求：选择当前未完成请求最少的客户端
+ * 起始位置轮转，在途数相同时不会总是落到第一个客户端上
+ */
+public class LeastOutstandingSessionSelector implements SessionSelector {
+
+    private final AtomicInteger offset = new AtomicInteger();
+
+    @Override
+    public ClientSession select(List<ClientSession> candidates) {
+        int size = candidates.size();
+        int start = (offset.getAndIncrement() & Integer.MAX_VALUE) % size;
+        ClientSession best = null;
+        int bestInFlight = Integer.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            ClientSession candidate = candidates.get((start + i) % size);
+            int inFlight = candidate.getInFlight();
+            if (inFlight < bestInFlight) {
+                best = candidate;
+                bestInFlight = inFlight;
+                if (inFlight == 0) {
+                    break;
+                }
+            }
+        }
+        return best;
+    }
+}
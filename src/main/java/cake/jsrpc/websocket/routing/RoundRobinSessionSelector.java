@@ -0,0 +1,20 @@
+package cake.jsrpc.websocket.routing;
+
+import cake.jsrpc.websocket.handler.ClientSession;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 轮询：依次把请求分给每个客户端
+ */
+public class RoundRobinSessionSelector implements SessionSelector {
+
+    private final AtomicInteger counter = new AtomicInteger();
+
+    @Override
+    public ClientSession select(List<ClientSession> candidates) {
+        int index = (counter.getAndIncrement() & Integer.MAX_VALUE) % candidates.size();
+        return candidates.get(index);
+    }
+}
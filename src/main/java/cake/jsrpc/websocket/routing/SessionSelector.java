@@ -0,0 +1,17 @@
+package cake.jsrpc.websocket.routing;
+
+import cake.jsrpc.websocket.handler.ClientSession;
+
+import java.util.List;
+
+/**
+ * 会话选择策略：从可用的浏览器客户端中挑选一个执行本次调用
+ */
+public interface SessionSelector {
+
+    /**
+     * @param candidates 可用的（已打开的）客户端会话，不为空
+     * @return 选中的会话
+     */
+    ClientSession select(List<ClientSession> candidates);
+}
@@ -0,0 +1,33 @@
+package cake.jsrpc.websocket.routing;
+
+/**
+ * 根据配置名称创建会话选择策略
+ */
+public final class SessionSelectors {
+
+    public static final String ROUND_ROBIN = "round-robin";
+    public static final String LEAST_OUTSTANDING = "least-outstanding";
+    public static final String LATENCY_WEIGHTED = "latency-weighted";
+
+    private SessionSelectors() {
+    }
+
+    /**
+     * @param strategy round-robin / least-outstanding / latency-weighted
+     */
+    public static SessionSelector create(String strategy) {
+        if (strategy == null) {
+            return new LeastOutstandingSessionSelector();
+        }
+        switch (strategy.trim().toLowerCase()) {
+            case ROUND_ROBIN:
+                return new RoundRobinSessionSelector();
+            case LEAST_OUTSTANDING:
+                return new LeastOutstandingSessionSelector();
+            case LATENCY_WEIGHTED:
+                return new LatencyWeightedSessionSelector();
+            default:
+                throw new IllegalArgumentException("未知的会话选择策略: " + strategy);
+        }
+    }
+}
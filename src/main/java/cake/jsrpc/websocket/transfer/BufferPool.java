@@ -0,0 +1,60 @@
+package cake.jsrpc.websocket.transfer;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 固定大小字节数组的缓冲池
+ * 分片传输时每个分片的收发缓冲区从这里借用，用完归还，
+ * 几十MB的消息不再反复分配大数组（G1下超过半个Region的数组直接进入老年代）
+ */
+public class BufferPool {
+
+    private final int bufferSize;
+    // 池中最多保留的空闲缓冲区数，超出的归还直接丢弃
+    private final int maxPooled;
+    private final ConcurrentLinkedQueue<byte[]> free = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooled = new AtomicInteger();
+
+    public BufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * 借用一个缓冲区，池为空时新分配
+     */
+    public byte[] acquire() {
+        byte[] buffer = free.poll();
+        if (buffer != null) {
+            pooled.decrementAndGet();
+            return buffer;
+        }
+        return new byte[bufferSize];
+    }
+
+    /**
+     * 归还缓冲区（同一个缓冲区只能归还一次）
+     */
+    public void release(byte[] buffer) {
+        if (buffer == null || buffer.length != bufferSize) {
+            return;
+        }
+        if (pooled.incrementAndGet() > maxPooled) {
+            pooled.decrementAndGet();
+            return;
+        }
+        free.offer(buffer);
+    }
+
+    /**
+     * 池中的空闲缓冲区数
+     */
+    public int getPooled() {
+        return pooled.get();
+    }
+}
@@ -0,0 +1,106 @@
+package cake.jsrpc.websocket.transfer;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 单个会话的分片重组
+ * 同一传输的分片按序号依次追加到池化的分段缓冲区，收到最后一片时交出完整消息；
+ * 不同传输的分片可以交错到达（大响应传输期间，小响应照常收发）
+ */
+public class ChunkAssembler {
+
+    private final BufferPool pool;
+    // 单条消息重组后的最大字节数
+    private final long maxMessageBytes;
+    // 同时进行中的传输数上限
+    private final int maxTransfers;
+    // 以下字段由this保护（收消息的线程与关闭连接的线程可能不同）
+    private final Map<String, Transfer> transfers = new HashMap<>();
+    private boolean closed;
+
+    public ChunkAssembler(BufferPool pool, long maxMessageBytes, int maxTransfers) {
+        this.pool = pool;
+        this.maxMessageBytes = maxMessageBytes;
+        this.maxTransfers = maxTransfers;
+    }
+
+    /**
+     * 追加一个分片
+     * @return 收到最后一片时返回完整消息（由调用方负责 release），否则返回null
+     * @throws IOException 分片乱序、超过大小上限或进行中的传输过多，该传输已丢弃
+     */
+    public synchronized SegmentedBuffer accept(ChunkFrames.Chunk chunk) throws IOException {
+        if (closed) {
+            return null;
+        }
+        String transferId = chunk.getTransferId();
+        Transfer transfer = transfers.get(transferId);
+        if (transfer == null) {
+            if (chunk.getSeq() != 0) {
+                throw new IOException("传输 " + transferId + " 缺少开头的分片，收到序号 " + chunk.getSeq());
+            }
+            if (transfers.size() >= maxTransfers) {
+                throw new IOException("进行中的分片传输过多（" + transfers.size() + "），丢弃传输 " + transferId);
+            }
+            transfer = new Transfer(new SegmentedBuffer(pool));
+            transfers.put(transferId, transfer);
+        } else if (chunk.getSeq() != transfer.nextSeq) {
+            discard(transferId);
+            throw new IOException("传输 " + transferId + " 分片乱序: 期望 " + transfer.nextSeq + "，收到 " + chunk.getSeq());
+        }
+        if (transfer.buffer.size() + chunk.getData().remaining() > maxMessageBytes) {
+            discard(transferId);
+            throw new IOException("传输 " + transferId + " 超过消息大小上限 " + maxMessageBytes + " 字节");
+        }
+        transfer.buffer.write(chunk.getData());
+        transfer.nextSeq++;
+        if (!chunk.isLast()) {
+            return null;
+        }
+        transfers.remove(transferId);
+        return transfer.buffer;
+    }
+
+    /**
+     * 丢弃一个未完成的传输
+     */
+    public synchronized void discard(String transferId) {
+        Transfer transfer = transfers.remove(transferId);
+        if (transfer != null) {
+            transfer.buffer.release();
+        }
+    }
+
+    /**
+     * 连接关闭，归还全部未完成传输的缓冲区
+     */
+    public synchronized void close() {
+        closed = true;
+        for (Transfer transfer : transfers.values()) {
+            transfer.buffer.release();
+        }
+        transfers.clear();
+    }
+
+    /**
+     * 未完成传输已接收的字节数
+     */
+    public synchronized long getPendingBytes() {
+        long bytes = 0;
+        for (Transfer transfer : transfers.values()) {
+            bytes += transfer.buffer.size();
+        }
+        return bytes;
+    }
+
+    private static final class Transfer {
+        final SegmentedBuffer buffer;
+        int nextSeq;
+
+        Transfer(SegmentedBuffer buffer) {
+            this.buffer = buffer;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package cake.jsrpc.websocket.transfer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 分片帧格式（二进制帧，JSON和CBOR会话通用）
+ * <pre>
+ * 0      'R' (0x52)
+ * 1      'C' (0x43)
+ * 2      标志位：bit0 = 最后一片
+ * 3      传输ID长度 n（1~255）
+ * 4..    传输ID（UTF-8），请求分片使用请求ID
+ * 4+n..  分片序号（uint32，大端，从0开始）
+ * 8+n..  数据：完整消息按会话编码（JSON为UTF-8文本，CBOR为字节）序列化后的一段
+ * </pre>
+ * 0x52 在CBOR中是长度为18的字节串，不会是合法RPC消息（对象或数组）的开头，因此可以与普通CBOR帧区分
+ */
+public final class ChunkFrames {
+
+    public static final byte MAGIC_0 = 0x52;
+    public static final byte MAGIC_1 = 0x43;
+    public static final int FLAG_LAST = 1;
+    // 分片头的最大长度
+    public static final int MAX_HEADER_SIZE = 4 + 255 + 4;
+
+    private static final int FLAGS_OFFSET = 2;
+
+    private ChunkFrames() {
+    }
+
+    /**
+     * 是否为分片帧
+     */
+    public static boolean isChunk(ByteBuffer payload) {
+        int position = payload.position();
+        return payload.remaining() >= 9
+                && payload.get(position) == MAGIC_0
+                && payload.get(position + 1) == MAGIC_1;
+    }
+
+    /**
+     * 编码后的传输ID
+     */
+    public static byte[] encodeId(String transferId) {
+        byte[] id = transferId.getBytes(StandardCharsets.UTF_8);
+        if (id.length == 0 || id.length > 255) {
+            throw new IllegalArgumentException("传输ID长度必须在1~255字节之间: " + transferId);
+        }
+        return id;
+    }
+
+    public static int headerSize(byte[] id) {
+        return 4 + id.length + 4;
+    }
+
+    /**
+     * 在buffer开头写入分片头
+     * @return 分片头长度（数据从该位置开始写）
+     */
+    public static int writeHeader(byte[] buffer, byte[] id, int seq, boolean last) {
+        buffer[0] = MAGIC_0;
+        buffer[1] = MAGIC_1;
+        buffer[FLAGS_OFFSET] = (byte) (last ? FLAG_LAST : 0);
+        buffer[3] = (byte) id.length;
+        System.arraycopy(id, 0, buffer, 4, id.length);
+        int offset = 4 + id.length;
+        buffer[offset] = (byte) (seq >>> 24);
+        buffer[offset + 1] = (byte) (seq >>> 16);
+        buffer[offset + 2] = (byte) (seq >>> 8);
+        buffer[offset + 3] = (byte) seq;
+        return offset + 4;
+    }
+
+    /**
+     * 解析分片帧，调用前需用 {@link #isChunk} 判断
+     * @throws IllegalArgumentException 分片头不完整
+     */
+    public static Chunk parse(ByteBuffer payload) {
+        ByteBuffer frame = payload.duplicate();
+        frame.position(frame.position() + FLAGS_OFFSET);
+        boolean last = (frame.get() & FLAG_LAST) != 0;
+        int idLength = frame.get() & 0xff;
+        if (idLength == 0 || frame.remaining() < idLength + 4) {
+            throw new IllegalArgumentException("分片头不完整");
+        }
+        byte[] id = new byte[idLength];
+        frame.get(id);
+        int seq = frame.getInt();
+        return new Chunk(new String(id, StandardCharsets.UTF_8), seq, last, frame.slice());
+    }
+
+    /**
+     * 一个收到的分片
+     */
+    public static final class Chunk {
+        private final String transferId;
+        private final int seq;
+        private final boolean last;
+        private final ByteBuffer data;
+
+        Chunk(String transferId, int seq, boolean last, ByteBuffer data) {
+            this.transferId = transferId;
+            this.seq = seq;
+            this.last = last;
+            this.data = data;
+        }
+
+        public String getTransferId() {
+            return transferId;
+        }
+
+        public int getSeq() {
+            return seq;
+        }
+
+        public boolean isLast() {
+            return last;
+        }
+
+        public ByteBuffer getData() {
+            return data;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package cake.jsrpc.websocket.transfer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * 把写入的字节切成分片帧的输出流
+ * 序列化器直接写入池化的帧缓冲区，每写满一片就交给 {@link FrameSink} 发送，
+ * 大消息不需要先完整序列化成一个字符串或字节数组；{@link #close()} 发出最后一片
+ */
+public class ChunkOutputStream extends OutputStream {
+
+    /**
+     * 分片帧的去向
+     */
+    public interface FrameSink {
+        /**
+         * 发送一个分片帧，buffer 的所有权随之转移，发送完成后由接收方归还缓冲池
+         * @param length 帧长度（含分片头）
+         */
+        void send(byte[] buffer, int length, boolean last) throws IOException;
+    }
+
+    /**
+     * 写入的字节数超过消息大小上限
+     */
+    public static class MessageTooLargeException extends IOException {
+        public MessageTooLargeException(String message) {
+            super(message);
+        }
+    }
+
+    private final byte[] id;
+    private final int headerSize;
+    private final BufferPool pool;
+    private final long maxBytes;
+    private final FrameSink sink;
+    private byte[] buffer;
+    private int position;
+    private int seq;
+    private long total;
+    private boolean closed;
+
+    /**
+     * @param pool 帧缓冲池，缓冲区大小即分片帧的最大长度（含分片头）
+     * @param maxBytes 整条消息的字节数上限
+     */
+    public ChunkOutputStream(String transferId, BufferPool pool, long maxBytes, FrameSink sink) {
+        this.id = ChunkFrames.encodeId(transferId);
+        this.headerSize = ChunkFrames.headerSize(id);
+        this.pool = pool;
+        this.maxBytes = maxBytes;
+        this.sink = sink;
+        if (pool.getBufferSize() <= headerSize) {
+            throw new IllegalArgumentException("分片缓冲区过小: " + pool.getBufferSize());
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureCapacity(1);
+        buffer[position++] = (byte) b;
+        total++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            ensureCapacity(len);
+            int length = Math.min(len, buffer.length - position);
+            System.arraycopy(b, off, buffer, position, length);
+            position += length;
+            total += length;
+            off += length;
+            len -= length;
+        }
+    }
+
+    /**
+     * 发出最后一片（可能不含数据）
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        if (buffer == null) {
+            buffer = pool.acquire();
+            position = headerSize;
+        }
+        closed = true;
+        emit(true);
+    }
+
+    /**
+     * 放弃发送，归还当前的缓冲区（已发出的分片由接收方丢弃）
+     */
+    public void abort() {
+        closed = true;
+        if (buffer != null) {
+            pool.release(buffer);
+            buffer = null;
+        }
+    }
+
+    /**
+     * 已写入的数据字节数（不含分片头）
+     */
+    public long getTotalBytes() {
+        return total;
+    }
+
+    /**
+     * 已发出的分片数
+     */
+    public int getFrameCount() {
+        return seq;
+    }
+
+    private void ensureCapacity(int length) throws IOException {
+        if (closed) {
+            throw new IOException("分片输出流已关闭");
+        }
+        if (total + length > maxBytes) {
+            throw new MessageTooLargeException("消息超过大小上限 " + maxBytes + " 字节");
+        }
+        if (buffer != null && position == buffer.length) {
+            emit(false);
+        }
+        if (buffer == null) {
+            buffer = pool.acquire();
+            position = headerSize;
+        }
+    }
+
+    private void emit(boolean last) throws IOException {
+        byte[] frame = buffer;
+        int length = position;
+        buffer = null;
+        ChunkFrames.writeHeader(frame, id, seq++, last);
+        sink.send(frame, length, last);
+    }
+}
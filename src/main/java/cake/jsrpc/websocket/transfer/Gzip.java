@@ -0,0 +1,143 @@
+package cake.jsrpc.websocket.transfer;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 应用层gzip压缩
+ * 超过阈值的消息整体gzip后以二进制帧（或分片帧）发送，接收方按开头的 1f 8b 识别并解压后再按会话编码解析；
+ * 不依赖 permessage-deflate 扩展，代理或浏览器去掉扩展协商时同样有效
+ * 0x1f 在CBOR中是保留值，不会与普通CBOR消息或分片帧（0x52）冲突
+ */
+public final class Gzip {
+
+    public static final byte MAGIC_0 = 0x1f;
+    public static final byte MAGIC_1 = (byte) 0x8b;
+    // gzip头（10字节）和尾（8字节）
+    private static final int FRAMING_BYTES = 18;
+
+    private Gzip() {
+    }
+
+    public static boolean isGzip(ByteBuffer payload) {
+        int position = payload.position();
+        return payload.remaining() >= FRAMING_BYTES
+                && payload.get(position) == MAGIC_0
+                && payload.get(position + 1) == MAGIC_1;
+    }
+
+    public static boolean isGzip(SegmentedBuffer message) {
+        return message.size() >= FRAMING_BYTES && message.get(0) == MAGIC_0 && message.get(1) == MAGIC_1;
+    }
+
+    /**
+     * 压缩输出流，关闭时写完gzip尾并关闭下层输出流
+     * @param level 压缩级别（1最快 ~ 9最小）
+     */
+    public static CompressingOutputStream compress(OutputStream out, int level) throws IOException {
+        return new CompressingOutputStream(out, level);
+    }
+
+    /**
+     * 解压输入流
+     * @param maxBytes 解压后的字节数上限，超过时抛出 IOException（防止小消息解压出巨大的内容）
+     */
+    public static DecompressingInputStream decompress(InputStream in, long maxBytes) throws IOException {
+        return new DecompressingInputStream(new GZIPInputStream(in, 8192), maxBytes);
+    }
+
+    /**
+     * 记录压缩前后字节数的gzip输出流
+     */
+    public static final class CompressingOutputStream extends GZIPOutputStream {
+        private long rawBytes;
+        private long compressedBytes;
+
+        CompressingOutputStream(OutputStream out, int level) throws IOException {
+            super(out, 8192);
+            def.setLevel(level);
+        }
+
+        @Override
+        public void finish() throws IOException {
+            super.finish();
+            if (compressedBytes == 0) {
+                // 关闭时Deflater会被释放，在这里记下最终的字节数
+                rawBytes = def.getBytesRead();
+                compressedBytes = def.getBytesWritten() + FRAMING_BYTES;
+            }
+        }
+
+        /**
+         * 放弃压缩，释放Deflater的本地内存（不写出剩余数据，也不关闭下层输出流）
+         */
+        public void discard() {
+            def.end();
+        }
+
+        public long getRawBytes() {
+            return rawBytes;
+        }
+
+        public long getCompressedBytes() {
+            return compressedBytes;
+        }
+    }
+
+    /**
+     * 限制并记录解压后字节数的输入流
+     */
+    public static final class DecompressingInputStream extends FilterInputStream {
+        private final long maxBytes;
+        private long bytes;
+
+        DecompressingInputStream(InputStream in, long maxBytes) {
+            super(in);
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count(n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count(skipped);
+            return skipped;
+        }
+
+        /**
+         * 已解压的字节数
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        private void count(long n) throws IOException {
+            bytes += n;
+            if (bytes > maxBytes) {
+                throw new IOException("解压后超过消息大小上限 " + maxBytes + " 字节");
+            }
+        }
+    }
+}
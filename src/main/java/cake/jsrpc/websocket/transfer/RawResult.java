@@ -0,0 +1,151 @@
+package cake.jsrpc.websocket.transfer;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 未绑定的调用结果：持有分片重组后的整条响应消息，
+ * 由调用方通过 {@link #writeTo} 把其中的 result 字段流式写出（例如直接写入HTTP响应），
+ * 结果不会被解析成一个完整的Java字符串或对象
+ * 写出或 {@link #release()} 之后缓冲区归还缓冲池，只能使用一次
+ */
+public class RawResult {
+
+    /**
+     * 结果的类型
+     */
+    public enum Kind {
+        // 字符串，按UTF-8文本写出
+        TEXT,
+        // 字节串（CBOR会话中的 Uint8Array），原样写出
+        BINARY,
+        // 其他值（对象、数组、数字等），按JSON写出
+        JSON
+    }
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final SegmentedBuffer message;
+    private final ObjectMapper mapper;
+    private final Kind kind;
+    // 消息是否为gzip压缩帧
+    private final boolean compressed;
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    /**
+     * @param message 完整的响应消息（单个对象），所有权转移给RawResult
+     * @param mapper 消息所用编码的ObjectMapper
+     */
+    public RawResult(SegmentedBuffer message, ObjectMapper mapper, Kind kind) {
+        this(message, mapper, kind, false);
+    }
+
+    /**
+     * @param compressed 消息为gzip压缩帧，写出时边解压边解析（解压后的大小已在分发时检查过）
+     */
+    public RawResult(SegmentedBuffer message, ObjectMapper mapper, Kind kind, boolean compressed) {
+        this.message = message;
+        this.mapper = mapper;
+        this.kind = kind;
+        this.compressed = compressed;
+    }
+
+    /**
+     * 按结果值的token判断类型
+     */
+    public static Kind kindOf(JsonToken token) {
+        if (token == JsonToken.VALUE_STRING) {
+            return Kind.TEXT;
+        }
+        if (token == JsonToken.VALUE_EMBEDDED_OBJECT) {
+            return Kind.BINARY;
+        }
+        return Kind.JSON;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * 整条响应消息的字节数（未压缩时为结果大小的上限）
+     */
+    public long getMessageBytes() {
+        return message.size();
+    }
+
+    /**
+     * 把结果写入输出流（写完后释放缓冲区，不关闭输出流）
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        if (released.get()) {
+            throw new IllegalStateException("结果已释放");
+        }
+        try {
+            InputStream in = compressed ? Gzip.decompress(message.inputStream(), Long.MAX_VALUE) : message.inputStream();
+            try (JsonParser parser = mapper.getFactory().createParser(in)) {
+                seekResult(parser);
+                writeResult(parser, out);
+            }
+        } finally {
+            release();
+        }
+    }
+
+    private void writeResult(JsonParser parser, OutputStream out) throws IOException {
+        switch (kind) {
+            case TEXT:
+                Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+                parser.getText(writer);
+                writer.flush();
+                break;
+            case BINARY:
+                parser.readBinaryValue(out);
+                break;
+            default:
+                JsonGenerator generator = JSON_FACTORY.createGenerator(out);
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                generator.copyCurrentStructure(parser);
+                generator.flush();
+                break;
+        }
+    }
+
+    /**
+     * 不读取结果，直接归还缓冲区
+     */
+    public void release() {
+        if (released.compareAndSet(false, true)) {
+            message.release();
+        }
+    }
+
+    /**
+     * 把parser移动到顶层对象 result 字段的值上
+     */
+    private static void seekResult(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new IOException("响应消息不是对象");
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if ("result".equals(field)) {
+                return;
+            }
+            parser.skipChildren();
+        }
+        throw new IOException("响应消息中没有 result 字段");
+    }
+}
@@ -0,0 +1,41 @@
+package cake.jsrpc.websocket.transfer;
+
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+import java.io.IOException;
+
+/**
+ * 把 {@link RawResult} 作为HTTP响应体流式写出（只写不读）
+ * 结果从分片重组缓冲区直接写入响应输出流，写完后缓冲区归还缓冲池
+ */
+public class RawResultHttpMessageConverter extends AbstractHttpMessageConverter<RawResult> {
+
+    public RawResultHttpMessageConverter() {
+        super(MediaType.ALL);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return RawResult.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    protected boolean canRead(MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected RawResult readInternal(Class<? extends RawResult> clazz, HttpInputMessage inputMessage)
+            throws IOException, HttpMessageNotReadableException {
+        throw new HttpMessageNotReadableException("不支持读取 RawResult", inputMessage);
+    }
+
+    @Override
+    protected void writeInternal(RawResult result, HttpOutputMessage outputMessage) throws IOException {
+        result.writeTo(outputMessage.getBody());
+    }
+}
@@ -0,0 +1,121 @@
+package cake.jsrpc.websocket.transfer;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 由缓冲池中的固定大小分段组成的可追加缓冲区
+ * 重组分片消息时逐段追加，不需要预先知道总大小，也不会为扩容复制已有数据；
+ * 解析时通过 {@link #inputStream()} 顺序读取，用完后 {@link #release()} 归还全部分段
+ */
+public class SegmentedBuffer {
+
+    private final BufferPool pool;
+    private final List<byte[]> segments = new ArrayList<>();
+    // 最后一个分段已使用的字节数
+    private int tail;
+    private long size;
+
+    public SegmentedBuffer(BufferPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * 追加src中剩余的全部字节
+     */
+    public void write(ByteBuffer src) {
+        int segmentSize = pool.getBufferSize();
+        while (src.hasRemaining()) {
+            if (segments.isEmpty() || tail == segmentSize) {
+                segments.add(pool.acquire());
+                tail = 0;
+            }
+            int length = Math.min(src.remaining(), segmentSize - tail);
+            src.get(segments.get(segments.size() - 1), tail, length);
+            tail += length;
+            size += length;
+        }
+    }
+
+    public long size() {
+        return size;
+    }
+
+    /**
+     * 读取指定位置的字节（用于识别消息开头的格式标记）
+     */
+    public byte get(long index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+        }
+        int segmentSize = pool.getBufferSize();
+        return segments.get((int) (index / segmentSize))[(int) (index % segmentSize)];
+    }
+
+    /**
+     * 从头读取全部内容（不复制分段）
+     */
+    public InputStream inputStream() {
+        return new SegmentInputStream();
+    }
+
+    /**
+     * 把分段归还给缓冲池，之后不能再读写
+     */
+    public void release() {
+        for (byte[] segment : segments) {
+            pool.release(segment);
+        }
+        segments.clear();
+        tail = 0;
+        size = 0;
+    }
+
+    private final class SegmentInputStream extends InputStream {
+        private int segment;
+        private int offset;
+        private long remaining = size;
+
+        @Override
+        public int read() {
+            if (remaining <= 0) {
+                return -1;
+            }
+            byte[] current = advance();
+            remaining--;
+            return current[offset++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (remaining <= 0) {
+                return -1;
+            }
+            byte[] current = advance();
+            int length = (int) Math.min(Math.min(len, current.length - offset), remaining);
+            System.arraycopy(current, offset, b, off, length);
+            offset += length;
+            remaining -= length;
+            return length;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, remaining);
+        }
+
+        private byte[] advance() {
+            byte[] current = segments.get(segment);
+            if (offset == current.length) {
+                current = segments.get(++segment);
+                offset = 0;
+            }
+            return current;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package cake.jsrpc.websocket.codec;
+
+import cake.jsrpc.websocket.model.RpcRequest;
+import com.fasterxml.jackson.core.type.TypeReference;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CborRpcCodecTest {
+
+    private final CborRpcCodec codec = new CborRpcCodec();
+
+    private List<EncodedRequest> requests(int count) throws IOException {
+        List<EncodedRequest> requests = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            RpcRequest request = new RpcRequest();
+            request.setId(Integer.toString(i + 1));
+            request.setAction("enc");
+            request.setParams(Collections.singletonList(new byte[]{(byte) i}));
+            requests.add(codec.encode(request));
+        }
+        return requests;
+    }
+
+    private static byte[] payload(WebSocketMessage<?> message) {
+        ByteBuffer buffer = ((BinaryMessage) message).getPayload().duplicate();
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * 检查数组帧的头和长度，并按CBOR解码出全部请求
+     */
+    private void assertArrayFrame(int count, byte... header) throws IOException {
+        List<EncodedRequest> requests = requests(count);
+        byte[] frame = payload(codec.toFrame(requests, true));
+
+        assertThat(codec.frameOverhead(count)).isEqualTo(header.length);
+        assertThat(Arrays.copyOf(frame, header.length)).containsExactly(header);
+        int size = header.length;
+        for (EncodedRequest request : requests) {
+            size += request.size();
+        }
+        assertThat(frame).hasSize(size);
+
+        List<RpcRequest> decoded = codec.getObjectMapper().readValue(frame, new TypeReference<List<RpcRequest>>() {
+        });
+        assertThat(decoded).hasSize(count);
+        for (int i = 0; i < count; i++) {
+            assertThat(decoded.get(i).getId()).isEqualTo(Integer.toString(i + 1));
+            assertThat(decoded.get(i).getAction()).isEqualTo("enc");
+        }
+    }
+
+    @Test
+    void arrayHeaderInlinesCountBelow24() throws IOException {
+        assertArrayFrame(1, (byte) 0x81);
+        assertArrayFrame(23, (byte) 0x97);
+    }
+
+    @Test
+    void arrayHeaderUsesOneByteCountFrom24To255() throws IOException {
+        assertArrayFrame(24, (byte) 0x98, (byte) 24);
+        assertArrayFrame(255, (byte) 0x98, (byte) 0xff);
+    }
+
+    @Test
+    void arrayHeaderUsesTwoByteCountFrom256() throws IOException {
+        assertArrayFrame(256, (byte) 0x99, (byte) 0x01, (byte) 0x00);
+        assertArrayFrame(65535, (byte) 0x99, (byte) 0xff, (byte) 0xff);
+    }
+
+    @Test
+    void arrayHeaderUsesFourByteCountFrom65536() throws IOException {
+        assertArrayFrame(65536, (byte) 0x9a, (byte) 0x00, (byte) 0x01, (byte) 0x00, (byte) 0x00);
+    }
+
+    @Test
+    void singleRequestIsSentAsIs() throws IOException {
+        List<EncodedRequest> requests = requests(1);
+        assertThat(payload(codec.toFrame(requests, false))).containsExactly(requests.get(0).getBytes());
+    }
+}
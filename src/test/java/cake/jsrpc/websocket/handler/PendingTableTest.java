@@ -0,0 +1,159 @@
+package cake.jsrpc.websocket.handler;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PendingTableTest {
+
+    private static final PendingCall.PendingCallListener LISTENER = new PendingCall.PendingCallListener() {
+        @Override
+        public boolean detach(PendingCall call) {
+            return false;
+        }
+
+        @Override
+        public void onAbandoned(PendingCall call) {
+        }
+
+        @Override
+        public void onFinished(PendingCall call, Throwable cause) {
+        }
+    };
+
+    private final ClientSession client = new ClientSession("test", null, null);
+
+    private PendingCall register(PendingTable table) {
+        PendingCall call = new PendingCall(table.nextId(), "echo", client, LISTENER);
+        table.put(call);
+        return call;
+    }
+
+    @Test
+    void idsStartAtOneAndIncrease() {
+        PendingTable table = new PendingTable(4);
+        assertThat(table.nextId()).isEqualTo(1);
+        assertThat(table.nextId()).isEqualTo(2);
+    }
+
+    @Test
+    void takeReturnsEachCallOnce() {
+        PendingTable table = new PendingTable(4);
+        PendingCall call = register(table);
+        assertThat(table.size()).isEqualTo(1);
+        assertThat(table.take(call.id)).isSameAs(call);
+        assertThat(table.take(call.id)).isNull();
+        assertThat(table.remove(call)).isFalse();
+        assertThat(table.size()).isZero();
+    }
+
+    @Test
+    void takeChecksIdOfSlotOccupant() {
+        PendingTable table = new PendingTable(4);
+        PendingCall call = register(table);
+        // 同一槽位上的其他ID（迟到的旧响应或伪造的ID）不能取走当前的调用
+        assertThat(table.take(call.id + 4)).isNull();
+        assertThat(table.take(call.id - 4)).isNull();
+        assertThat(table.take(call.id)).isSameAs(call);
+    }
+
+    @Test
+    void overflowsWhenSlotIsStillHeld() {
+        PendingTable table = new PendingTable(4);
+        PendingCall slow = register(table);
+        for (int i = 0; i < 3; i++) {
+            PendingCall call = register(table);
+            assertThat(table.take(call.id)).isSameAs(call);
+        }
+        // 第5个ID回到 slow 占着的槽位，进入溢出表
+        PendingCall wrapped = register(table);
+        assertThat(wrapped.id & 3).isEqualTo(slow.id & 3);
+        assertThat(table.size()).isEqualTo(2);
+
+        assertThat(table.take(wrapped.id)).isSameAs(wrapped);
+        assertThat(table.take(wrapped.id)).isNull();
+        assertThat(table.take(slow.id)).isSameAs(slow);
+        assertThat(table.size()).isZero();
+    }
+
+    @Test
+    void removeOnlyRemovesThatCall() {
+        PendingTable table = new PendingTable(4);
+        PendingCall slow = register(table);
+        for (int i = 0; i < 3; i++) {
+            table.take(register(table).id);
+        }
+        PendingCall wrapped = register(table);
+
+        assertThat(table.remove(wrapped)).isTrue();
+        assertThat(table.remove(wrapped)).isFalse();
+        assertThat(table.take(slow.id)).isSameAs(slow);
+        assertThat(table.remove(slow)).isFalse();
+        assertThat(table.size()).isZero();
+    }
+
+    @Test
+    void drainHandsOutSlotAndOverflowCallsOnce() {
+        PendingTable table = new PendingTable(2);
+        List<PendingCall> registered = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            registered.add(register(table));
+        }
+        List<PendingCall> drained = new ArrayList<>();
+        table.drain(drained::add);
+        assertThat(drained).containsExactlyInAnyOrderElementsOf(registered);
+        assertThat(table.size()).isZero();
+        for (PendingCall call : registered) {
+            assertThat(table.take(call.id)).isNull();
+        }
+    }
+
+    @Test
+    void responseAndTimeoutRaceHasOneWinner() throws InterruptedException {
+        PendingTable table = new PendingTable(64);
+        int count = 20_000;
+        PendingCall[] calls = new PendingCall[count];
+        for (int i = 0; i < count; i++) {
+            calls[i] = register(table);
+        }
+        AtomicInteger taken = new AtomicInteger();
+        AtomicInteger removed = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread responder = new Thread(() -> {
+            await(start);
+            for (PendingCall call : calls) {
+                if (table.take(call.id) != null) {
+                    taken.incrementAndGet();
+                }
+            }
+        });
+        Thread expirer = new Thread(() -> {
+            await(start);
+            for (PendingCall call : calls) {
+                if (table.remove(call)) {
+                    removed.incrementAndGet();
+                }
+            }
+        });
+        responder.start();
+        expirer.start();
+        start.countDown();
+        responder.join();
+        expirer.join();
+        assertThat(taken.get() + removed.get()).isEqualTo(count);
+        assertThat(table.size()).isZero();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package cake.jsrpc.websocket.handler;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RpcMessageDispatcherTest {
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    /**
+     * 解析 {"callbackId": <value>} 并读取其中的请求ID
+     */
+    private static long readId(String value) throws IOException {
+        return readIdAfter("", value);
+    }
+
+    /**
+     * 在 callbackId 前放一段其他字段，请求ID不在解析器字符缓冲区的开头
+     */
+    private static long readIdAfter(String prefix, String value) throws IOException {
+        try (JsonParser parser = JSON.createParser("{" + prefix + "\"callbackId\":" + value + "}")) {
+            while (parser.nextToken() != JsonToken.FIELD_NAME || !"callbackId".equals(parser.getCurrentName())) {
+                // 跳到 callbackId
+            }
+            return RpcMessageDispatcher.readId(parser, parser.nextToken());
+        }
+    }
+
+    @Test
+    void readsDecimalStringAndNumber() throws IOException {
+        assertThat(readId("\"0\"")).isEqualTo(0);
+        assertThat(readId("\"42\"")).isEqualTo(42);
+        assertThat(readId("42")).isEqualTo(42);
+        assertThat(readId(String.valueOf(Long.MAX_VALUE))).isEqualTo(Long.MAX_VALUE);
+    }
+
+    @Test
+    void readsStringAtNonZeroBufferOffset() throws IOException {
+        assertThat(readIdAfter("\"status\":200,\"result\":\"abcdef\",", "\"9876543210\"")).isEqualTo(9876543210L);
+    }
+
+    @Test
+    void acceptsEighteenDigitsAndRejectsNineteen() throws IOException {
+        assertThat(readId("\"999999999999999999\"")).isEqualTo(999_999_999_999_999_999L);
+        assertThat(readId("\"1000000000000000000\"")).isEqualTo(-1);
+    }
+
+    @Test
+    void rejectsIdsNotIssuedByServer() throws IOException {
+        assertThat(readId("\"\"")).isEqualTo(-1);
+        assertThat(readId("\"-1\"")).isEqualTo(-1);
+        assertThat(readId("\"12a\"")).isEqualTo(-1);
+        assertThat(readId("\" 12\"")).isEqualTo(-1);
+        assertThat(readId("\"1.5\"")).isEqualTo(-1);
+        assertThat(readId("99999999999999999999")).isEqualTo(-1);
+        assertThat(readId("1.5")).isEqualTo(-1);
+        assertThat(readId("true")).isEqualTo(-1);
+        assertThat(readId("null")).isEqualTo(-1);
+    }
+
+    @Test
+    void keepsOnlyNotFoundAndTooLargeFromBrowser() {
+        assertThat(RpcMessageDispatcher.browserStatus(RpcException.NOT_FOUND)).isEqualTo(RpcException.NOT_FOUND);
+        assertThat(RpcMessageDispatcher.browserStatus(RpcException.PAYLOAD_TOO_LARGE)).isEqualTo(RpcException.PAYLOAD_TOO_LARGE);
+        assertThat(RpcMessageDispatcher.browserStatus(RpcException.CONNECTION_LOST)).isEqualTo(RpcException.REMOTE_ERROR);
+        assertThat(RpcMessageDispatcher.browserStatus(RpcException.NO_CLIENT)).isEqualTo(RpcException.REMOTE_ERROR);
+        assertThat(RpcMessageDispatcher.browserStatus(RpcException.TIMEOUT)).isEqualTo(RpcException.REMOTE_ERROR);
+        assertThat(RpcMessageDispatcher.browserStatus(418)).isEqualTo(RpcException.REMOTE_ERROR);
+    }
+}
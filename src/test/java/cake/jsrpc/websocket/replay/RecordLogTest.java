@@ -0,0 +1,168 @@
+package cake.jsrpc.websocket.replay;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RecordLogTest {
+
+    // 记录文件大小下限，少量写入即可触发压缩
+    private static final long MAX_BYTES = 64 * 1024;
+    private static final int KEYS = 16;
+    private static final int VALUE_BYTES = 1000;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void reopenKeepsRecords() throws IOException {
+        String path = dir.resolve("log").toString();
+        try (RecordLog log = new RecordLog(path, MAX_BYTES)) {
+            assertThat(log.put(key(1), value(1, 0))).isTrue();
+            assertThat(log.put(key(2), value(2, 0))).isTrue();
+        }
+        try (RecordLog log = new RecordLog(path, MAX_BYTES)) {
+            assertThat(log.get(key(1))).isEqualTo(value(1, 0));
+            assertThat(log.get(key(2))).isEqualTo(value(2, 0));
+            assertThat(log.get(key(3))).isNull();
+            assertThat(log.stats().get("entries")).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void reopenAfterCompactionKeepsLatestValues() throws IOException {
+        String path = dir.resolve("log").toString();
+        int rounds = overwriteUntilCompacted(path);
+
+        try (RecordLog log = new RecordLog(path, MAX_BYTES)) {
+            assertLatest(log, rounds);
+            assertThat(log.stats().get("entries")).isEqualTo(KEYS);
+            // 重新打开后继续追加、替换
+            assertThat(log.put(key(0), value(0, rounds))).isTrue();
+            assertThat(log.get(key(0))).isEqualTo(value(0, rounds));
+        }
+        try (RecordLog log = new RecordLog(path, MAX_BYTES)) {
+            assertThat(log.get(key(0))).isEqualTo(value(0, rounds));
+            assertThat(log.stats().get("entries")).isEqualTo(KEYS);
+        }
+    }
+
+    @Test
+    void reopenRebuildsMissingIndex() throws IOException {
+        String path = dir.resolve("log").toString();
+        int rounds = overwriteUntilCompacted(path);
+        Files.delete(dir.resolve("log.idx"));
+
+        try (RecordLog log = new RecordLog(path, MAX_BYTES)) {
+            assertLatest(log, rounds);
+            assertThat(log.stats().get("entries")).isEqualTo(KEYS);
+        }
+    }
+
+    @Test
+    void reopenRebuildsIndexLeftByInterruptedCompaction() throws IOException {
+        String path = dir.resolve("log").toString();
+        int rounds = overwriteUntilCompacted(path);
+        // 索引文件头的状态字段标记为压缩进行中，模拟压缩中途退出
+        try (FileChannel index = FileChannel.open(dir.resolve("log.idx"), StandardOpenOption.WRITE)) {
+            ByteBuffer state = ByteBuffer.allocate(4).putInt(0, 1);
+            index.write(state, 16);
+        }
+
+        try (RecordLog log = new RecordLog(path, MAX_BYTES)) {
+            assertLatest(log, rounds);
+            assertThat(log.stats().get("entries")).isEqualTo(KEYS);
+        }
+    }
+
+    @Test
+    void reopenDropsTornRecord() throws IOException {
+        String path = dir.resolve("log").toString();
+        int logEnd;
+        try (RecordLog log = new RecordLog(path, MAX_BYTES)) {
+            log.put(key(1), value(1, 0));
+            logEnd = (int) log.stats().get("logBytes");
+        }
+        // 记录文件末尾写到一半的记录：有长度，CRC不符
+        try (FileChannel file = FileChannel.open(dir.resolve("log.log"), StandardOpenOption.WRITE)) {
+            ByteBuffer torn = ByteBuffer.allocate(20).putInt(0, 20).putInt(4, 12345).putInt(8, 4);
+            file.write(torn, logEnd);
+        }
+        Files.delete(dir.resolve("log.idx"));
+
+        try (RecordLog log = new RecordLog(path, MAX_BYTES)) {
+            assertThat(log.get(key(1))).isEqualTo(value(1, 0));
+            assertThat(log.stats().get("entries")).isEqualTo(1);
+            assertThat(log.stats().get("logBytes")).isEqualTo(logEnd);
+            // 从被清除的位置继续追加
+            assertThat(log.put(key(2), value(2, 0))).isTrue();
+        }
+        try (RecordLog log = new RecordLog(path, MAX_BYTES)) {
+            assertThat(log.get(key(2))).isEqualTo(value(2, 0));
+        }
+    }
+
+    @Test
+    void compactionEvictsOldestWhenLiveRecordsExceedHalf() throws IOException {
+        String path = dir.resolve("log").toString();
+        // 全部是不同的键，有效记录写满后只能丢弃最早的记录
+        int written = 0;
+        try (RecordLog log = new RecordLog(path, MAX_BYTES)) {
+            while (((Number) log.stats().get("evictions")).longValue() == 0) {
+                assertThat(log.put(key(written), value(written, 0))).isTrue();
+                written++;
+            }
+            assertThat((int) log.stats().get("logBytes")).isLessThanOrEqualTo((int) MAX_BYTES);
+        }
+        try (RecordLog log = new RecordLog(path, MAX_BYTES)) {
+            assertThat(log.get(key(0))).isNull();
+            assertThat(log.get(key(written - 1))).isEqualTo(value(written - 1, 0));
+        }
+    }
+
+    /**
+     * 反复替换同一组键直到至少压缩一次，关闭后返回写入的轮数（最后一轮的值为最新值）
+     */
+    private static int overwriteUntilCompacted(String path) throws IOException {
+        int rounds = 0;
+        try (RecordLog log = new RecordLog(path, MAX_BYTES)) {
+            while (((Number) log.stats().get("compactions")).longValue() < 2) {
+                for (int i = 0; i < KEYS; i++) {
+                    assertThat(log.put(key(i), value(i, rounds))).isTrue();
+                }
+                rounds++;
+            }
+            assertThat(log.stats().get("evictions")).isEqualTo(0L);
+            assertLatest(log, rounds);
+        }
+        return rounds;
+    }
+
+    private static void assertLatest(RecordLog log, int rounds) {
+        for (int i = 0; i < KEYS; i++) {
+            assertThat(log.get(key(i))).as("key %d", i).isEqualTo(value(i, rounds - 1));
+        }
+    }
+
+    private static byte[] key(int i) {
+        return ("action:" + i).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] value(int i, int round) {
+        byte[] value = new byte[VALUE_BYTES];
+        Arrays.fill(value, (byte) (i * 31 + round));
+        value[0] = (byte) round;
+        value[1] = (byte) (round >>> 8);
+        return value;
+    }
+}
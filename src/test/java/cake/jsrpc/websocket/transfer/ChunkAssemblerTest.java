@@ -0,0 +1,246 @@
+package cake.jsrpc.websocket.transfer;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ChunkAssemblerTest {
+
+    // 分段很小，重组结果跨越多个分段
+    private final BufferPool pool = new BufferPool(16, 64);
+
+    @Test
+    void headerRoundTrip() {
+        byte[] id = ChunkFrames.encodeId("12345");
+        byte[] frame = new byte[ChunkFrames.headerSize(id) + 3];
+        int offset = ChunkFrames.writeHeader(frame, id, 0x01020304, true);
+        frame[offset] = 'a';
+        frame[offset + 1] = 'b';
+        frame[offset + 2] = 'c';
+
+        ByteBuffer payload = ByteBuffer.wrap(frame);
+        assertThat(ChunkFrames.isChunk(payload)).isTrue();
+        ChunkFrames.Chunk chunk = ChunkFrames.parse(payload);
+        assertThat(chunk.getTransferId()).isEqualTo("12345");
+        assertThat(chunk.getSeq()).isEqualTo(0x01020304);
+        assertThat(chunk.isLast()).isTrue();
+        assertThat(text(chunk.getData())).isEqualTo("abc");
+        // 解析不移动原缓冲区的位置
+        assertThat(payload.position()).isZero();
+    }
+
+    @Test
+    void plainMessagesAreNotChunks() {
+        assertThat(ChunkFrames.isChunk(ByteBuffer.wrap("{\"callbackId\":\"1\"}".getBytes(StandardCharsets.UTF_8)))).isFalse();
+        // CBOR数组、对象开头
+        assertThat(ChunkFrames.isChunk(ByteBuffer.wrap(new byte[]{(byte) 0x81, (byte) 0xa1, 0, 0, 0, 0, 0, 0, 0}))).isFalse();
+        // 不足最小分片头长度
+        assertThat(ChunkFrames.isChunk(ByteBuffer.wrap(new byte[]{ChunkFrames.MAGIC_0, ChunkFrames.MAGIC_1, 0, 1}))).isFalse();
+    }
+
+    @Test
+    void truncatedHeaderIsRejected() {
+        byte[] frame = new byte[9];
+        frame[0] = ChunkFrames.MAGIC_0;
+        frame[1] = ChunkFrames.MAGIC_1;
+        // 声明的传输ID长度超出帧长度
+        frame[3] = 10;
+        assertThatThrownBy(() -> ChunkFrames.parse(ByteBuffer.wrap(frame)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void reassemblesChunksWrittenByOutputStream() throws IOException {
+        String message = repeat("0123456789", 20);
+        List<ByteBuffer> frames = split("7", message, 32);
+        assertThat(frames).hasSizeGreaterThan(2);
+
+        ChunkAssembler assembler = new ChunkAssembler(pool, 1024, 4);
+        SegmentedBuffer result = null;
+        for (int i = 0; i < frames.size(); i++) {
+            result = assembler.accept(ChunkFrames.parse(frames.get(i)));
+            if (i < frames.size() - 1) {
+                assertThat(result).isNull();
+            }
+        }
+        assertThat(result).isNotNull();
+        assertThat(read(result)).isEqualTo(message);
+        assertThat(result.get(0)).isEqualTo((byte) '0');
+        assertThat(assembler.getPendingBytes()).isZero();
+        result.release();
+    }
+
+    @Test
+    void interleavedTransfersReassembleIndependently() throws IOException {
+        String big = repeat("A", 100);
+        String small = "small";
+        List<ByteBuffer> bigFrames = split("1", big, 24);
+        List<ByteBuffer> smallFrames = split("2", small, 24);
+
+        ChunkAssembler assembler = new ChunkAssembler(pool, 1024, 4);
+        assertThat(assembler.accept(ChunkFrames.parse(bigFrames.get(0)))).isNull();
+        // 大消息传输期间，另一传输照常完成
+        SegmentedBuffer smallResult = null;
+        for (ByteBuffer frame : smallFrames) {
+            smallResult = assembler.accept(ChunkFrames.parse(frame));
+        }
+        assertThat(read(smallResult)).isEqualTo(small);
+        smallResult.release();
+        assertThat(assembler.getPendingBytes()).isPositive();
+
+        SegmentedBuffer bigResult = null;
+        for (ByteBuffer frame : bigFrames.subList(1, bigFrames.size())) {
+            bigResult = assembler.accept(ChunkFrames.parse(frame));
+        }
+        assertThat(read(bigResult)).isEqualTo(big);
+        bigResult.release();
+    }
+
+    @Test
+    void outOfOrderChunkDiscardsTransfer() throws IOException {
+        String message = repeat("xyz", 30);
+        List<ByteBuffer> frames = split("9", message, 24);
+        assertThat(frames).hasSizeGreaterThan(3);
+
+        ChunkAssembler assembler = new ChunkAssembler(pool, 1024, 4);
+        int pooledBefore = pool.getPooled();
+        assembler.accept(ChunkFrames.parse(frames.get(0)));
+        assertThatThrownBy(() -> assembler.accept(ChunkFrames.parse(frames.get(2))))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("乱序");
+        // 传输已丢弃，缓冲区归还缓冲池
+        assertThat(assembler.getPendingBytes()).isZero();
+        assertThat(pool.getPooled()).isGreaterThanOrEqualTo(pooledBefore);
+        // 被跳过的分片随后到达时不能拼接到已丢弃的传输上
+        assertThatThrownBy(() -> assembler.accept(ChunkFrames.parse(frames.get(1))))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("缺少开头");
+
+        // 同一ID重新从头传输可以正常完成
+        SegmentedBuffer result = null;
+        for (ByteBuffer frame : frames) {
+            result = assembler.accept(ChunkFrames.parse(frame.duplicate()));
+        }
+        assertThat(read(result)).isEqualTo(message);
+        result.release();
+    }
+
+    @Test
+    void duplicateChunkDiscardsTransfer() throws IOException {
+        List<ByteBuffer> frames = split("3", repeat("d", 60), 24);
+        ChunkAssembler assembler = new ChunkAssembler(pool, 1024, 4);
+        assembler.accept(ChunkFrames.parse(frames.get(0)));
+        assembler.accept(ChunkFrames.parse(frames.get(1)));
+        assertThatThrownBy(() -> assembler.accept(ChunkFrames.parse(frames.get(1))))
+                .isInstanceOf(IOException.class);
+        assertThat(assembler.getPendingBytes()).isZero();
+    }
+
+    @Test
+    void missingFirstChunkIsRejected() {
+        List<ByteBuffer> frames = split("5", repeat("m", 60), 24);
+        ChunkAssembler assembler = new ChunkAssembler(pool, 1024, 4);
+        assertThatThrownBy(() -> assembler.accept(ChunkFrames.parse(frames.get(1))))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("缺少开头");
+        assertThat(assembler.getPendingBytes()).isZero();
+    }
+
+    @Test
+    void messageLargerThanLimitIsRejected() throws IOException {
+        List<ByteBuffer> frames = split("4", repeat("L", 100), 24);
+        ChunkAssembler assembler = new ChunkAssembler(pool, 40, 4);
+        IOException error = null;
+        for (ByteBuffer frame : frames) {
+            try {
+                assertThat(assembler.accept(ChunkFrames.parse(frame))).isNull();
+            } catch (IOException e) {
+                error = e;
+                break;
+            }
+        }
+        assertThat(error).hasMessageContaining("上限");
+        assertThat(assembler.getPendingBytes()).isZero();
+    }
+
+    @Test
+    void tooManyTransfersAreRejected() throws IOException {
+        ChunkAssembler assembler = new ChunkAssembler(pool, 1024, 2);
+        assembler.accept(ChunkFrames.parse(split("a", repeat("1", 40), 24).get(0)));
+        assembler.accept(ChunkFrames.parse(split("b", repeat("2", 40), 24).get(0)));
+        List<ByteBuffer> third = split("c", repeat("3", 40), 24);
+        assertThatThrownBy(() -> assembler.accept(ChunkFrames.parse(third.get(0))))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("过多");
+
+        // 丢弃一个传输后名额空出
+        assembler.discard("a");
+        assertThat(assembler.accept(ChunkFrames.parse(third.get(0)))).isNull();
+    }
+
+    @Test
+    void closeReleasesPendingTransfers() throws IOException {
+        List<ByteBuffer> frames = split("6", repeat("c", 60), 24);
+        ChunkAssembler assembler = new ChunkAssembler(pool, 1024, 4);
+        assembler.accept(ChunkFrames.parse(frames.get(0)));
+        assertThat(assembler.getPendingBytes()).isPositive();
+
+        assembler.close();
+        assertThat(assembler.getPendingBytes()).isZero();
+        // 关闭后到达的分片直接忽略
+        assertThat(assembler.accept(ChunkFrames.parse(frames.get(1)))).isNull();
+    }
+
+    /**
+     * 用 ChunkOutputStream 把消息切成分片帧
+     * @param frameBytes 分片帧的最大长度（含分片头）
+     */
+    private static List<ByteBuffer> split(String transferId, String message, int frameBytes) {
+        List<ByteBuffer> frames = new ArrayList<>();
+        BufferPool framePool = new BufferPool(frameBytes, 0);
+        try (ChunkOutputStream out = new ChunkOutputStream(transferId, framePool, Long.MAX_VALUE,
+                (buffer, length, last) -> frames.add(ByteBuffer.wrap(Arrays.copyOf(buffer, length))))) {
+            out.write(message.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return frames;
+    }
+
+    private static String read(SegmentedBuffer buffer) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = buffer.inputStream()) {
+            byte[] block = new byte[7];
+            int n;
+            while ((n = in.read(block)) > 0) {
+                out.write(block, 0, n);
+            }
+        }
+        assertThat((long) out.size()).isEqualTo(buffer.size());
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static String text(ByteBuffer data) {
+        byte[] bytes = new byte[data.remaining()];
+        data.duplicate().get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String repeat(String s, int times) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            builder.append(s);
+        }
+        return builder.toString();
+    }
+}